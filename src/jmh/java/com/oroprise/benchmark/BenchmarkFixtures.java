@@ -0,0 +1,137 @@
+package com.oroprise.benchmark;
+
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.mockito.Matchers;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.codahale.metrics.MetricRegistry;
+import com.oroprise.bo.Connection;
+import com.oroprise.bo.Fraction;
+import com.oroprise.bo.MeterReading;
+import com.oroprise.bo.Month;
+import com.oroprise.bo.Profile;
+import com.oroprise.config.ApplicationProperties;
+import com.oroprise.repository.ConsumptionRollupRepository;
+import com.oroprise.repository.MeterReadingRepository;
+import com.oroprise.repository.ProfileRepository;
+import com.oroprise.service.ConsumptionRollupService;
+import com.oroprise.service.CreateMeterReadingService;
+import com.oroprise.service.IngestMetrics;
+import com.oroprise.service.ProfileCacheService;
+import com.oroprise.vo.MeterReadingVo;
+
+/**
+ * Synthetic uploads and services wired to stubbed repositories, so the benchmarks measure the ingest code only
+ *
+ */
+public final class BenchmarkFixtures {
+
+	/** fractions of every synthetic profile, JAN to DEC */
+	static final double[] FRACTIONS = { 0.1, 0.1, 0.1, 0.1, 0.05, 0.05, 0.05, 0.05, 0.1, 0.1, 0.1, 0.1 };
+
+	/** consumption of every synthetic connection over the year */
+	static final long YEARLY_CONSUMPTION = 12000;
+
+	private BenchmarkFixtures() {
+	}
+
+	static Map<String, Profile> profiles(int count) {
+		Map<String, Profile> profiles = new LinkedHashMap<>();
+		for (int p = 0; p < count; p++) {
+			String name = "P" + p;
+			Profile.ProfileBuilder builder = new Profile.ProfileBuilder(name);
+			for (Month month : Month.values()) {
+				builder.addFraction(new Fraction(month, FRACTIONS[month.ordinal()]));
+			}
+			profiles.put(name, builder.build());
+		}
+		return profiles;
+	}
+
+	/**
+	 * Rows of rows / 12 connections spread round robin over the profiles, all valid, in random order
+	 * 
+	 * @param rows
+	 * @param profiles
+	 * @return
+	 */
+	static List<MeterReadingVo> meterReadings(int rows, int profiles) {
+		List<MeterReadingVo> vos = new ArrayList<>(rows);
+		int connections = Math.max(1, rows / Month.values().length);
+		for (int c = 0; c < connections; c++) {
+			long reading = 0;
+			for (Month month : Month.values()) {
+				reading += (long) (FRACTIONS[month.ordinal()] * YEARLY_CONSUMPTION);
+				MeterReadingVo vo = new MeterReadingVo();
+				vo.setProfileName("P" + (c % profiles));
+				vo.setConnectionId(String.format("%08d", c));
+				vo.setMonth(month);
+				vo.setReading(reading);
+				vos.add(vo);
+			}
+		}
+		Collections.shuffle(vos, new Random(42));
+		return vos;
+	}
+
+	/**
+	 * CreateMeterReadingService reading profiles from an in-memory table and discarding all writes
+	 * 
+	 * @param profiles
+	 * @param validationPool
+	 * @return
+	 */
+	static CreateMeterReadingService createMeterReadingService(Map<String, Profile> profiles, ForkJoinPool validationPool) {
+		ApplicationProperties applicationProperties = new ApplicationProperties();
+		MetricRegistry metricRegistry = new MetricRegistry();
+		IngestMetrics ingestMetrics = new IngestMetrics(metricRegistry);
+
+		ProfileRepository profileRepository = mock(ProfileRepository.class);
+		when(profileRepository.findAll(Matchers.<Iterable<String>>any())).thenAnswer(invocation -> {
+			List<Profile> found = new ArrayList<>();
+			for (Object name : (Iterable<?>) invocation.getArguments()[0]) {
+				Profile profile = profiles.get(name);
+				if (null != profile) {
+					found.add(profile);
+				}
+			}
+			return found;
+		});
+
+		MeterReadingRepository meterReadingRepository = mock(MeterReadingRepository.class);
+		when(meterReadingRepository.bulkUpsert(anyListOf(MeterReading.class))).thenReturn(Collections.emptySet());
+		when(meterReadingRepository.findAll(Matchers.<Iterable<Connection>>any())).thenReturn(Collections.emptyList());
+
+		ConsumptionRollupService consumptionRollupService = new ConsumptionRollupService();
+		ReflectionTestUtils.setField(consumptionRollupService, "consumptionRollupRepository", mock(ConsumptionRollupRepository.class));
+		ReflectionTestUtils.setField(consumptionRollupService, "meterReadingRepository", meterReadingRepository);
+		ReflectionTestUtils.setField(consumptionRollupService, "ingestMetrics", ingestMetrics);
+
+		ProfileCacheService profileCacheService = new ProfileCacheService();
+		ReflectionTestUtils.setField(profileCacheService, "profileRepository", profileRepository);
+		ReflectionTestUtils.setField(profileCacheService, "applicationProperties", applicationProperties);
+		ReflectionTestUtils.setField(profileCacheService, "ingestMetrics", ingestMetrics);
+		ReflectionTestUtils.setField(profileCacheService, "metricRegistry", metricRegistry);
+		profileCacheService.init();
+
+		CreateMeterReadingService service = new CreateMeterReadingService();
+		ReflectionTestUtils.setField(service, "profileCacheService", profileCacheService);
+		ReflectionTestUtils.setField(service, "meterReadingRepository", meterReadingRepository);
+		ReflectionTestUtils.setField(service, "consumptionRollupService", consumptionRollupService);
+		ReflectionTestUtils.setField(service, "applicationProperties", applicationProperties);
+		ReflectionTestUtils.setField(service, "meterReadingValidationPool", validationPool);
+		ReflectionTestUtils.setField(service, "ingestMetrics", ingestMetrics);
+		return service;
+	}
+}
@@ -0,0 +1,69 @@
+package com.oroprise.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.time.Year;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.oroprise.bo.MonthlyReadings;
+import com.oroprise.util.BinaryReadingsDecoder;
+import com.oroprise.util.BinaryReadingsEncoder;
+import com.oroprise.vo.MeterReadingVo;
+
+/**
+ * Decoding of a binary POST /api/meterreadings body into the MonthlyReadings of its connections, the same rows as
+ * {@link MeterReadingVoBindingBenchmark}
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class BinaryReadingsDecodingBenchmark {
+
+	@Param({ "1000", "100000", "1000000" })
+	private int rows;
+
+	private byte[] body;
+
+	@Setup
+	public void setup() {
+		Map<String, long[]> connections = new LinkedHashMap<>();
+		Map<String, String> profileNames = new LinkedHashMap<>();
+		for (MeterReadingVo vo : BenchmarkFixtures.meterReadings(rows, 100)) {
+			connections.computeIfAbsent(vo.getConnectionId(), id -> new long[MonthlyReadings.MONTHS])[vo.getMonth().ordinal()] = vo.getReading();
+			profileNames.put(vo.getConnectionId(), vo.getProfileName());
+		}
+
+		BinaryReadingsEncoder encoder = new BinaryReadingsEncoder();
+		int year = Year.now().getValue();
+		connections.forEach((connectionId, readings) -> encoder.add(profileNames.get(connectionId), connectionId, year, readings));
+		body = encoder.toByteArray();
+	}
+
+	@Benchmark
+	public List<MonthlyReadings> decode() throws IOException {
+		List<MonthlyReadings> connections = new ArrayList<>(rows / MonthlyReadings.MONTHS);
+		new BinaryReadingsDecoder(Channels.newChannel(new ByteArrayInputStream(body))).decode(connections::add);
+		return connections;
+	}
+}
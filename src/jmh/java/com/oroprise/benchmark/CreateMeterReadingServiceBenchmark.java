@@ -0,0 +1,63 @@
+package com.oroprise.benchmark;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.oroprise.service.CreateMeterReadingService;
+import com.oroprise.vo.MeterReadingStatus;
+import com.oroprise.vo.MeterReadingVo;
+
+/**
+ * CreateMeterReadingService.execute over uploads of varying size and profile cardinality, with stubbed repositories.
+ * The profile cache is warm after the first invocation, as it is for a steady stream of uploads.
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CreateMeterReadingServiceBenchmark {
+
+	@Param({ "1000", "100000", "1000000" })
+	private int rows;
+
+	@Param({ "1", "100", "2000" })
+	private int profiles;
+
+	private ForkJoinPool validationPool;
+	private CreateMeterReadingService service;
+	private List<MeterReadingVo> upload;
+
+	@Setup
+	public void setup() {
+		validationPool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+		service = BenchmarkFixtures.createMeterReadingService(BenchmarkFixtures.profiles(profiles), validationPool);
+		upload = BenchmarkFixtures.meterReadings(rows, profiles);
+	}
+
+	@TearDown
+	public void tearDown() {
+		validationPool.shutdown();
+	}
+
+	@Benchmark
+	public List<MeterReadingStatus> execute() {
+		return service.execute(upload);
+	}
+}
@@ -0,0 +1,56 @@
+package com.oroprise.benchmark;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.oroprise.vo.MeterReadingVo;
+
+/**
+ * JSON binding of a POST /api/meterreadings body to List<MeterReadingVo>, with the ObjectMapper defaults of the
+ * HTTP message converter
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class MeterReadingVoBindingBenchmark {
+
+	@Param({ "1000", "100000", "1000000" })
+	private int rows;
+
+	private ObjectReader reader;
+	private byte[] body;
+
+	@Setup
+	public void setup() throws IOException {
+		ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+		reader = objectMapper.readerFor(new TypeReference<List<MeterReadingVo>>() {
+		});
+		body = objectMapper.writeValueAsBytes(BenchmarkFixtures.meterReadings(rows, 100));
+	}
+
+	@Benchmark
+	public List<MeterReadingVo> bind() throws IOException {
+		return reader.readValue(body);
+	}
+}
@@ -0,0 +1,50 @@
+package com.oroprise.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.oroprise.bo.Fraction;
+import com.oroprise.bo.Month;
+import com.oroprise.bo.Profile;
+
+/**
+ * Profile.ProfileBuilder building a profile with a fraction for every month
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ProfileBuilderBenchmark {
+
+	private Fraction[] fractions;
+
+	@Setup
+	public void setup() {
+		fractions = new Fraction[Month.values().length];
+		for (Month month : Month.values()) {
+			fractions[month.ordinal()] = new Fraction(month, BenchmarkFixtures.FRACTIONS[month.ordinal()]);
+		}
+	}
+
+	@Benchmark
+	public Profile build() {
+		Profile.ProfileBuilder builder = new Profile.ProfileBuilder("P");
+		for (Fraction fraction : fractions) {
+			builder.addFraction(fraction);
+		}
+		return builder.build();
+	}
+}
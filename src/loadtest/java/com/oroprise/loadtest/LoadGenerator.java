@@ -0,0 +1,253 @@
+package com.oroprise.loadtest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import com.oroprise.bo.Month;
+import com.oroprise.util.BinaryReadingsEncoder;
+import com.oroprise.vo.MeterReadingVo;
+import com.oroprise.vo.ProfileVo;
+
+/**
+ * Synthesises profiles and the uploads of their connections. Every connection is valid unless it is picked for one of
+ * the failure branches of CreateMeterReadingService, by ratio. Requests are generated from their own seed, so a run is
+ * reproducible whatever the concurrency.
+ *
+ */
+public class LoadGenerator {
+
+	/** what a connection is expected to be reported as */
+	public enum Outcome {
+		SUCCESS, PROFILE_NOT_FOUND, INSUFFICIENT_READINGS, INVALID_ORDER, CONSUMPTION_OUT_OF_RANGE
+	}
+
+	private static final int MONTHS = Month.values().length;
+	/** fractions are weight / 1000, a month keeps at least MIN_WEIGHT so its consumption can be pushed out of range */
+	private static final int TOTAL_WEIGHT = 1000;
+	private static final int MIN_WEIGHT = 40;
+	private static final int MAX_WEIGHT = 150;
+	private static final long MIN_YEARLY_CONSUMPTION = 10000;
+	private static final long MAX_YEARLY_CONSUMPTION = 100000;
+
+	private final int profiles;
+	private final int year;
+	private final long seed;
+	private final double[] failureRatios = new double[Outcome.values().length];
+	private final double[][] fractions;
+
+	public LoadGenerator(int profiles, int year, long seed) {
+		this.profiles = profiles;
+		this.year = year;
+		this.seed = seed;
+		this.fractions = new double[profiles][];
+		Random random = new Random(seed);
+		for (int p = 0; p < profiles; p++) {
+			fractions[p] = fractions(random);
+		}
+	}
+
+	/**
+	 * @param outcome failure branch
+	 * @param ratio share of the connections that take it
+	 * @return this generator
+	 */
+	public LoadGenerator failureRatio(Outcome outcome, double ratio) {
+		if (outcome == Outcome.SUCCESS || ratio < 0) {
+			throw new IllegalArgumentException("Invalid failure ratio " + outcome + " : " + ratio);
+		}
+		failureRatios[outcome.ordinal()] = ratio;
+		double total = 0;
+		for (double r : failureRatios) {
+			total += r;
+		}
+		if (total > 1) {
+			throw new IllegalArgumentException("Failure ratios add up to " + total + ", more than 1");
+		}
+		return this;
+	}
+
+	/**
+	 * @return 12 rows per profile, in the format of POST /api/profiles/import
+	 */
+	public List<ProfileVo> profileVos() {
+		List<ProfileVo> vos = new ArrayList<>(profiles * MONTHS);
+		for (int p = 0; p < profiles; p++) {
+			for (Month month : Month.values()) {
+				ProfileVo vo = new ProfileVo();
+				vo.setName(profileName(p));
+				vo.setMonth(month.name());
+				vo.setFraction(Double.toString(fractions[p][month.ordinal()]));
+				vos.add(vo);
+			}
+		}
+		return vos;
+	}
+
+	/**
+	 * Generates the connections of a request
+	 *
+	 * @param prefix prefix of the connectionIds, keeps the connections of separate phases apart
+	 * @param request index of the request, seeds its generation
+	 * @param connections number of connections of the request
+	 * @return
+	 */
+	public Batch batch(String prefix, int request, int connections) {
+		Random random = new Random(seed * 31 + request);
+		Batch batch = new Batch(connections);
+		for (int c = 0; c < connections; c++) {
+			int p = random.nextInt(profiles);
+			String connectionId = String.format("%s%d-%d", prefix, request, c);
+			Outcome outcome = outcome(random.nextDouble());
+
+			long yearlyConsumption = MIN_YEARLY_CONSUMPTION + (long) (random.nextDouble() * (MAX_YEARLY_CONSUMPTION - MIN_YEARLY_CONSUMPTION));
+			long[] consumptions = new long[MONTHS];
+			for (int i = 0; i < MONTHS; i++) {
+				// not above the share of the fraction in the yearly consumption, not below it once rounded down
+				consumptions[i] = (long) (fractions[p][i] * yearlyConsumption);
+			}
+			int month = random.nextInt(MONTHS);
+			int monthsPresent = BinaryReadingsEncoder.ALL_MONTHS;
+			String profileName = profileName(p);
+			switch (outcome) {
+			case PROFILE_NOT_FOUND:
+				// one unknown profile per connection, so every one of them gets a status
+				profileName = "UNKNOWN-" + connectionId;
+				break;
+			case INSUFFICIENT_READINGS:
+				monthsPresent &= ~(1 << month);
+				break;
+			case CONSUMPTION_OUT_OF_RANGE:
+				consumptions[month] *= 2;
+				break;
+			default:
+				break;
+			}
+
+			long[] readings = new long[MONTHS];
+			long reading = 0;
+			for (int i = 0; i < MONTHS; i++) {
+				reading += consumptions[i];
+				readings[i] = reading;
+			}
+			if (outcome == Outcome.INVALID_ORDER) {
+				int lower = 1 + random.nextInt(MONTHS - 1);
+				readings[lower] = readings[lower - 1] - 1;
+			}
+			batch.add(profileName, connectionId, readings, monthsPresent, outcome);
+		}
+		return batch;
+	}
+
+	private Outcome outcome(double draw) {
+		double bound = 0;
+		for (Outcome outcome : Outcome.values()) {
+			bound += failureRatios[outcome.ordinal()];
+			if (draw < bound) {
+				return outcome;
+			}
+		}
+		return Outcome.SUCCESS;
+	}
+
+	private static String profileName(int p) {
+		return "LOAD-" + p;
+	}
+
+	/**
+	 * Weights of MIN_WEIGHT to MAX_WEIGHT adding up to TOTAL_WEIGHT, moved around randomly from an even spread
+	 */
+	private static double[] fractions(Random random) {
+		int[] weights = new int[MONTHS];
+		for (int i = 0; i < MONTHS; i++) {
+			weights[i] = TOTAL_WEIGHT / MONTHS + (i < TOTAL_WEIGHT % MONTHS ? 1 : 0);
+		}
+		for (int moves = 0; moves < 100; moves++) {
+			int from = random.nextInt(MONTHS);
+			int to = random.nextInt(MONTHS);
+			int amount = 1 + random.nextInt(20);
+			if (from != to && weights[from] - amount >= MIN_WEIGHT && weights[to] + amount <= MAX_WEIGHT) {
+				weights[from] -= amount;
+				weights[to] += amount;
+			}
+		}
+		double[] fractions = new double[MONTHS];
+		for (int i = 0; i < MONTHS; i++) {
+			fractions[i] = weights[i] / (double) TOTAL_WEIGHT;
+		}
+		return fractions;
+	}
+
+	/**
+	 * Connections of a request with their expected outcome, convertible to every upload format
+	 */
+	public class Batch {
+		private final List<String> profileNames;
+		private final List<String> connectionIds;
+		private final List<long[]> readings;
+		private final int[] monthsPresent;
+		private final int[] expected = new int[Outcome.values().length];
+		private int rows;
+
+		private Batch(int connections) {
+			profileNames = new ArrayList<>(connections);
+			connectionIds = new ArrayList<>(connections);
+			readings = new ArrayList<>(connections);
+			monthsPresent = new int[connections];
+		}
+
+		private void add(String profileName, String connectionId, long[] connectionReadings, int months, Outcome outcome) {
+			monthsPresent[connectionIds.size()] = months;
+			profileNames.add(profileName);
+			connectionIds.add(connectionId);
+			readings.add(connectionReadings);
+			rows += Integer.bitCount(months);
+			expected[outcome.ordinal()]++;
+		}
+
+		public int getConnections() {
+			return connectionIds.size();
+		}
+
+		public int getRows() {
+			return rows;
+		}
+
+		/**
+		 * @return number of connections expected per Outcome ordinal
+		 */
+		public int[] getExpected() {
+			return expected;
+		}
+
+		/**
+		 * @return one MeterReadingVo per month present, the months of a connection are consecutive
+		 */
+		public List<MeterReadingVo> toMeterReadingVos() {
+			List<MeterReadingVo> vos = new ArrayList<>(rows);
+			for (int c = 0; c < connectionIds.size(); c++) {
+				for (Month month : Month.values()) {
+					if ((monthsPresent[c] & 1 << month.ordinal()) == 0) {
+						continue;
+					}
+					MeterReadingVo vo = new MeterReadingVo();
+					vo.setProfileName(profileNames.get(c));
+					vo.setConnectionId(connectionIds.get(c));
+					vo.setMonth(month);
+					vo.setReading(readings.get(c)[month.ordinal()]);
+					vo.setYear(year);
+					vos.add(vo);
+				}
+			}
+			return vos;
+		}
+
+		public byte[] toBinary() {
+			BinaryReadingsEncoder encoder = new BinaryReadingsEncoder();
+			for (int c = 0; c < connectionIds.size(); c++) {
+				encoder.add(profileNames.get(c), connectionIds.get(c), year, readings.get(c), monthsPresent[c]);
+			}
+			return encoder.toByteArray();
+		}
+	}
+}
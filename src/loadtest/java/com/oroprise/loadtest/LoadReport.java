@@ -0,0 +1,92 @@
+package com.oroprise.loadtest;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import lombok.Data;
+
+/**
+ * Outcome of a load test run, written as JSON so runs of different builds can be compared
+ *
+ */
+@Data
+public class LoadReport {
+
+	/** names the build or the change under test */
+	private String label;
+	private String startedAt;
+	private String javaVersion;
+	private int availableProcessors;
+	/** options of the run, defaults included */
+	private Map<String, String> options = new LinkedHashMap<>();
+
+	private int requests;
+	private long connections;
+	private long rows;
+	private long bodyBytes;
+	private double elapsedSeconds;
+	private double requestsPerSecond;
+	private double connectionsPerSecond;
+	private double rowsPerSecond;
+	/** latency of the measured requests, as seen by the client */
+	private Latency latency;
+	private int errors;
+
+	/** connections per outcome, as generated */
+	private Map<String, Long> expected = new LinkedHashMap<>();
+	/** connections per outcome, as reported in the statuses */
+	private Map<String, Long> reported = new LinkedHashMap<>();
+	/** ingest.* timers and counters of the application, timers include the warmup */
+	private Map<String, Object> serverMetrics = new LinkedHashMap<>();
+
+	/**
+	 * @return true if no request failed and every connection was reported as expected
+	 */
+	public boolean isConsistent() {
+		return errors == 0 && expected.equals(reported);
+	}
+
+	@Data
+	public static class Latency {
+		private double minMillis;
+		private double meanMillis;
+		private double p50Millis;
+		private double p90Millis;
+		private double p95Millis;
+		private double p99Millis;
+		private double p999Millis;
+		private double maxMillis;
+
+		/**
+		 * @param nanos latency of every request, sorted in place
+		 * @return
+		 */
+		public static Latency of(long[] nanos) {
+			Latency latency = new Latency();
+			if (nanos.length == 0) {
+				return latency;
+			}
+			Arrays.sort(nanos);
+			latency.minMillis = millis(nanos[0]);
+			latency.meanMillis = millis((long) Arrays.stream(nanos).average().getAsDouble());
+			latency.p50Millis = millis(percentile(nanos, 0.5));
+			latency.p90Millis = millis(percentile(nanos, 0.9));
+			latency.p95Millis = millis(percentile(nanos, 0.95));
+			latency.p99Millis = millis(percentile(nanos, 0.99));
+			latency.p999Millis = millis(percentile(nanos, 0.999));
+			latency.maxMillis = millis(nanos[nanos.length - 1]);
+			return latency;
+		}
+
+		/** nearest rank */
+		private static long percentile(long[] sorted, double quantile) {
+			int rank = (int) Math.ceil(quantile * sorted.length);
+			return sorted[Math.max(0, rank - 1)];
+		}
+
+		private static double millis(long nanos) {
+			return Math.round(nanos / 1000.0) / 1000.0;
+		}
+	}
+}
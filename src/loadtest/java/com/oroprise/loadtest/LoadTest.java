@@ -0,0 +1,474 @@
+package com.oroprise.loadtest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.Year;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.SimpleCommandLinePropertySource;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestTemplate;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Snapshot;
+import com.codahale.metrics.Timer;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.fakemongo.Fongo;
+import com.mongodb.MongoClient;
+import com.oroprise.OropriseApplication;
+import com.oroprise.loadtest.LoadGenerator.Batch;
+import com.oroprise.loadtest.LoadGenerator.Outcome;
+import com.oroprise.util.MediaTypes;
+import com.oroprise.vo.MeterReadingStatus;
+import com.oroprise.vo.MeterReadingVo;
+
+/**
+ * Starts the application on a random port against an in-memory Mongo stand-in, the Mongo of the mongo-uri option or
+ * the memory storage engine,
+ * imports synthetic profiles and posts synthetic meter readings to POST /api/meterreadings from concurrent clients.
+ * Reports throughput, client side latency percentiles, the statuses against the generated outcomes and the ingest
+ * metrics of the application. Options are given as --name=value, see DEFAULTS.
+ * <p>
+ * The in-memory stand-in runs in the same JVM and is far slower than a mongod on writes, compare its runs with each
+ * other only.
+ *
+ */
+public class LoadTest {
+
+	private static final Map<String, String> DEFAULTS = new LinkedHashMap<>();
+	static {
+		DEFAULTS.put("label", "");
+		DEFAULTS.put("profiles", "1000");
+		DEFAULTS.put("connections", "100000");
+		DEFAULTS.put("connections-per-request", "1000");
+		DEFAULTS.put("concurrency", "4");
+		// json, ndjson or binary
+		DEFAULTS.put("format", "json");
+		DEFAULTS.put("warmup-requests", "20");
+		DEFAULTS.put("unknown-profile-ratio", "0.01");
+		DEFAULTS.put("insufficient-ratio", "0.01");
+		DEFAULTS.put("invalid-order-ratio", "0.01");
+		DEFAULTS.put("out-of-range-ratio", "0.02");
+		DEFAULTS.put("seed", "42");
+		DEFAULTS.put("year", String.valueOf(Year.now().getValue()));
+		// memory runs the memory storage engine of the application instead of a Mongo
+		DEFAULTS.put("storage-engine", "mongo");
+		// a real Mongo instead of the in-memory stand-in, eg. mongodb://localhost:27017/oroprise-loadtest
+		DEFAULTS.put("mongo-uri", "");
+		// removes all documents of the database first, the readings of a previous run would be reported UNCHANGED
+		DEFAULTS.put("clean", "false");
+		// report file, defaults to target/loadtest/report-[timestamp].json
+		DEFAULTS.put("report", "");
+		// report of a previous run to compare with
+		DEFAULTS.put("baseline", "");
+	}
+
+	private static final String WARMUP_PREFIX = "W";
+	private static final String MEASURED_PREFIX = "M";
+
+	private final Map<String, String> options;
+	private final LoadGenerator generator;
+	private final RestTemplate restTemplate = new RestTemplate();
+	private ObjectMapper objectMapper;
+	private String meterReadingsUri;
+
+	private final AtomicLongArray expected = new AtomicLongArray(Outcome.values().length);
+	private final Map<String, AtomicLong> reported = new LinkedHashMap<>();
+	private final AtomicLong connections = new AtomicLong();
+	private final AtomicLong rows = new AtomicLong();
+	private final AtomicLong bodyBytes = new AtomicLong();
+	private final AtomicInteger errors = new AtomicInteger();
+
+	public static void main(String[] args) throws Exception {
+		LoadTest loadTest = new LoadTest(options(args));
+		LoadReport report = loadTest.run();
+		System.exit(report.isConsistent() ? 0 : 1);
+	}
+
+	LoadTest(Map<String, String> options) {
+		this.options = options;
+		this.generator = new LoadGenerator(intOption("profiles"), intOption("year"), Long.parseLong(options.get("seed")))
+				.failureRatio(Outcome.PROFILE_NOT_FOUND, doubleOption("unknown-profile-ratio"))
+				.failureRatio(Outcome.INSUFFICIENT_READINGS, doubleOption("insufficient-ratio"))
+				.failureRatio(Outcome.INVALID_ORDER, doubleOption("invalid-order-ratio"))
+				.failureRatio(Outcome.CONSUMPTION_OUT_OF_RANGE, doubleOption("out-of-range-ratio"));
+		for (Outcome outcome : Outcome.values()) {
+			reported.put(outcome.name(), new AtomicLong());
+		}
+	}
+
+	LoadReport run() throws Exception {
+		LoadReport report = new LoadReport();
+		report.setLabel(options.get("label"));
+		report.setStartedAt(LocalDateTime.now().toString());
+		report.setJavaVersion(System.getProperty("java.version"));
+		report.setAvailableProcessors(Runtime.getRuntime().availableProcessors());
+		report.setOptions(options);
+
+		try (ConfigurableApplicationContext context = start()) {
+			objectMapper = context.getBean(ObjectMapper.class);
+			String baseUri = "http://localhost:" + context.getEnvironment().getProperty("local.server.port") + "/api";
+			meterReadingsUri = baseUri + "/meterreadings";
+			if (Boolean.parseBoolean(options.get("clean")) && isMongo()) {
+				clean(context.getBean(MongoTemplate.class));
+			}
+			importProfiles(baseUri + "/profiles/import");
+
+			int concurrency = intOption("concurrency");
+			int perRequest = intOption("connections-per-request");
+			int total = intOption("connections");
+			int requests = (total + perRequest - 1) / perRequest;
+			ExecutorService clients = Executors.newFixedThreadPool(concurrency);
+			try {
+				System.out.printf("Warming up with %s requests%n", options.get("warmup-requests"));
+				List<Future<Long>> warmup = new ArrayList<>();
+				for (int r = 0; r < intOption("warmup-requests"); r++) {
+					int request = r;
+					warmup.add(clients.submit(() -> post(generator.batch(WARMUP_PREFIX, request, perRequest), false)));
+				}
+				await(warmup);
+
+				MetricRegistry metricRegistry = context.getBean(MetricRegistry.class);
+				Map<String, Long> countsBefore = counts(metricRegistry);
+				System.out.printf("Posting %d connections in %d requests of %d, %d concurrently, as %s%n", total, requests,
+						perRequest, concurrency, options.get("format"));
+
+				long start = System.nanoTime();
+				List<Future<Long>> measured = new ArrayList<>(requests);
+				for (int r = 0; r < requests; r++) {
+					int request = r;
+					int size = Math.min(perRequest, total - r * perRequest);
+					measured.add(clients.submit(() -> post(generator.batch(MEASURED_PREFIX, request, size), true)));
+				}
+				long[] latencies = await(measured);
+				double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+
+				report.setRequests(requests);
+				report.setConnections(connections.get());
+				report.setRows(rows.get());
+				report.setBodyBytes(bodyBytes.get());
+				report.setElapsedSeconds(elapsedSeconds);
+				report.setRequestsPerSecond(requests / elapsedSeconds);
+				report.setConnectionsPerSecond(connections.get() / elapsedSeconds);
+				report.setRowsPerSecond(rows.get() / elapsedSeconds);
+				report.setLatency(LoadReport.Latency.of(latencies));
+				report.setErrors(errors.get());
+				for (Outcome outcome : Outcome.values()) {
+					report.getExpected().put(outcome.name(), expected.get(outcome.ordinal()));
+				}
+				reported.forEach((status, count) -> report.getReported().put(status, count.get()));
+				report.setServerMetrics(serverMetrics(metricRegistry, countsBefore));
+			} finally {
+				clients.shutdownNow();
+			}
+		}
+
+		write(report);
+		return report;
+	}
+
+	/**
+	 * Starts the application, on the in-memory stand-in unless a mongo-uri or the memory storage engine is given.
+	 * Settings are passed as arguments to take precedence over application.properties.
+	 */
+	private ConfigurableApplicationContext start() {
+		List<String> args = new ArrayList<>();
+		args.add("--server.port=0");
+		args.add("--management.port=-1");
+		args.add("--oroprise.async.enabled=false");
+		if (!isMongo()) {
+			args.add("--oroprise.storage.engine=" + options.get("storage-engine"));
+			return new SpringApplicationBuilder(OropriseApplication.class).run(args.toArray(new String[0]));
+		}
+		if (options.get("mongo-uri").isEmpty()) {
+			// registered ahead of the application, so the MongoClient of MongoAutoConfiguration backs off
+			args.add("--" + InMemoryMongo.ENABLED + "=true");
+			args.add("--spring.data.mongodb.database=oroprise-loadtest");
+			return new SpringApplicationBuilder(InMemoryMongo.class, OropriseApplication.class).run(args.toArray(new String[0]));
+		}
+		args.add("--spring.data.mongodb.uri=" + options.get("mongo-uri"));
+		return new SpringApplicationBuilder(OropriseApplication.class).run(args.toArray(new String[0]));
+	}
+
+	private boolean isMongo() {
+		return "mongo".equalsIgnoreCase(options.get("storage-engine"));
+	}
+
+	private void clean(MongoTemplate mongoTemplate) {
+		for (String collectionName : mongoTemplate.getCollectionNames()) {
+			if (!collectionName.startsWith("system.")) {
+				mongoTemplate.remove(new Query(), collectionName);
+			}
+		}
+	}
+
+	private void importProfiles(String uri) throws IOException {
+		HttpHeaders headers = new HttpHeaders();
+		headers.setContentType(MediaType.APPLICATION_JSON);
+		byte[] body = objectMapper.writeValueAsBytes(generator.profileVos());
+		byte[] response = restTemplate.exchange(URI.create(uri), HttpMethod.POST, new HttpEntity<>(body, headers), byte[].class).getBody();
+		for (JsonNode status : objectMapper.readTree(response)) {
+			if (!MeterReadingStatus.SUCCESS.equals(status.path("status").asText())) {
+				throw new IllegalStateException("Profile import failed : " + status);
+			}
+		}
+		System.out.printf("Imported %s profiles%n", options.get("profiles"));
+	}
+
+	/**
+	 * Posts the connections of a batch in the format of the run, the body is encoded before the clock starts
+	 *
+	 * @param batch
+	 * @param measured true to count the batch and its statuses in the report
+	 * @return latency in nanoseconds, -1 if the request failed
+	 */
+	private long post(Batch batch, boolean measured) throws IOException {
+		HttpHeaders headers = new HttpHeaders();
+		byte[] body;
+		switch (options.get("format")) {
+		case "json":
+			headers.setContentType(MediaType.APPLICATION_JSON);
+			body = objectMapper.writeValueAsBytes(batch.toMeterReadingVos());
+			break;
+		case "ndjson":
+			headers.setContentType(MediaType.parseMediaType(MediaTypes.APPLICATION_NDJSON_VALUE));
+			ByteArrayOutputStream lines = new ByteArrayOutputStream();
+			for (MeterReadingVo vo : batch.toMeterReadingVos()) {
+				lines.write(objectMapper.writeValueAsBytes(vo));
+				lines.write('\n');
+			}
+			body = lines.toByteArray();
+			break;
+		case "binary":
+			headers.setContentType(MediaType.parseMediaType(MediaTypes.APPLICATION_METER_READINGS_VALUE));
+			body = batch.toBinary();
+			break;
+		default:
+			throw new IllegalArgumentException("Unknown format " + options.get("format") + ", expected json, ndjson or binary");
+		}
+
+		long start = System.nanoTime();
+		byte[] response;
+		try {
+			response = restTemplate.exchange(URI.create(meterReadingsUri), HttpMethod.POST, new HttpEntity<>(body, headers), byte[].class).getBody();
+		} catch (RestClientException e) {
+			System.err.println("Request failed : " + e.getMessage());
+			if (measured) {
+				errors.incrementAndGet();
+			}
+			return -1;
+		}
+		long latency = System.nanoTime() - start;
+
+		if (measured) {
+			connections.addAndGet(batch.getConnections());
+			rows.addAndGet(batch.getRows());
+			bodyBytes.addAndGet(body.length);
+			for (Outcome outcome : Outcome.values()) {
+				expected.addAndGet(outcome.ordinal(), batch.getExpected()[outcome.ordinal()]);
+			}
+			countStatuses(response);
+		}
+		return latency;
+	}
+
+	private void countStatuses(byte[] response) throws IOException {
+		// JSON uploads are answered with a JSON array, streamed ones with a status per line
+		if ("json".equals(options.get("format"))) {
+			for (JsonNode status : objectMapper.readTree(response)) {
+				count(status);
+			}
+			return;
+		}
+		for (String line : new String(response, StandardCharsets.UTF_8).split("\n")) {
+			if (!line.isEmpty()) {
+				count(objectMapper.readTree(line));
+			}
+		}
+	}
+
+	private void count(JsonNode status) {
+		String outcome = outcome(status.path("status").asText());
+		AtomicLong count = reported.get(outcome);
+		if (null == count) {
+			synchronized (reported) {
+				count = reported.computeIfAbsent(outcome, o -> new AtomicLong());
+			}
+		}
+		count.incrementAndGet();
+	}
+
+	/**
+	 * @param status status message of a connection
+	 * @return the Outcome it stands for, or the status itself if it is none of them
+	 */
+	static String outcome(String status) {
+		if (MeterReadingStatus.SUCCESS.equals(status)) {
+			return Outcome.SUCCESS.name();
+		} else if (status.contains("Profile NOT FOUND")) {
+			return Outcome.PROFILE_NOT_FOUND.name();
+		} else if (status.contains("Readings Insufficient")) {
+			return Outcome.INSUFFICIENT_READINGS.name();
+		} else if (status.contains("not in ascending Order")) {
+			return Outcome.INVALID_ORDER.name();
+		} else if (status.startsWith("consumption: ")) {
+			return Outcome.CONSUMPTION_OUT_OF_RANGE.name();
+		}
+		return status;
+	}
+
+	/**
+	 * @return latencies of the requests that did not fail
+	 */
+	private static long[] await(List<Future<Long>> requests) throws InterruptedException, ExecutionException {
+		long[] latencies = new long[requests.size()];
+		int succeeded = 0;
+		for (Future<Long> request : requests) {
+			long latency = request.get();
+			if (latency >= 0) {
+				latencies[succeeded++] = latency;
+			}
+		}
+		long[] result = new long[succeeded];
+		System.arraycopy(latencies, 0, result, 0, succeeded);
+		return result;
+	}
+
+	/**
+	 * Counts of the ingest meters and counters, to leave out those of the warmup
+	 */
+	private static Map<String, Long> counts(MetricRegistry metricRegistry) {
+		Map<String, Long> counts = new LinkedHashMap<>();
+		metricRegistry.getCounters((name, metric) -> name.startsWith("ingest.")).forEach((name, counter) -> counts.put(name, counter.getCount()));
+		metricRegistry.getMeters((name, metric) -> name.startsWith("ingest.")).forEach((name, meter) -> counts.put(name, meter.getCount()));
+		return counts;
+	}
+
+	private static Map<String, Object> serverMetrics(MetricRegistry metricRegistry, Map<String, Long> countsBefore) {
+		Map<String, Object> metrics = new LinkedHashMap<>();
+		for (Entry<String, Timer> timer : metricRegistry.getTimers((name, metric) -> name.startsWith("ingest.")).entrySet()) {
+			Snapshot snapshot = timer.getValue().getSnapshot();
+			Map<String, Object> values = new LinkedHashMap<>();
+			values.put("count", timer.getValue().getCount());
+			values.put("meanMillis", snapshot.getMean() / 1e6);
+			values.put("p50Millis", snapshot.getMedian() / 1e6);
+			values.put("p99Millis", snapshot.get99thPercentile() / 1e6);
+			values.put("maxMillis", snapshot.getMax() / 1e6);
+			metrics.put(timer.getKey(), values);
+		}
+		for (Entry<String, Counter> counter : metricRegistry.getCounters((name, metric) -> name.startsWith("ingest.")).entrySet()) {
+			metrics.put(counter.getKey(), counter.getValue().getCount() - countsBefore.getOrDefault(counter.getKey(), 0L));
+		}
+		for (Entry<String, Meter> meter : metricRegistry.getMeters((name, metric) -> name.startsWith("ingest.")).entrySet()) {
+			metrics.put(meter.getKey(), meter.getValue().getCount() - countsBefore.getOrDefault(meter.getKey(), 0L));
+		}
+		return metrics;
+	}
+
+	/**
+	 * Writes the report, prints its summary and the comparison with the baseline if one is given
+	 */
+	private void write(LoadReport report) throws IOException {
+		File file = new File(options.get("report").isEmpty()
+				? "target/loadtest/report-" + LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss")) + ".json"
+				: options.get("report"));
+		if (null != file.getParentFile()) {
+			file.getParentFile().mkdirs();
+		}
+		objectMapper.writerWithDefaultPrettyPrinter().writeValue(file, report);
+
+		LoadReport.Latency latency = report.getLatency();
+		System.out.printf("%n%d requests, %d connections, %d rows in %.1f s, %d errors%n", report.getRequests(),
+				report.getConnections(), report.getRows(), report.getElapsedSeconds(), report.getErrors());
+		System.out.printf("throughput  %.1f requests/s, %.0f connections/s, %.0f rows/s%n", report.getRequestsPerSecond(),
+				report.getConnectionsPerSecond(), report.getRowsPerSecond());
+		System.out.printf("latency ms  p50 %.1f, p90 %.1f, p99 %.1f, p99.9 %.1f, max %.1f%n", latency.getP50Millis(),
+				latency.getP90Millis(), latency.getP99Millis(), latency.getP999Millis(), latency.getMaxMillis());
+		System.out.printf("expected    %s%nreported    %s%n", report.getExpected(), report.getReported());
+		if (!report.isConsistent()) {
+			System.out.println("INCONSISTENT, the statuses do not match the generated connections");
+		}
+
+		if (!options.get("baseline").isEmpty()) {
+			LoadReport baseline = objectMapper.readValue(new File(options.get("baseline")), LoadReport.class);
+			System.out.printf("%nagainst %s (%s)%n", options.get("baseline"), baseline.getLabel());
+			compare("rows/s", baseline.getRowsPerSecond(), report.getRowsPerSecond());
+			compare("p50 ms", baseline.getLatency().getP50Millis(), latency.getP50Millis());
+			compare("p99 ms", baseline.getLatency().getP99Millis(), latency.getP99Millis());
+			compare("p99.9 ms", baseline.getLatency().getP999Millis(), latency.getP999Millis());
+		}
+		System.out.printf("%nReport written to %s%n", file.getPath());
+	}
+
+	private static void compare(String name, double baseline, double current) {
+		System.out.printf("%-10s %12.1f -> %12.1f  %+.1f%%%n", name, baseline, current, baseline == 0 ? 0 : (current - baseline) * 100 / baseline);
+	}
+
+	/**
+	 * The defaults overridden by the --name=value arguments
+	 */
+	static Map<String, String> options(String[] args) {
+		SimpleCommandLinePropertySource arguments = new SimpleCommandLinePropertySource(args);
+		for (String name : arguments.getPropertyNames()) {
+			if (!DEFAULTS.containsKey(name)) {
+				throw new IllegalArgumentException("Unknown option --" + name + ", expected one of " + DEFAULTS.keySet());
+			}
+		}
+		Map<String, String> options = new LinkedHashMap<>();
+		DEFAULTS.forEach((name, value) -> options.put(name, arguments.containsProperty(name) ? arguments.getProperty(name) : value));
+		return options;
+	}
+
+	private int intOption(String name) {
+		return Integer.parseInt(options.get(name));
+	}
+
+	private double doubleOption(String name) {
+		return Double.parseDouble(options.get(name));
+	}
+
+	/**
+	 * Mongo stand-in, only used when enabled as it is within the packages scanned by the application
+	 */
+	@Configuration
+	@ConditionalOnProperty(InMemoryMongo.ENABLED)
+	static class InMemoryMongo {
+
+		static final String ENABLED = "loadtest.in-memory-mongo";
+
+		@Bean
+		public MongoClient inMemoryMongo() {
+			return new Fongo("oroprise-loadtest").getMongo();
+		}
+	}
+}
@@ -16,4 +16,6 @@ public class Connection implements Serializable {
 	private static final long serialVersionUID = 4580492193993528801L;
 	private String profileName;
 	private String connectionId;
+	/** year of the readings, every year of a connection is a separate MeterReading */
+	private Integer year;
 }
@@ -0,0 +1,116 @@
+package com.oroprise.bo;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Readings of the connections of a profile in a year as a struct of arrays, a column per month and a row per
+ * connection, so a question about a month is answered by a loop over two primitive arrays. A removed row is filled with
+ * the last one, rows are not in any particular order. Not thread safe.
+ *
+ */
+public class ConsumptionColumns {
+	private static final int MONTHS = MonthlyReadings.MONTHS;
+	private static final int INITIAL_CAPACITY = 16;
+
+	private final Map<String, Integer> rows = new HashMap<>();
+	private String[] connectionIds = new String[INITIAL_CAPACITY];
+	/** DEC reading of the previous year of every connection, the reading before JAN */
+	private long[] baselines = new long[INITIAL_CAPACITY];
+	/** readings[month ordinal][row] */
+	private final long[][] readings = new long[MONTHS][INITIAL_CAPACITY];
+	private int size;
+
+	public int size() {
+		return size;
+	}
+
+	public String getConnectionId(int row) {
+		return connectionIds[row];
+	}
+
+	/**
+	 * Adds the connection, or replaces its readings
+	 *
+	 * @param connectionId
+	 * @param baseline
+	 * @param monthReadings readings indexed by {@link Month#ordinal()}
+	 */
+	public void put(String connectionId, long baseline, long[] monthReadings) {
+		Integer row = rows.get(connectionId);
+		if (null == row) {
+			row = append(connectionId);
+		}
+		baselines[row] = baseline;
+		for (int i = 0; i < MONTHS; i++) {
+			readings[i][row] = monthReadings[i];
+		}
+	}
+
+	/**
+	 * @param connectionId
+	 * @return true if the connection was there
+	 */
+	public boolean remove(String connectionId) {
+		Integer row = rows.remove(connectionId);
+		if (null == row) {
+			return false;
+		}
+		int last = --size;
+		if (row != last) {
+			connectionIds[row] = connectionIds[last];
+			baselines[row] = baselines[last];
+			for (int i = 0; i < MONTHS; i++) {
+				readings[i][row] = readings[i][last];
+			}
+			rows.put(connectionIds[row], row);
+		}
+		connectionIds[last] = null;
+		return true;
+	}
+
+	public boolean contains(String connectionId) {
+		return rows.containsKey(connectionId);
+	}
+
+	/**
+	 * @param monthIndex {@link Month#ordinal()}
+	 * @return the consumption of every row in the month, the difference to the reading of the previous month
+	 */
+	public long[] consumptions(int monthIndex) {
+		long[] current = readings[monthIndex];
+		long[] previous = monthIndex == 0 ? baselines : readings[monthIndex - 1];
+		long[] consumptions = new long[size];
+		for (int i = 0; i < size; i++) {
+			consumptions[i] = current[i] - previous[i];
+		}
+		return consumptions;
+	}
+
+	/**
+	 * @return the consumption of every row in the year, from the baseline to the DEC reading
+	 */
+	public long[] yearlyConsumptions() {
+		long[] december = readings[MONTHS - 1];
+		long[] consumptions = new long[size];
+		for (int i = 0; i < size; i++) {
+			consumptions[i] = december[i] - baselines[i];
+		}
+		return consumptions;
+	}
+
+	private int append(String connectionId) {
+		if (size == connectionIds.length) {
+			int capacity = size + (size >> 1);
+			connectionIds = Arrays.copyOf(connectionIds, capacity);
+			baselines = Arrays.copyOf(baselines, capacity);
+			for (int i = 0; i < MONTHS; i++) {
+				readings[i] = Arrays.copyOf(readings[i], capacity);
+			}
+		}
+		connectionIds[size] = connectionId;
+		rows.put(connectionId, size);
+		return size++;
+	}
+}
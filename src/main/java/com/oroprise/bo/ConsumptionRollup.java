@@ -0,0 +1,35 @@
+package com.oroprise.bo;
+
+import org.springframework.data.annotation.Id;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Consumption of all connections of a profile in one month, maintained incrementally while ingesting
+ * so it can be read without scanning the meterReadings.
+ *
+ */
+@Data
+@NoArgsConstructor
+public class ConsumptionRollup {
+	@Id
+	private ProfileMonth id;
+	private long totalConsumption;
+	private long connections;
+	/** lowest consumption of a connection ingested for the month, null if none */
+	private Long minConsumption;
+	/** highest consumption of a connection ingested for the month, null if none */
+	private Long maxConsumption;
+
+	public ConsumptionRollup(ProfileMonth id) {
+		this.id = id;
+	}
+
+	/**
+	 * @return average consumption per connection, 0 if there is no connection
+	 */
+	public double getMeanConsumption() {
+		return connections == 0 ? 0 : (double) totalConsumption / connections;
+	}
+}
@@ -11,4 +11,35 @@ public class MeterReading {
 	@Id
 	private Connection connection;
 	private List<MeterRecord> meterRecords;
+	/** DEC reading of the previous year, the readings of this year count on from it, null if there is none */
+	private Long baseline;
+	/** derived from meterRecords and baseline, stored to be indexed */
+	private Long yearlyConsumption;
+	/** {@link MonthlyReadings#fingerprint()} of the meterRecords and baseline, to recognize unchanged uploads */
+	private Long fingerprint;
+
+	/**
+	 * @param meterRecords
+	 * @return the DEC reading, 0 if there is none
+	 */
+	public static long decemberReading(List<MeterRecord> meterRecords) {
+		long reading = 0;
+		for (MeterRecord meterRecord : meterRecords) {
+			if (meterRecord.getMonth() == Month.DEC) {
+				reading = meterRecord.getReading();
+			}
+		}
+		return reading;
+	}
+
+	/**
+	 * Readings count on from the baseline, so the consumption over the year is the DEC reading minus the baseline
+	 * 
+	 * @param meterRecords
+	 * @param baseline
+	 * @return
+	 */
+	public static long yearlyConsumption(List<MeterRecord> meterRecords, Long baseline) {
+		return decemberReading(meterRecords) - (null == baseline ? 0 : baseline);
+	}
 }
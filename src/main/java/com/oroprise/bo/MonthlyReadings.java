@@ -0,0 +1,95 @@
+package com.oroprise.bo;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Meter readings of a single connection in a year, kept as a primitive vector indexed by {@link Month#ordinal()}
+ * so the validation works without boxing or sorting.
+ *
+ */
+public class MonthlyReadings {
+	public static final int MONTHS = Month.values().length;
+
+	private static final int ALL_MONTHS = (1 << MONTHS) - 1;
+
+	@Getter
+	private final Connection connection;
+	private final long[] readings = new long[MONTHS];
+	private int monthsPresent;
+	@Getter
+	private int rows;
+	/** DEC reading of the previous year of the connection, 0 if there is none */
+	@Getter
+	@Setter
+	private long baseline;
+
+	public MonthlyReadings(Connection connection) {
+		this.connection = connection;
+	}
+
+	/**
+	 * Sets the reading of the month, a month set twice keeps the last reading but counts as an extra row
+	 * 
+	 * @param month
+	 * @param reading
+	 * @return
+	 */
+	public MonthlyReadings set(Month month, long reading) {
+		if (month == null) {
+			throw new IllegalArgumentException("Month cannot be null");
+		}
+		readings[month.ordinal()] = reading;
+		monthsPresent |= 1 << month.ordinal();
+		rows++;
+		return this;
+	}
+
+	/**
+	 * @param monthIndex {@link Month#ordinal()}
+	 * @return
+	 */
+	public long get(int monthIndex) {
+		return readings[monthIndex];
+	}
+
+	/**
+	 * @return true if there is exactly one reading for every month
+	 */
+	public boolean isComplete() {
+		return rows == MONTHS && monthsPresent == ALL_MONTHS;
+	}
+
+	/**
+	 * Content hash of the readings and the baseline, equal for equal readings of the 12 months counting on from the same
+	 * baseline. The connection is not part of it.
+	 * 
+	 * @return
+	 */
+	public long fingerprint() {
+		Hasher hasher = Hashing.murmur3_128().newHasher();
+		for (long reading : readings) {
+			hasher.putLong(reading);
+		}
+		hasher.putLong(baseline);
+		return hasher.hash().asLong();
+	}
+
+	/**
+	 * @return true if no reading is lower than the one of the previous month, nor JAN lower than the baseline
+	 */
+	public boolean isAscending() {
+		if (readings[0] < baseline) {
+			return false;
+		}
+		for (int i = 1; i < MONTHS; i++) {
+			if (readings[i] < readings[i - 1]) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
@@ -3,7 +3,6 @@
  */
 package com.oroprise.bo;
 
-import java.text.DecimalFormat;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Set;
@@ -11,6 +10,10 @@ import java.util.TreeSet;
 import java.util.stream.Collectors;
 
 import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.PersistenceConstructor;
+import org.springframework.data.annotation.Transient;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
 
 import lombok.Getter;
 
@@ -21,13 +24,34 @@ import lombok.Getter;
 public class Profile {
 	@Getter
 	@Id
-	private String name;
+	private final String name;
 	@Getter
-	private Set<Fraction> fractions;
+	private final Set<Fraction> fractions;
+	/** final, cached profiles are shared between the validating threads */
+	@Transient
+	private final double[] fractionValues;
 	
 	private final static List<Fraction> DUMMYFRACTIONS = Arrays.asList(Month.values()).stream().map(m->new Fraction(m, 0f)).collect(Collectors.toList());
 	
-	private Profile() {
+	@PersistenceConstructor
+	private Profile(String name, Set<Fraction> fractions) {
+		this.name = name;
+		this.fractions = fractions;
+		this.fractionValues = new double[Month.values().length];
+		for (Fraction fraction : fractions) {
+			fractionValues[fraction.getMonth().ordinal()] = fraction.getValue();
+		}
+	}
+
+	/**
+	 * Fraction values indexed by {@link Month#ordinal()}, computed when the Profile is built or read.
+	 * Months without fraction have value 0.
+	 * 
+	 * @return
+	 */
+	@JsonIgnore
+	public double[] getFractionValues() {
+		return fractionValues;
 	}
 
 	public static class ProfileBuilder {
@@ -60,24 +84,20 @@ public class Profile {
 		}
 
 		/**
-		 * Builds profile only if the totalfractionvalue is 1
+		 * Builds profile only if the totalfractionvalue rounds to 1, half to even
 		 * 
 		 * @return
 		 */
 		public Profile build() {
-			if (!new DecimalFormat("#").format(totalFractionValue).equals("1")) {
+			if (Math.rint(totalFractionValue) != 1) {
 				throw new IllegalArgumentException(
-						String.format("Total Fraction Value for %s : %d, but should be 1", name, totalFractionValue));
+						String.format("Total Fraction Value for %s : %s, but should be 1", name, totalFractionValue));
 			}
 			
 			// add missing months
 			fractions.addAll(DUMMYFRACTIONS);
 
-			Profile profile = new Profile();
-			profile.name = name;
-			profile.fractions = fractions;
-
-			return profile;
+			return new Profile(name, fractions);
 		}
 	}
 }
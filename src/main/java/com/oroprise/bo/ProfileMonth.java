@@ -0,0 +1,20 @@
+package com.oroprise.bo;
+
+import java.io.Serializable;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class ProfileMonth implements Serializable {
+	/**
+	 * 
+	 */
+	private static final long serialVersionUID = -2160658870745167422L;
+	private String profileName;
+	private Integer year;
+	private Month month;
+}
@@ -0,0 +1,215 @@
+package com.oroprise.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import lombok.Data;
+import lombok.Getter;
+
+/**
+ * Properties specific to Oroprise.
+ * <p>
+ * Properties are configured in the application.properties file, using the "oroprise." prefix.
+ */
+@ConfigurationProperties(prefix = "oroprise", ignoreUnknownFields = false)
+public class ApplicationProperties {
+
+	@Getter
+	private final Ingest ingest = new Ingest();
+
+	@Getter
+	private final ProfileCache profileCache = new ProfileCache();
+
+	@Getter
+	private final ResponseCache responseCache = new ResponseCache();
+
+	@Getter
+	private final IngestJobs ingestJobs = new IngestJobs();
+
+	@Getter
+	private final Storage storage = new Storage();
+
+	@Getter
+	private final Async async = new Async();
+
+	@Getter
+	private final ConsumptionIndex consumptionIndex = new ConsumptionIndex();
+
+	@Getter
+	private final Journal journal = new Journal();
+
+	@Data
+	public static class Ingest {
+		/**
+		 * maximum number of profile names sent in a single $in lookup
+		 */
+		private int profileLookupChunkSize = 1000;
+
+		/**
+		 * number of validated meterReadings flushed per unordered bulk upsert
+		 */
+		private int writeBatchSize = 1000;
+
+		/**
+		 * report connections whose readings equal the stored ones as UNCHANGED, without validating or writing them
+		 */
+		private boolean skipUnchanged = true;
+
+		/**
+		 * number of threads validating the connections of large uploads
+		 */
+		private int validationParallelism = Runtime.getRuntime().availableProcessors();
+
+		/**
+		 * uploads with fewer connections are validated on the request thread
+		 */
+		private int validationParallelThreshold = 1000;
+
+		/**
+		 * check the consumption of all months rather than stopping at the first one out of range, failures list every
+		 * such month with its allowed range
+		 */
+		private boolean fullDiagnostics = false;
+	}
+
+	@Data
+	public static class ProfileCache {
+		/**
+		 * maximum number of profiles kept, least recently used ones are evicted first
+		 */
+		private long maximumSize = 10000;
+
+		/**
+		 * profiles are reloaded this long after they were cached, picks up changes made by other instances
+		 */
+		private long timeToLiveSeconds = 600;
+	}
+
+	@Data
+	public static class ResponseCache {
+		/**
+		 * maximum number of serialized responses kept per kind, least recently used ones are evicted first
+		 */
+		private long maximumSize = 10000;
+
+		/**
+		 * responses are reloaded this long after they were cached, picks up changes made by other instances
+		 */
+		private long timeToLiveSeconds = 60;
+	}
+
+	@Data
+	public static class IngestJobs {
+		/**
+		 * number of uploads processed in the background at the same time
+		 */
+		private int poolSize = 2;
+
+		/**
+		 * uploads waiting for a worker, further ones are rejected until the queue drains
+		 */
+		private int queueCapacity = 20;
+
+		/**
+		 * finished jobs and their results can be polled this long
+		 */
+		private long retentionSeconds = 3600;
+	}
+
+	@Data
+	public static class Storage {
+		/**
+		 * where profiles, meterReadings and rollups are kept, MEMORY needs no database process
+		 */
+		private Engine engine = Engine.MONGO;
+
+		private final Memory memory = new Memory();
+
+		/**
+		 * store meterReadings as {_id: {p, c}, r: [12 readings]} instead of the mapped sub documents,
+		 * existing documents are migrated on startup, and migrated back once it is turned off again
+		 */
+		private boolean compactMeterReadings = false;
+
+		/**
+		 * year of the meterReadings stored before readings were kept per year, the current year if unset. They are moved
+		 * to it on the first startup, later startups find the migration recorded and skip it.
+		 */
+		private Integer legacyReadingYear;
+	}
+
+	public enum Engine {
+		MONGO, MEMORY
+	}
+
+	@Data
+	public static class Memory {
+		/**
+		 * file the memory engine is loaded from on startup and saved to on shutdown, nothing is kept across restarts
+		 * if unset
+		 */
+		private String snapshotFile;
+
+		/**
+		 * also save the snapshot every this many seconds, only on shutdown if 0
+		 */
+		private long snapshotIntervalSeconds = 0;
+	}
+
+	@Data
+	public static class Async {
+		/**
+		 * serve JSON meter reading uploads with servlet async requests on the asynchronous MongoDB driver, request
+		 * threads are released while the ingest waits for the database
+		 */
+		private boolean enabled = false;
+	}
+
+	@Data
+	public static class ConsumptionIndex {
+		/**
+		 * keep the readings of every connection in memory, by profile and year in columns per month, maintained on
+		 * ingest and loaded on startup, for the /api/consumption-index queries
+		 */
+		private boolean enabled = false;
+
+		/**
+		 * number of profiles loaded at the same time on startup
+		 */
+		private int loaderParallelism = Runtime.getRuntime().availableProcessors();
+	}
+
+	@Data
+	public static class Journal {
+		/**
+		 * acknowledge validated meterReadings once they are appended and synced to a local journal, a background
+		 * flusher writes them to the storage engine
+		 */
+		private boolean enabled = false;
+
+		/**
+		 * directory of the journal segments, meterReadings found there on startup are written again
+		 */
+		private String directory = "data/journal";
+
+		/**
+		 * a new segment is started once the current one is this large, segments are deleted once all their
+		 * meterReadings are written
+		 */
+		private long segmentSize = 64 * 1024 * 1024;
+
+		/**
+		 * maximum number of meterReadings written per bulk upsert of the flusher
+		 */
+		private int flushBatchSize = 5000;
+
+		/**
+		 * the flusher looks for journaled meterReadings this often, and retries this long after a failed write
+		 */
+		private long flushIntervalMillis = 100;
+
+		/**
+		 * uploads wait while this many meterReadings are journaled but not written yet
+		 */
+		private int maxPending = 1000000;
+	}
+}
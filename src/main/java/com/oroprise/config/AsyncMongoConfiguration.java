@@ -0,0 +1,43 @@
+package com.oroprise.config;
+
+import org.bson.codecs.configuration.CodecRegistries;
+import org.bson.codecs.configuration.CodecRegistry;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.mongo.MongoProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import com.mongodb.ConnectionString;
+import com.mongodb.DBObjectCodecProvider;
+import com.mongodb.async.client.MongoClient;
+import com.mongodb.async.client.MongoClients;
+import com.mongodb.async.client.MongoDatabase;
+
+/**
+ * Asynchronous MongoDB driver of the async ingest mode, next to the synchronous one of Spring Data. It connects to the
+ * database configured in spring.data.mongodb and works on DBObjects, so documents are mapped by the MongoConverter of
+ * the MongoTemplate, in the schema in use.
+ *
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "oroprise.async", name = "enabled")
+public class AsyncMongoConfiguration {
+
+	@Bean(destroyMethod = "close")
+	public MongoClient asyncMongoClient(MongoProperties mongoProperties) {
+		String uri = mongoProperties.getUri();
+		if (null == uri) {
+			String host = null == mongoProperties.getHost() ? "localhost" : mongoProperties.getHost();
+			int port = null == mongoProperties.getPort() ? MongoProperties.DEFAULT_PORT : mongoProperties.getPort();
+			uri = "mongodb://" + host + ":" + port;
+		}
+		return MongoClients.create(new ConnectionString(uri));
+	}
+
+	@Bean
+	public MongoDatabase asyncMongoDatabase(MongoClient asyncMongoClient, MongoProperties mongoProperties) {
+		CodecRegistry codecRegistry = CodecRegistries.fromRegistries(MongoClients.getDefaultCodecRegistry(),
+				CodecRegistries.fromProviders(new DBObjectCodecProvider()));
+		return asyncMongoClient.getDatabase(mongoProperties.getMongoClientDatabase()).withCodecRegistry(codecRegistry);
+	}
+}
@@ -1,20 +1,39 @@
 package com.oroprise.config;
 
+import org.springframework.beans.factory.SmartInitializingSingleton;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.autoconfigure.mongo.MongoAutoConfiguration;
 import org.springframework.boot.autoconfigure.mongo.MongoProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Import;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.domain.Sort.Direction;
 import org.springframework.data.mongodb.config.AbstractMongoConfiguration;
+import org.springframework.data.mongodb.core.IndexOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.convert.CustomConversions;
+import org.springframework.data.mongodb.core.index.Index;
 import org.springframework.data.mongodb.core.mapping.event.ValidatingMongoEventListener;
 import org.springframework.data.mongodb.repository.config.EnableMongoRepositories;
 import org.springframework.validation.beanvalidation.LocalValidatorFactoryBean;
 
 import com.mongodb.Mongo;
+import com.oroprise.bo.MeterReading;
+import com.oroprise.repository.MeterReadingRepository;
+import com.oroprise.repository.MeterReadingSchema;
 
+import lombok.extern.slf4j.Slf4j;
 
+
+/**
+ * Mongo storage engine, the default one
+ *
+ */
 @Configuration
+@Slf4j
+@ConditionalOnProperty(prefix = "oroprise.storage", name = "engine", havingValue = "mongo", matchIfMissing = true)
 @EnableMongoRepositories("com.oroprise.repository")
 @Import(value = MongoAutoConfiguration.class)
 public class DatabaseConfiguration extends AbstractMongoConfiguration {
@@ -25,6 +44,9 @@ public class DatabaseConfiguration extends AbstractMongoConfiguration {
     @Autowired
     private MongoProperties mongoProperties;
 
+    @Autowired
+    private ApplicationProperties applicationProperties;
+
     @Bean
     public ValidatingMongoEventListener validatingMongoEventListener() {
         return new ValidatingMongoEventListener(validator());
@@ -35,6 +57,43 @@ public class DatabaseConfiguration extends AbstractMongoConfiguration {
         return new LocalValidatorFactoryBean();
     }
 
+    /**
+     * Writes the compact MeterReading format when enabled, and reads both formats either way, see {@link MeterReadingSchema}
+     */
+    @Bean
+    @Override
+    public CustomConversions customConversions() {
+        return new CustomConversions(MeterReadingSchema.converters(applicationProperties.getStorage().isCompactMeterReadings()));
+    }
+
+    /**
+     * Secondary indexes of the meterReadings in the field names of the schema in use, ordered by yearly consumption
+     * overall and within a profile. Created once all singletons are up, ie., after the documents were migrated, then
+     * documents written before the yearly consumption was stored are completed.
+     */
+    @Bean
+    public SmartInitializingSingleton meterReadingIndexes(MongoTemplate mongoTemplate, MeterReadingRepository meterReadingRepository) {
+        return () -> {
+            boolean compact = applicationProperties.getStorage().isCompactMeterReadings();
+            String yearlyConsumption = MeterReadingSchema.yearlyConsumptionField(compact);
+            String profileName = MeterReadingSchema.ID + "." + MeterReadingSchema.profileNameField(compact);
+            try {
+                IndexOperations indexOps = mongoTemplate.indexOps(MeterReading.class);
+                indexOps.ensureIndex(new Index().on(yearlyConsumption, Direction.ASC).on(MeterReadingSchema.ID, Direction.ASC)
+                        .named(yearlyConsumption));
+                indexOps.ensureIndex(new Index().on(profileName, Direction.ASC).on(yearlyConsumption, Direction.ASC)
+                        .on(MeterReadingSchema.ID, Direction.ASC).named(profileName + "_" + yearlyConsumption));
+
+                long updated = meterReadingRepository.backfillYearlyConsumption(applicationProperties.getIngest().getWriteBatchSize());
+                if (updated > 0) {
+                    log.info("Stored the yearly consumption of {} meterReadings", updated);
+                }
+            } catch (DataAccessException e) {
+                log.error("MeterReading indexes could not be created, queries by yearly consumption scan the collection", e);
+            }
+        };
+    }
+
     @Override
     protected String getDatabaseName() {
         return mongoProperties.getDatabase();
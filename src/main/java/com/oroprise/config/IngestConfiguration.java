@@ -0,0 +1,41 @@
+package com.oroprise.config;
+
+import java.util.concurrent.ForkJoinPool;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+@Configuration
+public class IngestConfiguration {
+
+	/**
+	 * Bounded pool validating the connections of large meter reading uploads, sized by
+	 * oroprise.ingest.validation-parallelism so it does not compete with the common pool
+	 * 
+	 * @param applicationProperties
+	 * @return
+	 */
+	@Bean(destroyMethod = "shutdown")
+	public ForkJoinPool meterReadingValidationPool(ApplicationProperties applicationProperties) {
+		return new ForkJoinPool(applicationProperties.getIngest().getValidationParallelism());
+	}
+
+	/**
+	 * Workers of the asynchronous ingest jobs. The queue is bounded, a full queue rejects new jobs instead of
+	 * buffering uploads without limit.
+	 * 
+	 * @param applicationProperties
+	 * @return
+	 */
+	@Bean
+	public ThreadPoolTaskExecutor meterReadingJobExecutor(ApplicationProperties applicationProperties) {
+		ApplicationProperties.IngestJobs config = applicationProperties.getIngestJobs();
+		ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+		executor.setCorePoolSize(config.getPoolSize());
+		executor.setMaxPoolSize(config.getPoolSize());
+		executor.setQueueCapacity(config.getQueueCapacity());
+		executor.setThreadNamePrefix("ingest-job-");
+		return executor;
+	}
+}
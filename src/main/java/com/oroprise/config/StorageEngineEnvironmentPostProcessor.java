@@ -0,0 +1,48 @@
+package com.oroprise.config;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.data.mongo.MongoDataAutoConfiguration;
+import org.springframework.boot.autoconfigure.data.mongo.MongoRepositoriesAutoConfiguration;
+import org.springframework.boot.autoconfigure.mongo.MongoAutoConfiguration;
+import org.springframework.boot.env.EnvironmentPostProcessor;
+import org.springframework.core.env.ConfigurableEnvironment;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.util.StringUtils;
+
+/**
+ * Leaves out the Mongo auto-configurations when the memory storage engine is selected, so the application starts
+ * without a Mongo client nor Spring Data Mongo repositories. The async ingest mode runs on the Mongo driver only, and
+ * writes directly, so it is rejected with the write-behind journal too. Registered in META-INF/spring.factories, runs once
+ * application.properties is loaded.
+ *
+ */
+public class StorageEngineEnvironmentPostProcessor implements EnvironmentPostProcessor {
+
+	private static final String EXCLUDE = "spring.autoconfigure.exclude";
+
+	@Override
+	public void postProcessEnvironment(ConfigurableEnvironment environment, SpringApplication application) {
+		// a journaled reading flushed after an async upload of the same connection would overwrite it
+		if (Boolean.parseBoolean(environment.getProperty("oroprise.async.enabled"))
+				&& Boolean.parseBoolean(environment.getProperty("oroprise.journal.enabled"))) {
+			throw new IllegalStateException("oroprise.async.enabled cannot be combined with oroprise.journal.enabled");
+		}
+		if (!ApplicationProperties.Engine.MEMORY.name().equalsIgnoreCase(environment.getProperty("oroprise.storage.engine"))) {
+			return;
+		}
+		if (Boolean.parseBoolean(environment.getProperty("oroprise.async.enabled"))) {
+			throw new IllegalStateException("oroprise.async.enabled needs the mongo storage engine");
+		}
+
+		Set<String> excluded = new LinkedHashSet<>(StringUtils.commaDelimitedListToSet(environment.getProperty(EXCLUDE)));
+		excluded.add(MongoAutoConfiguration.class.getName());
+		excluded.add(MongoDataAutoConfiguration.class.getName());
+		excluded.add(MongoRepositoriesAutoConfiguration.class.getName());
+		environment.getPropertySources().addFirst(new MapPropertySource("memoryStorageEngine",
+				Collections.singletonMap(EXCLUDE, StringUtils.collectionToCommaDelimitedString(excluded))));
+	}
+}
@@ -0,0 +1,214 @@
+package com.oroprise.repository;
+
+import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toSet;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.convert.QueryMapper;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Repository;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.async.client.FindIterable;
+import com.mongodb.async.client.MongoCollection;
+import com.mongodb.async.client.MongoDatabase;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.model.WriteModel;
+import com.oroprise.bo.Connection;
+import com.oroprise.bo.ConsumptionRollup;
+import com.oroprise.bo.MeterReading;
+import com.oroprise.bo.Profile;
+import com.oroprise.config.ApplicationProperties;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Non-blocking counterparts of the lookups and bulk writes of the ingest, on the asynchronous MongoDB driver.
+ * Queries and documents are mapped exactly like the ones of {@link MongoMeterReadingRepositoryImpl} and
+ * {@link MongoConsumptionRollupRepositoryImpl}, the futures complete on the threads of the driver.
+ *
+ */
+@Repository
+@Slf4j
+@ConditionalOnProperty(prefix = "oroprise.async", name = "enabled")
+public class AsyncIngestRepository {
+
+	@Autowired
+	private MongoDatabase asyncMongoDatabase;
+
+	@Autowired
+	private MongoTemplate mongoTemplate;
+
+	@Autowired
+	private ApplicationProperties applicationProperties;
+
+	/**
+	 * @param names
+	 * @return the existing profiles among names
+	 */
+	public CompletableFuture<List<Profile>> findProfiles(Collection<String> names) {
+		if (names.isEmpty()) {
+			return CompletableFuture.completedFuture(Collections.emptyList());
+		}
+		return find(Profile.class, Query.query(Criteria.where("_id").in(names)));
+	}
+
+	/**
+	 * @see MeterReadingRepositoryCustom#findFingerprints(Collection)
+	 */
+	public CompletableFuture<Map<Connection, Long>> findFingerprints(Collection<Connection> connections) {
+		if (connections.isEmpty()) {
+			return CompletableFuture.completedFuture(Collections.emptyMap());
+		}
+		String fingerprint = MeterReadingSchema.fingerprintField(applicationProperties.getStorage().isCompactMeterReadings());
+		Query query = Query.query(Criteria.where(MeterReadingSchema.ID).in(connections));
+		query.fields().include(MeterReadingSchema.ID).include(fingerprint);
+
+		return find(MeterReading.class, query).thenApply(meterReadings -> {
+			Map<Connection, Long> fingerprints = new HashMap<>();
+			for (MeterReading meterReading : meterReadings) {
+				if (null != meterReading.getFingerprint()) {
+					fingerprints.put(meterReading.getConnection(), meterReading.getFingerprint());
+				}
+			}
+			return fingerprints;
+		});
+	}
+
+	/**
+	 * @param connections
+	 * @return the stored meterReadings of the connections
+	 */
+	public CompletableFuture<List<MeterReading>> findMeterReadings(Collection<Connection> connections) {
+		if (connections.isEmpty()) {
+			return CompletableFuture.completedFuture(Collections.emptyList());
+		}
+		return find(MeterReading.class, Query.query(Criteria.where(MeterReadingSchema.ID).in(connections)));
+	}
+
+	/**
+	 * @see MeterReadingRepositoryCustom#bulkUpsert(List)
+	 */
+	public CompletableFuture<Set<Integer>> bulkUpsert(List<MeterReading> meterReadings) {
+		if (meterReadings.isEmpty()) {
+			return CompletableFuture.completedFuture(Collections.emptySet());
+		}
+
+		List<WriteModel<BasicDBObject>> writes = new ArrayList<>(meterReadings.size());
+		for (MeterReading meterReading : meterReadings) {
+			DBObject document = new BasicDBObject();
+			mongoTemplate.getConverter().write(meterReading, document);
+			// same update as the MongoTemplate upsert
+			Object id = document.removeField(MeterReadingSchema.ID);
+			writes.add(new UpdateOneModel<>(new BasicDBObject(MeterReadingSchema.ID, id), new BasicDBObject("$set", document),
+					new UpdateOptions().upsert(true)));
+		}
+		return bulkWrite(MeterReading.class, writes).thenApply(failed -> {
+			if (!failed.isEmpty()) {
+				log.error("Bulk upsert of {} meterReadings failed for {} of them", meterReadings.size(), failed.size());
+			}
+			return failed;
+		});
+	}
+
+	/**
+	 * @see ConsumptionRollupRepositoryCustom#increment(Collection)
+	 */
+	public CompletableFuture<Void> incrementRollups(Collection<ConsumptionRollup> deltas) {
+		if (deltas.isEmpty()) {
+			return CompletableFuture.completedFuture(null);
+		}
+		return incrementRollups(new ArrayList<>(deltas), 2);
+	}
+
+	private CompletableFuture<Void> incrementRollups(List<ConsumptionRollup> pending, int attempts) {
+		List<WriteModel<BasicDBObject>> writes = new ArrayList<>(pending.size());
+		for (ConsumptionRollup delta : pending) {
+			writes.add(new UpdateOneModel<>(mapped(ConsumptionRollup.class, Query.query(Criteria.where("_id").is(delta.getId()))),
+					new BasicDBObject(MongoConsumptionRollupRepositoryImpl.toUpdate(delta).toMap()), new UpdateOptions().upsert(true)));
+		}
+
+		return bulkWrite(ConsumptionRollup.class, writes).thenCompose(failed -> {
+			if (failed.isEmpty()) {
+				return CompletableFuture.completedFuture(null);
+			}
+			// concurrent upserts of a missing rollup may lose the insert race with a duplicate key, the retry updates it
+			List<ConsumptionRollup> retry = failed.stream().sorted().map(pending::get).collect(toList());
+			if (attempts > 1) {
+				return incrementRollups(retry, attempts - 1);
+			}
+			log.error("Rollups could not be updated : {}", retry);
+			return CompletableFuture.completedFuture(null);
+		});
+	}
+
+	private <T> CompletableFuture<List<T>> find(Class<T> type, Query query) {
+		FindIterable<BasicDBObject> find = collection(type).find(mapped(type, query));
+		DBObject fields = query.getFieldsObject();
+		if (null != fields) {
+			find.projection(new BasicDBObject(fields.toMap()));
+		}
+
+		CompletableFuture<List<T>> future = new CompletableFuture<>();
+		find.into(new ArrayList<>(), (documents, t) -> {
+			if (null != t) {
+				future.completeExceptionally(t);
+				return;
+			}
+			try {
+				future.complete(documents.stream().map(document -> mongoTemplate.getConverter().read(type, document)).collect(toList()));
+			} catch (RuntimeException e) {
+				future.completeExceptionally(e);
+			}
+		});
+		return future;
+	}
+
+	/**
+	 * Unordered bulk write, every other write of the batch is applied when some fail
+	 *
+	 * @param type
+	 * @param writes
+	 * @return indexes of the writes that failed
+	 */
+	private CompletableFuture<Set<Integer>> bulkWrite(Class<?> type, List<WriteModel<BasicDBObject>> writes) {
+		CompletableFuture<Set<Integer>> future = new CompletableFuture<>();
+		collection(type).bulkWrite(writes, new BulkWriteOptions().ordered(false), (result, t) -> {
+			if (t instanceof MongoBulkWriteException) {
+				future.complete(((MongoBulkWriteException) t).getWriteErrors().stream().map(BulkWriteError::getIndex).collect(toSet()));
+			} else if (null != t) {
+				future.completeExceptionally(t);
+			} else {
+				future.complete(Collections.emptySet());
+			}
+		});
+		return future;
+	}
+
+	private BasicDBObject mapped(Class<?> type, Query query) {
+		DBObject mapped = new QueryMapper(mongoTemplate.getConverter()).getMappedObject(query.getQueryObject(),
+				mongoTemplate.getConverter().getMappingContext().getPersistentEntity(type));
+		return new BasicDBObject(mapped.toMap());
+	}
+
+	private MongoCollection<BasicDBObject> collection(Class<?> type) {
+		return asyncMongoDatabase.getCollection(mongoTemplate.getCollectionName(type), BasicDBObject.class);
+	}
+}
@@ -0,0 +1,20 @@
+package com.oroprise.repository;
+
+import java.util.List;
+
+import com.oroprise.bo.ConsumptionRollup;
+import com.oroprise.bo.ProfileMonth;
+
+/**
+ * Storage of the rollups keyed on profile, year and month, on Mongo through {@link MongoConsumptionRollupRepository}
+ * or in memory, as selected by oroprise.storage.engine
+ *
+ */
+public interface ConsumptionRollupRepository extends ConsumptionRollupRepositoryCustom {
+
+	ConsumptionRollup findOne(ProfileMonth id);
+
+	<S extends ConsumptionRollup> List<S> save(Iterable<S> rollups);
+
+	void deleteAll();
+}
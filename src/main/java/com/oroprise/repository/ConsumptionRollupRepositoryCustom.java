@@ -0,0 +1,37 @@
+package com.oroprise.repository;
+
+import java.util.Collection;
+import java.util.List;
+
+import com.oroprise.bo.ConsumptionRollup;
+
+/**
+ * Incremental updates of ConsumptionRollups that are not covered by {@link org.springframework.data.mongodb.repository.MongoRepository}
+ *
+ */
+public interface ConsumptionRollupRepositoryCustom {
+
+	/**
+	 * Adds the deltas to the stored rollups in a single unordered bulk write, creating missing rollups.
+	 * totalConsumption and connections are incremented, minConsumption and maxConsumption only widen the stored range
+	 * and are left untouched if null.
+	 * 
+	 * @param deltas
+	 */
+	void increment(Collection<ConsumptionRollup> deltas);
+
+	/**
+	 * @param profileName
+	 * @param year only rollups of this year, all years if null
+	 * @return the rollups of the profile, in no particular order
+	 */
+	List<ConsumptionRollup> findByProfileName(String profileName, Integer year);
+
+	/**
+	 * Removes the rollups of the profile
+	 * 
+	 * @param profileName
+	 * @param year only rollups of this year, all years if null
+	 */
+	void deleteByProfileName(String profileName, Integer year);
+}
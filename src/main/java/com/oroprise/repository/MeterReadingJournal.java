@@ -0,0 +1,771 @@
+package com.oroprise.repository;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.oroprise.bo.Connection;
+import com.oroprise.bo.MeterReading;
+import com.oroprise.bo.MeterRecord;
+import com.oroprise.bo.Month;
+import com.oroprise.config.ApplicationProperties;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Append-only journal of the validated meterReadings that are not written to the {@link MeterReadingRepository} yet,
+ * kept in oroprise.journal.directory. An upload is acknowledged once its meterReadings are appended and synced, and a
+ * background flusher drains them into the repository. Appenders that wait for a sync share one
+ * {@link FileChannel#force(boolean)}, so concurrent uploads are synced together.
+ * <p>
+ * The journaled meterReadings are also kept in memory by connection, where a later one replaces an earlier one, so
+ * that later uploads are validated against them before they are written. On startup the remaining segments are
+ * replayed into memory and written again. Upserts are keyed on the connection, so writing a meterReading twice is
+ * harmless. A segment is deleted once none of its meterReadings is waiting anymore. Deleted connections are dropped
+ * by a tombstone record, whose segment is kept until the segments of the meterReadings it drops are deleted.
+ * <p>
+ * Segments are named journal-{sequence}.log. All numbers are big endian, and strings are UTF-8 prefixed by their
+ * int16 byte length, -1 for null.
+ * <pre>
+ * header   int32 magic 'ORMJ', int8 version 1
+ * records  int32 payload length, int64 CRC32 of the payload, payload
+ * payload  int32 count, each string profileName, string connectionId, int32 year, int64 baseline, int64 fingerprint,
+ *          12 x int64 readings JAN..DEC
+ *          or, for a tombstone, int32 -count, each string profileName, string connectionId, int32 year
+ * </pre>
+ * Payloads are at most 16 MiB, whatever the segment size, larger batches and tombstones are split over several
+ * records. A record that is cut short, fails its checksum or claims a longer payload ends the segment, because it was
+ * never acknowledged.
+ *
+ */
+@Component
+@Slf4j
+public class MeterReadingJournal {
+
+	static final int MAGIC = 'O' << 24 | 'R' << 16 | 'M' << 8 | 'J';
+	static final byte VERSION = 1;
+
+	private static final int HEADER_SIZE = 5;
+	private static final int RECORD_HEADER_SIZE = 12;
+	static final int MAX_PAYLOAD_SIZE = 16 * 1024 * 1024;
+	private static final Month[] MONTHS = Month.values();
+	private static final Pattern SEGMENT_NAME = Pattern.compile("journal-(\\d+)\\.log");
+
+	@Autowired
+	private ApplicationProperties applicationProperties;
+
+	@Autowired
+	private MetricRegistry metricRegistry;
+
+	/** journaled meterReadings by connection, oldest first, guarded by this */
+	private final LinkedHashMap<Connection, Pending> pending = new LinkedHashMap<>();
+	/** segments with meterReadings still pending, and the one appended to, guarded by this */
+	private final List<Segment> segments = new ArrayList<>();
+	private Segment active;
+	/** number of records appended, guarded by this */
+	private long appended;
+
+	private final Object syncLock = new Object();
+	/** number of records synced, guarded by syncLock */
+	private long synced;
+
+	private static class Segment {
+		private final long sequence;
+		private final Path path;
+		private FileChannel channel;
+		private long size;
+		/** meterReadings of the segment that are pending or being written, and tombstones of other segments */
+		private int outstanding;
+		/** later segments with tombstones of meterReadings of this one, released when this one is deleted */
+		private final List<Segment> tombstones = new ArrayList<>();
+
+		Segment(long sequence, Path path) {
+			this.sequence = sequence;
+			this.path = path;
+		}
+	}
+
+	private static class Pending {
+		private final MeterReading meterReading;
+		private final Segment segment;
+		/** drained by the flusher and not acknowledged yet */
+		private boolean inFlight;
+
+		Pending(MeterReading meterReading, Segment segment) {
+			this.meterReading = meterReading;
+			this.segment = segment;
+		}
+	}
+
+	/**
+	 * Encoded record of count consecutive entries of a batch or tombstone
+	 */
+	static class Record {
+		private final ByteBuffer buffer;
+		private final int count;
+
+		private Record(ByteBuffer buffer, int count) {
+			this.buffer = buffer;
+			this.count = count;
+		}
+	}
+
+	@FunctionalInterface
+	private interface EntryEncoder<T> {
+		void encode(DataOutputStream out, T entry) throws IOException;
+	}
+
+	/**
+	 * MeterReadings handed to the flusher, to be acknowledged once written or requeued if the write failed
+	 */
+	public static class Batch {
+		private final List<Pending> entries;
+		@Getter
+		private final List<MeterReading> meterReadings;
+
+		private Batch(List<Pending> entries) {
+			this.entries = entries;
+			this.meterReadings = new ArrayList<>(entries.size());
+			entries.forEach(entry -> meterReadings.add(entry.meterReading));
+		}
+
+		public boolean isEmpty() {
+			return entries.isEmpty();
+		}
+	}
+
+	public boolean isEnabled() {
+		return applicationProperties.getJournal().isEnabled();
+	}
+
+	@PostConstruct
+	public void init() throws IOException {
+		if (!isEnabled()) {
+			return;
+		}
+		Path directory = Paths.get(applicationProperties.getJournal().getDirectory());
+		Files.createDirectories(directory);
+
+		long sequence = 0;
+		int replayed = 0;
+		synchronized (this) {
+			for (Segment segment : existingSegments(directory)) {
+				segments.add(segment);
+				replayed += replay(segment);
+				sequence = segment.sequence;
+			}
+			for (Segment segment : new ArrayList<>(segments)) {
+				if (segment.outstanding == 0) {
+					delete(segment);
+				}
+			}
+			active = create(directory, sequence + 1);
+			if (replayed > 0) {
+				log.info("Replayed {} records of {} meterReadings from the journal in {}", replayed, pending.size(), directory);
+			}
+		}
+
+		metricRegistry.register("journal.pending", (Gauge<Integer>) this::size);
+		metricRegistry.register("journal.segments", (Gauge<Integer>) () -> {
+			synchronized (this) {
+				return segments.size();
+			}
+		});
+	}
+
+	@PreDestroy
+	public synchronized void close() {
+		for (Segment segment : new ArrayList<>(segments)) {
+			if (segment.outstanding == 0) {
+				delete(segment);
+			} else {
+				closeChannel(segment);
+			}
+		}
+		if (!pending.isEmpty()) {
+			log.warn("{} meterReadings left in the journal, they are written on the next startup", pending.size());
+		}
+	}
+
+	/**
+	 * Appends the meterReadings as one record, or several if they exceed the payload size, and waits until they are
+	 * synced. Waits first while oroprise.journal.max-pending meterReadings are not written yet.
+	 *
+	 * @param meterReadings validated meterReadings with their year, baseline and fingerprint
+	 * @throws IOException if the record could not be appended or synced, the meterReadings are not acknowledged then
+	 * but may still be written. The segments of the meterReadings they replace are kept until the next startup then.
+	 */
+	public void append(List<MeterReading> meterReadings) throws IOException {
+		if (meterReadings.isEmpty()) {
+			return;
+		}
+		List<Record> records = encode(meterReadings);
+		long sequence = 0;
+		List<Segment> replaced = new ArrayList<>();
+		synchronized (this) {
+			int maxPending = applicationProperties.getJournal().getMaxPending();
+			try {
+				while (pending.size() >= maxPending) {
+					wait();
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while waiting for the journal to drain");
+			}
+			int index = 0;
+			for (Record record : records) {
+				sequence = write(record.buffer);
+				// the active segment may rotate between records
+				for (MeterReading meterReading : meterReadings.subList(index, index + record.count)) {
+					Segment segment = put(new Pending(meterReading, active));
+					if (null != segment) {
+						replaced.add(segment);
+					}
+				}
+				index += record.count;
+			}
+		}
+		sync(sequence);
+		// a replaced meterReading stays on disk until the one replacing it is
+		synchronized (this) {
+			replaced.forEach(this::release);
+		}
+	}
+
+	/**
+	 * Drops the journaled meterReadings of the connections, so that they are neither written nor replayed anymore.
+	 * Appends a tombstone record and waits until it is synced, then until those being written are acknowledged, so that
+	 * the repository holds everything it will get from the journal for the connections once this returns.
+	 *
+	 * @param connections
+	 * @return the connections that had a journaled meterReading
+	 * @throws IOException if the tombstone could not be appended or synced, the meterReadings may be replayed then
+	 */
+	public Set<Connection> remove(Collection<Connection> connections) throws IOException {
+		if (!isEnabled()) {
+			return Collections.emptySet();
+		}
+		List<Pending> removed = new ArrayList<>();
+		long sequence = 0;
+		synchronized (this) {
+			for (Connection connection : connections) {
+				Pending entry = pending.get(connection);
+				if (null != entry) {
+					removed.add(entry);
+				}
+			}
+			if (removed.isEmpty()) {
+				return Collections.emptySet();
+			}
+			int index = 0;
+			for (Record record : encodeTombstones(removed)) {
+				sequence = write(record.buffer);
+				for (Pending entry : removed.subList(index, index + record.count)) {
+					pending.remove(entry.meterReading.getConnection());
+					tombstone(entry, active);
+				}
+				index += record.count;
+			}
+			notifyAll();
+		}
+		sync(sequence);
+
+		Set<Connection> found = new HashSet<>();
+		synchronized (this) {
+			for (Pending entry : removed) {
+				found.add(entry.meterReading.getConnection());
+				// one being written is released once acknowledged
+				if (!entry.inFlight) {
+					release(entry.segment);
+				}
+			}
+			try {
+				while (removed.stream().anyMatch(entry -> entry.inFlight)) {
+					wait();
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while waiting for the journal to write");
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * Drops the journaled meterReadings of a profile, see {@link #remove(Collection)}
+	 *
+	 * @param profileName
+	 * @return the connections that had a journaled meterReading
+	 * @throws IOException
+	 */
+	public Set<Connection> removeProfile(String profileName) throws IOException {
+		if (!isEnabled()) {
+			return Collections.emptySet();
+		}
+		List<Connection> connections = new ArrayList<>();
+		synchronized (this) {
+			for (Connection connection : pending.keySet()) {
+				if (profileName.equals(connection.getProfileName())) {
+					connections.add(connection);
+				}
+			}
+		}
+		return remove(connections);
+	}
+
+	/**
+	 * Waits until the records up to the sequence are on disk, forcing the active segment unless a concurrent appender
+	 * did already. Former segments are forced when they are rotated.
+	 *
+	 * @param sequence
+	 * @throws IOException
+	 */
+	private void sync(long sequence) throws IOException {
+		synchronized (syncLock) {
+			if (synced >= sequence) {
+				return;
+			}
+			Segment segment;
+			long target;
+			synchronized (this) {
+				segment = active;
+				target = appended;
+			}
+			try {
+				segment.channel.force(false);
+			} catch (ClosedChannelException e) {
+				// rotated, then written to the repository and deleted meanwhile
+				synchronized (this) {
+					if (segments.contains(segment)) {
+						throw e;
+					}
+				}
+			}
+			synced = target;
+		}
+	}
+
+	/**
+	 * @param max
+	 * @return the oldest journaled meterReadings, at most max of them
+	 */
+	public synchronized Batch drain(int max) {
+		List<Pending> entries = new ArrayList<>(Math.min(max, pending.size()));
+		for (Pending entry : pending.values()) {
+			if (entries.size() == max) {
+				break;
+			}
+			if (!entry.inFlight) {
+				entry.inFlight = true;
+				entries.add(entry);
+			}
+		}
+		return new Batch(entries);
+	}
+
+	/**
+	 * Drops the meterReadings of the batch from the journal once written, those journaled again meanwhile stay
+	 *
+	 * @param batch
+	 */
+	public synchronized void acknowledge(Batch batch) {
+		for (Pending entry : batch.entries) {
+			entry.inFlight = false;
+			Connection connection = entry.meterReading.getConnection();
+			if (pending.get(connection) == entry) {
+				pending.remove(connection);
+			}
+			release(entry.segment);
+		}
+		notifyAll();
+	}
+
+	/**
+	 * Hands the meterReadings of the batch to the next drain, after the write failed
+	 *
+	 * @param batch
+	 */
+	public synchronized void requeue(Batch batch) {
+		for (Pending entry : batch.entries) {
+			entry.inFlight = false;
+			if (pending.get(entry.meterReading.getConnection()) != entry) {
+				release(entry.segment);
+			}
+		}
+		notifyAll();
+	}
+
+	/**
+	 * @param connections
+	 * @return the journaled meterReadings of the connections, by connection
+	 */
+	public Map<Connection, MeterReading> findPending(Collection<Connection> connections) {
+		if (!isEnabled()) {
+			return Collections.emptyMap();
+		}
+		synchronized (this) {
+			if (pending.isEmpty()) {
+				return Collections.emptyMap();
+			}
+			Map<Connection, MeterReading> found = new HashMap<>();
+			for (Connection connection : connections) {
+				Pending entry = pending.get(connection);
+				if (null != entry) {
+					found.put(connection, entry.meterReading);
+				}
+			}
+			return found;
+		}
+	}
+
+	/**
+	 * @return number of journaled meterReadings not written yet
+	 */
+	public synchronized int size() {
+		return pending.size();
+	}
+
+	/**
+	 * @param entry
+	 * @return the segment of the meterReading replaced by the entry, to be released by the caller, null if there is none
+	 * or it is being written and released once acknowledged
+	 */
+	private Segment put(Pending entry) {
+		entry.segment.outstanding++;
+		Pending replaced = pending.put(entry.meterReading.getConnection(), entry);
+		return null == replaced || replaced.inFlight ? null : replaced.segment;
+	}
+
+	/**
+	 * Appends a record to the active segment, rotating it first if it is full
+	 *
+	 * @param record
+	 * @return sequence of the record, to sync it
+	 * @throws IOException
+	 */
+	private long write(ByteBuffer record) throws IOException {
+		if (active.size >= applicationProperties.getJournal().getSegmentSize()) {
+			rotate();
+		}
+
+		long position = active.size;
+		try {
+			while (record.hasRemaining()) {
+				active.channel.write(record, position + record.position());
+			}
+		} catch (IOException e) {
+			// the next record overwrites the partial one
+			active.channel.truncate(position);
+			throw e;
+		}
+		active.size += record.limit();
+		return ++appended;
+	}
+
+	/**
+	 * Keeps the segment of a tombstone until the one of the meterReading it drops is deleted
+	 *
+	 * @param entry
+	 * @param segment
+	 */
+	private static void tombstone(Pending entry, Segment segment) {
+		if (entry.segment != segment) {
+			segment.outstanding++;
+			entry.segment.tombstones.add(segment);
+		}
+	}
+
+	private void release(Segment segment) {
+		// while replaying there is no active segment yet, the released ones are deleted once all are replayed
+		if (--segment.outstanding == 0 && null != active && segment != active) {
+			delete(segment);
+		}
+	}
+
+	private void rotate() throws IOException {
+		Segment previous = active;
+		previous.channel.force(false);
+		active = create(previous.path.getParent(), previous.sequence + 1);
+		if (previous.outstanding == 0) {
+			delete(previous);
+		}
+	}
+
+	private Segment create(Path directory, long sequence) throws IOException {
+		Segment segment = new Segment(sequence, directory.resolve(String.format("journal-%020d.log", sequence)));
+		segment.channel = FileChannel.open(segment.path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).put(VERSION);
+		header.flip();
+		while (header.hasRemaining()) {
+			segment.channel.write(header);
+		}
+		segment.channel.force(true);
+		segment.size = HEADER_SIZE;
+		segments.add(segment);
+		return segment;
+	}
+
+	private void delete(Segment segment) {
+		if (!segments.remove(segment)) {
+			return;
+		}
+		closeChannel(segment);
+		try {
+			Files.deleteIfExists(segment.path);
+		} catch (IOException e) {
+			log.error("Journal segment " + segment.path + " could not be deleted, it is replayed on the next startup", e);
+			return;
+		}
+		segment.tombstones.forEach(this::release);
+	}
+
+	private static void closeChannel(Segment segment) {
+		if (null == segment.channel) {
+			return;
+		}
+		try {
+			segment.channel.close();
+		} catch (IOException e) {
+			log.warn("Journal segment " + segment.path + " could not be closed", e);
+		}
+	}
+
+	private static List<Segment> existingSegments(Path directory) throws IOException {
+		List<Segment> existing = new ArrayList<>();
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "journal-*.log")) {
+			for (Path file : files) {
+				Matcher matcher = SEGMENT_NAME.matcher(file.getFileName().toString());
+				if (matcher.matches()) {
+					existing.add(new Segment(Long.parseLong(matcher.group(1)), file));
+				}
+			}
+		}
+		existing.sort(Comparator.comparingLong(segment -> segment.sequence));
+		return existing;
+	}
+
+	/**
+	 * Reads the records of a segment into the pending meterReadings, up to the first incomplete one
+	 *
+	 * @param segment
+	 * @return number of records read
+	 * @throws IOException if the segment could not be read or is not a journal segment
+	 */
+	private int replay(Segment segment) throws IOException {
+		int records = 0;
+		long offset = HEADER_SIZE;
+		try (InputStream file = Files.newInputStream(segment.path);
+				DataInputStream in = new DataInputStream(new BufferedInputStream(file))) {
+			try {
+				if (in.readInt() != MAGIC || in.readByte() != VERSION) {
+					throw new IOException("Not a meterReading journal segment of version " + VERSION + " : " + segment.path);
+				}
+			} catch (EOFException e) {
+				// created but not written, nothing was acknowledged from it
+				return 0;
+			}
+
+			while (true) {
+				byte[] payload;
+				try {
+					int length = in.readInt();
+					long checksum = in.readLong();
+					if (length < 0 || length > MAX_PAYLOAD_SIZE) {
+						break;
+					}
+					payload = new byte[length];
+					in.readFully(payload);
+					CRC32 crc = new CRC32();
+					crc.update(payload);
+					if (crc.getValue() != checksum) {
+						break;
+					}
+				} catch (EOFException e) {
+					break;
+				}
+				if (ByteBuffer.wrap(payload).getInt() < 0) {
+					for (Connection connection : decodeTombstones(payload)) {
+						Pending removed = pending.remove(connection);
+						if (null != removed) {
+							tombstone(removed, segment);
+							release(removed.segment);
+						}
+					}
+				} else {
+					for (MeterReading meterReading : decode(payload)) {
+						Segment replaced = put(new Pending(meterReading, segment));
+						if (null != replaced) {
+							release(replaced);
+						}
+					}
+				}
+				offset += RECORD_HEADER_SIZE + payload.length;
+				records++;
+			}
+		}
+		if (offset < Files.size(segment.path)) {
+			log.warn("Journal segment {} ends with an incomplete record at {}, it was not acknowledged", segment.path, offset);
+		}
+		return records;
+	}
+
+	static List<Record> encode(List<MeterReading> meterReadings) throws IOException {
+		return records(meterReadings, false, (out, meterReading) -> {
+			Connection connection = meterReading.getConnection();
+			writeString(out, connection.getProfileName());
+			writeString(out, connection.getConnectionId());
+			out.writeInt(connection.getYear());
+			out.writeLong(null == meterReading.getBaseline() ? 0 : meterReading.getBaseline());
+			out.writeLong(null == meterReading.getFingerprint() ? 0 : meterReading.getFingerprint());
+			long[] readings = new long[MONTHS.length];
+			for (MeterRecord meterRecord : meterReading.getMeterRecords()) {
+				readings[meterRecord.getMonth().ordinal()] = meterRecord.getReading();
+			}
+			for (long reading : readings) {
+				out.writeLong(reading);
+			}
+		});
+	}
+
+	private static List<Record> encodeTombstones(List<Pending> removed) throws IOException {
+		return records(removed, true, (out, entry) -> {
+			Connection connection = entry.meterReading.getConnection();
+			writeString(out, connection.getProfileName());
+			writeString(out, connection.getConnectionId());
+			out.writeInt(connection.getYear());
+		});
+	}
+
+	/**
+	 * Encodes the entries in order, starting a new record whenever the next entry would exceed MAX_PAYLOAD_SIZE
+	 *
+	 * @param entries
+	 * @param tombstones
+	 * @param encoder
+	 * @return the records
+	 * @throws IOException
+	 */
+	private static <T> List<Record> records(List<T> entries, boolean tombstones, EntryEncoder<T> encoder)
+			throws IOException {
+		List<Record> records = new ArrayList<>(1);
+		ByteArrayOutputStream payload = new ByteArrayOutputStream(Math.min(entries.size() * 128, MAX_PAYLOAD_SIZE));
+		ByteArrayOutputStream entry = new ByteArrayOutputStream(128);
+		DataOutputStream out = new DataOutputStream(entry);
+		int count = 0;
+		for (T value : entries) {
+			entry.reset();
+			encoder.encode(out, value);
+			if (4 + payload.size() + entry.size() > MAX_PAYLOAD_SIZE) {
+				records.add(record(payload, count, tombstones));
+				payload.reset();
+				count = 0;
+			}
+			entry.writeTo(payload);
+			count++;
+		}
+		records.add(record(payload, count, tombstones));
+		return records;
+	}
+
+	private static Record record(ByteArrayOutputStream entries, int count, boolean tombstones) {
+		int length = 4 + entries.size();
+		ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + length);
+		record.position(RECORD_HEADER_SIZE);
+		record.putInt(tombstones ? -count : count).put(entries.toByteArray());
+		CRC32 crc = new CRC32();
+		crc.update(record.array(), RECORD_HEADER_SIZE, length);
+		record.putInt(0, length).putLong(4, crc.getValue());
+		record.flip();
+		return new Record(record, count);
+	}
+
+	static List<MeterReading> decode(byte[] payload) throws IOException {
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+		int count = in.readInt();
+		List<MeterReading> meterReadings = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			MeterReading meterReading = new MeterReading();
+			meterReading.setConnection(new Connection(readString(in), readString(in), in.readInt()));
+			meterReading.setBaseline(in.readLong());
+			meterReading.setFingerprint(in.readLong());
+			List<MeterRecord> meterRecords = new ArrayList<>(MONTHS.length);
+			for (Month month : MONTHS) {
+				meterRecords.add(new MeterRecord(month, in.readLong()));
+			}
+			meterReading.setMeterRecords(meterRecords);
+			meterReading.setYearlyConsumption(MeterReading.yearlyConsumption(meterRecords, meterReading.getBaseline()));
+			meterReadings.add(meterReading);
+		}
+		return meterReadings;
+	}
+
+	static List<Connection> decodeTombstones(byte[] payload) throws IOException {
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+		int count = -in.readInt();
+		List<Connection> connections = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			connections.add(new Connection(readString(in), readString(in), in.readInt()));
+		}
+		return connections;
+	}
+
+	private static void writeString(DataOutputStream out, String value) throws IOException {
+		if (null == value) {
+			out.writeShort(-1);
+			return;
+		}
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		if (bytes.length > Short.MAX_VALUE) {
+			throw new IOException("Too long to be journaled : " + value.substring(0, 64) + "...");
+		}
+		out.writeShort(bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readString(DataInputStream in) throws IOException {
+		int length = in.readShort();
+		if (length < 0) {
+			return null;
+		}
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+}
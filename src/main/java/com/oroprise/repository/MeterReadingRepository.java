@@ -3,15 +3,33 @@
  */
 package com.oroprise.repository;
 
-import org.springframework.data.mongodb.repository.MongoRepository;
+import java.util.List;
 
 import com.oroprise.bo.MeterReading;
 import com.oroprise.bo.Connection;
 
 /**
+ * Storage of the meterReadings keyed on their connection, on Mongo through {@link MongoMeterReadingRepository} or in
+ * memory, as selected by oroprise.storage.engine
+ * 
  * @author danis
  *
  */
-public interface MeterReadingRepository extends MongoRepository<MeterReading, Connection> {
+public interface MeterReadingRepository extends MeterReadingRepositoryCustom {
+
+	MeterReading findOne(Connection connection);
+
+	/**
+	 * @param connections
+	 * @return the meterReadings found, in no particular order
+	 */
+	Iterable<MeterReading> findAll(Iterable<Connection> connections);
+
+	List<MeterReading> findAll();
+
+	<S extends MeterReading> S save(S meterReading);
+
+	void delete(Connection connection);
 
+	void deleteAll();
 }
@@ -0,0 +1,114 @@
+package com.oroprise.repository;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.util.CloseableIterator;
+
+import com.oroprise.bo.Connection;
+import com.oroprise.bo.MeterReading;
+
+/**
+ * Bulk operations on MeterReadings that are not covered by {@link org.springframework.data.mongodb.repository.MongoRepository}
+ *
+ */
+public interface MeterReadingRepositoryCustom {
+
+	/**
+	 * Upserts all meterReadings keyed on their connection in a single unordered bulk write
+	 * 
+	 * @param meterReadings
+	 * @return indexes (in meterReadings) of the documents that could not be written, empty if all succeeded
+	 */
+	Set<Integer> bulkUpsert(List<MeterReading> meterReadings);
+
+	/**
+	 * Looks up the stored fingerprints of the connections in a single $in query on the _id index, reading only the fingerprints
+	 * 
+	 * @param connections
+	 * @return fingerprint by connection, connections not stored or stored without fingerprint are left out
+	 */
+	Map<Connection, Long> findFingerprints(Collection<Connection> connections);
+
+	/**
+	 * Deletes the meterReadings of the connections in a single multi-document delete with $in on the _id index
+	 * 
+	 * @param connections
+	 * @return number of deleted documents, connections not stored are ignored
+	 */
+	long bulkDelete(Collection<Connection> connections);
+
+	/**
+	 * Keyset pagination in connection order, served from the _id index without skipping over previous pages
+	 * 
+	 * @param profileName only connections of this profile, all if null
+	 * @param after connection of the last MeterReading of the previous page, null for the first page
+	 * @param size maximum number of MeterReadings returned
+	 * @return
+	 */
+	List<MeterReading> findPage(String profileName, Connection after, int size);
+
+	/**
+	 * Iterates over the MeterReadings in connection order with a Mongo cursor, the iterator must be closed
+	 * 
+	 * @param profileName only connections of this profile, all if null
+	 * @return
+	 */
+	CloseableIterator<MeterReading> stream(String profileName);
+
+	/**
+	 * Range query over the years of a connection on the _id index, only the documents of those years are read
+	 * 
+	 * @param profileName
+	 * @param connectionId
+	 * @param fromYear first year included, from the first one if null
+	 * @param toYear last year included, up to the last one if null
+	 * @return the meterReadings of the connection in year order
+	 */
+	List<MeterReading> findYears(String profileName, String connectionId, Integer fromYear, Integer toYear);
+
+	/**
+	 * Rewrites the documents still in the other format of {@link MeterReadingSchema} into the one in use, so the compact
+	 * format can be turned on and off again. Connections already written in the format in use keep their readings. Can be
+	 * interrupted and rerun, the scan is skipped once the format in use is migrated to.
+	 * 
+	 * @param batchSize number of documents rewritten per unordered bulk write
+	 * @return number of migrated documents
+	 */
+	long migrateSchema(int batchSize);
+
+	/**
+	 * Connections by yearly consumption, served from the yearly consumption indexes. Only the connection and the
+	 * yearlyConsumption are read, the meterRecords are left empty.
+	 * 
+	 * @param profileName only connections of this profile, all if null
+	 * @param minYearlyConsumption lowest yearly consumption included, unbounded if null
+	 * @param maxYearlyConsumption highest yearly consumption included, unbounded if null
+	 * @param pageable page of the results in ascending yearly consumption
+	 * @return
+	 */
+	List<MeterReading> findByYearlyConsumption(String profileName, Long minYearlyConsumption, Long maxYearlyConsumption,
+			Pageable pageable);
+
+	/**
+	 * Stores the yearlyConsumption of the documents written before it was derived
+	 * 
+	 * @param batchSize number of documents updated per unordered bulk write
+	 * @return number of updated documents
+	 */
+	long backfillYearlyConsumption(int batchSize);
+
+	/**
+	 * Moves the documents written before readings were kept per year to the given year. Documents of the same connection
+	 * already written for that year are kept. Can be interrupted and rerun. Once it completed, it is recorded and later
+	 * calls return without scanning the documents again.
+	 * 
+	 * @param year year of the readings without one
+	 * @param batchSize number of documents rewritten per unordered bulk write
+	 * @return number of migrated documents
+	 */
+	long migrateToYear(int year, int batchSize);
+}
@@ -0,0 +1,193 @@
+package com.oroprise.repository;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.core.convert.converter.Converter;
+import org.springframework.data.convert.ReadingConverter;
+import org.springframework.data.convert.WritingConverter;
+
+import com.mongodb.BasicDBList;
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+import com.oroprise.bo.Connection;
+import com.oroprise.bo.MeterReading;
+import com.oroprise.bo.MeterRecord;
+import com.oroprise.bo.Month;
+import com.oroprise.bo.MonthlyReadings;
+
+/**
+ * Persistent formats of MeterReading documents.
+ * <p>
+ * The mapped format stores the Connection under its field names and a sub document per month:
+ * {_id: {profileName, connectionId, year}, meterRecords: [{month: "JAN", reading}, ...], baseline, yearlyConsumption, fingerprint, _class}.
+ * The compact format stores a short composite key and the readings as an array indexed by {@link Month#ordinal()}:
+ * {_id: {p, c, yr}, r: [JAN, ..., DEC], b, y, f}. Documents written before readings were kept per year have no year. The
+ * reader is registered whichever format is written and reads both, so documents can be migrated either way while in use.
+ *
+ */
+public final class MeterReadingSchema {
+
+	public static final String ID = "_id";
+
+	/** field names of the compact format */
+	public static final String PROFILE_NAME = "p";
+	public static final String CONNECTION_ID = "c";
+	public static final String YEAR = "yr";
+	public static final String READINGS = "r";
+	public static final String BASELINE = "b";
+	public static final String YEARLY_CONSUMPTION = "y";
+	public static final String FINGERPRINT = "f";
+
+	/** field names of the mapped format */
+	public static final String MAPPED_PROFILE_NAME = "profileName";
+	public static final String MAPPED_CONNECTION_ID = "connectionId";
+	public static final String MAPPED_YEAR = "year";
+	public static final String MAPPED_BASELINE = "baseline";
+	public static final String MAPPED_METER_RECORDS = "meterRecords";
+	public static final String MAPPED_YEARLY_CONSUMPTION = "yearlyConsumption";
+	public static final String MAPPED_FINGERPRINT = "fingerprint";
+
+	private static final Month[] MONTHS = Month.values();
+
+	private MeterReadingSchema() {
+	}
+
+	/**
+	 * @param compact
+	 * @return name of the profile name field of the _id in the given format
+	 */
+	public static String profileNameField(boolean compact) {
+		return compact ? PROFILE_NAME : MAPPED_PROFILE_NAME;
+	}
+
+	/**
+	 * @param compact
+	 * @return name of the year field of the _id in the given format
+	 */
+	public static String yearField(boolean compact) {
+		return compact ? YEAR : MAPPED_YEAR;
+	}
+
+	/**
+	 * @param compact
+	 * @return name of the yearly consumption field in the given format
+	 */
+	public static String yearlyConsumptionField(boolean compact) {
+		return compact ? YEARLY_CONSUMPTION : MAPPED_YEARLY_CONSUMPTION;
+	}
+
+	/**
+	 * @param compact
+	 * @return name of the fingerprint field in the given format
+	 */
+	public static String fingerprintField(boolean compact) {
+		return compact ? FINGERPRINT : MAPPED_FINGERPRINT;
+	}
+
+	/**
+	 * @param compact
+	 * @return converters reading both formats, and writing the compact one if compact, the mapped one otherwise
+	 */
+	public static List<Converter<?, ?>> converters(boolean compact) {
+		List<Converter<?, ?>> converters = new ArrayList<>();
+		converters.add(MeterReadingReader.INSTANCE);
+		if (compact) {
+			converters.add(ConnectionWriter.INSTANCE);
+			converters.add(MeterReadingWriter.INSTANCE);
+		}
+		return converters;
+	}
+
+	@WritingConverter
+	enum ConnectionWriter implements Converter<Connection, DBObject> {
+		INSTANCE;
+
+		@Override
+		public DBObject convert(Connection connection) {
+			DBObject id = new BasicDBObject(PROFILE_NAME, connection.getProfileName()).append(CONNECTION_ID,
+					connection.getConnectionId());
+			if (null != connection.getYear()) {
+				id.put(YEAR, connection.getYear());
+			}
+			return id;
+		}
+	}
+
+	@WritingConverter
+	enum MeterReadingWriter implements Converter<MeterReading, DBObject> {
+		INSTANCE;
+
+		@Override
+		public DBObject convert(MeterReading meterReading) {
+			Long[] readings = new Long[MonthlyReadings.MONTHS];
+			if (null != meterReading.getMeterRecords()) {
+				for (MeterRecord meterRecord : meterReading.getMeterRecords()) {
+					readings[meterRecord.getMonth().ordinal()] = meterRecord.getReading();
+				}
+			}
+			BasicDBList r = new BasicDBList();
+			for (Long reading : readings) {
+				r.add(reading);
+			}
+			DBObject document = new BasicDBObject(ID, ConnectionWriter.INSTANCE.convert(meterReading.getConnection()))
+					.append(READINGS, r);
+			if (null != meterReading.getBaseline()) {
+				document.put(BASELINE, meterReading.getBaseline());
+			}
+			if (null != meterReading.getYearlyConsumption()) {
+				document.put(YEARLY_CONSUMPTION, meterReading.getYearlyConsumption());
+			}
+			if (null != meterReading.getFingerprint()) {
+				document.put(FINGERPRINT, meterReading.getFingerprint());
+			}
+			return document;
+		}
+	}
+
+	@ReadingConverter
+	enum MeterReadingReader implements Converter<DBObject, MeterReading> {
+		INSTANCE;
+
+		@Override
+		public MeterReading convert(DBObject document) {
+			MeterReading meterReading = new MeterReading();
+			DBObject id = (DBObject) document.get(ID);
+			List<MeterRecord> meterRecords = new ArrayList<>(MonthlyReadings.MONTHS);
+			// tell the formats apart by the _id, projections may leave out the readings
+			if (id.containsField(PROFILE_NAME)) {
+				meterReading.setConnection(new Connection((String) id.get(PROFILE_NAME), (String) id.get(CONNECTION_ID),
+						(Integer) id.get(YEAR)));
+				List<?> readings = (List<?>) document.get(READINGS);
+				for (int i = 0; null != readings && i < readings.size(); i++) {
+					if (null != readings.get(i)) {
+						meterRecords.add(new MeterRecord(MONTHS[i], ((Number) readings.get(i)).longValue()));
+					}
+				}
+				meterReading.setBaseline(toLong(document.get(BASELINE)));
+				meterReading.setYearlyConsumption(toLong(document.get(YEARLY_CONSUMPTION)));
+				meterReading.setFingerprint(toLong(document.get(FINGERPRINT)));
+			} else {
+				meterReading.setConnection(new Connection((String) id.get(MAPPED_PROFILE_NAME), (String) id.get(MAPPED_CONNECTION_ID),
+						(Integer) id.get(MAPPED_YEAR)));
+				List<?> records = (List<?>) document.get(MAPPED_METER_RECORDS);
+				if (null != records) {
+					for (Object record : records) {
+						DBObject meterRecord = (DBObject) record;
+						meterRecords.add(new MeterRecord(Month.valueOf((String) meterRecord.get("month")),
+								((Number) meterRecord.get("reading")).longValue()));
+					}
+				}
+				meterReading.setBaseline(toLong(document.get(MAPPED_BASELINE)));
+				meterReading.setYearlyConsumption(toLong(document.get(MAPPED_YEARLY_CONSUMPTION)));
+				meterReading.setFingerprint(toLong(document.get(MAPPED_FINGERPRINT)));
+			}
+			meterReading.setMeterRecords(meterRecords);
+			return meterReading;
+		}
+
+		private static Long toLong(Object value) {
+			return null == value ? null : ((Number) value).longValue();
+		}
+	}
+}
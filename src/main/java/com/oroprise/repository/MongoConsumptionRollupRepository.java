@@ -0,0 +1,15 @@
+package com.oroprise.repository;
+
+import org.springframework.data.repository.Repository;
+
+import com.oroprise.bo.ConsumptionRollup;
+import com.oroprise.bo.ProfileMonth;
+
+/**
+ * Spring Data implementation of {@link ConsumptionRollupRepository} on Mongo, the custom methods are in {@link MongoConsumptionRollupRepositoryImpl}.
+ * Only the CRUD methods declared by ConsumptionRollupRepository are exposed.
+ *
+ */
+public interface MongoConsumptionRollupRepository extends Repository<ConsumptionRollup, ProfileMonth>, ConsumptionRollupRepository {
+
+}
@@ -0,0 +1,96 @@
+package com.oroprise.repository;
+
+import static java.util.stream.Collectors.toList;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.BulkOperations.BulkMode;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.BasicUpdate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.BulkWriteError;
+import com.mongodb.DBObject;
+import com.oroprise.bo.ConsumptionRollup;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * MongoTemplate backed implementation of {@link ConsumptionRollupRepositoryCustom}, picked up by Spring Data through the Impl postfix
+ *
+ */
+@Slf4j
+public class MongoConsumptionRollupRepositoryImpl implements ConsumptionRollupRepositoryCustom {
+
+	@Autowired
+	private MongoTemplate mongoTemplate;
+
+	@Override
+	public void increment(Collection<ConsumptionRollup> deltas) {
+		List<ConsumptionRollup> pending = new ArrayList<>(deltas);
+		// concurrent upserts of a missing rollup may lose the insert race with a duplicate key, the retry updates it
+		for (int attempt = 0; attempt < 2 && !pending.isEmpty(); attempt++) {
+			BulkOperations bulkOps = mongoTemplate.bulkOps(BulkMode.UNORDERED, ConsumptionRollup.class);
+			for (ConsumptionRollup delta : pending) {
+				// bulk operations pass the query as is, so it takes the converted id
+				Object id = mongoTemplate.getConverter().convertToMongoType(delta.getId());
+				bulkOps.upsert(Query.query(Criteria.where("_id").is(id)), new BasicUpdate(toUpdate(delta)));
+			}
+
+			try {
+				bulkOps.execute();
+				return;
+			} catch (BulkOperationException e) {
+				List<ConsumptionRollup> failed = pending;
+				pending = e.getErrors().stream().map(BulkWriteError::getIndex).map(failed::get).collect(toList());
+			}
+		}
+		log.error("Rollups could not be updated : {}", pending);
+	}
+
+	static DBObject toUpdate(ConsumptionRollup delta) {
+		DBObject update = new BasicDBObject("$inc", new BasicDBObject("totalConsumption", delta.getTotalConsumption())
+				.append("connections", delta.getConnections()));
+		if (null != delta.getMinConsumption()) {
+			update.put("$min", new BasicDBObject("minConsumption", delta.getMinConsumption()));
+		}
+		if (null != delta.getMaxConsumption()) {
+			update.put("$max", new BasicDBObject("maxConsumption", delta.getMaxConsumption()));
+		}
+		return update;
+	}
+
+	@Override
+	public List<ConsumptionRollup> findByProfileName(String profileName, Integer year) {
+		return mongoTemplate.find(profileRange(profileName, year), ConsumptionRollup.class);
+	}
+
+	@Override
+	public void deleteByProfileName(String profileName, Integer year) {
+		mongoTemplate.remove(profileRange(profileName, year), ConsumptionRollup.class);
+	}
+
+	/**
+	 * Range of the composite _id covering every month of the profile, or of the profile in a year,
+	 * see {@link MongoMeterReadingRepositoryImpl}
+	 * 
+	 * @param profileName
+	 * @param year all years if null
+	 * @return
+	 */
+	private Query profileRange(String profileName, Integer year) {
+		if (null == year) {
+			return Query.query(Criteria.where("_id").gte(new BasicDBObject("profileName", profileName))
+					.lt(new BasicDBObject("profileName", profileName + '\0')));
+		}
+		return Query.query(Criteria.where("_id").gte(new BasicDBObject("profileName", profileName).append("year", year))
+				.lt(new BasicDBObject("profileName", profileName).append("year", year + 1)));
+	}
+}
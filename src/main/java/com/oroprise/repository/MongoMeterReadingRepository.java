@@ -0,0 +1,15 @@
+package com.oroprise.repository;
+
+import org.springframework.data.repository.Repository;
+
+import com.oroprise.bo.Connection;
+import com.oroprise.bo.MeterReading;
+
+/**
+ * Spring Data implementation of {@link MeterReadingRepository} on Mongo, the custom methods are in {@link MongoMeterReadingRepositoryImpl}.
+ * Only the CRUD methods declared by MeterReadingRepository are exposed.
+ *
+ */
+public interface MongoMeterReadingRepository extends Repository<MeterReading, Connection>, MeterReadingRepository {
+
+}
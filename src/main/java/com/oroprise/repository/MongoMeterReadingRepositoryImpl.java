@@ -0,0 +1,291 @@
+package com.oroprise.repository;
+
+import static java.util.stream.Collectors.toSet;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Sort.Direction;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.BulkOperations.BulkMode;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.BasicUpdate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.util.CloseableIterator;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.BulkWriteError;
+import com.mongodb.BulkWriteOperation;
+import com.mongodb.DBCollection;
+import com.mongodb.DBCursor;
+import com.mongodb.DBObject;
+import com.oroprise.bo.Connection;
+import com.oroprise.bo.MeterReading;
+import com.oroprise.config.ApplicationProperties;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * MongoTemplate backed implementation of {@link MeterReadingRepositoryCustom}, picked up by Spring Data through the Impl postfix
+ *
+ */
+@Slf4j
+public class MongoMeterReadingRepositoryImpl implements MeterReadingRepositoryCustom {
+
+	private static final Sort CONNECTION_ORDER = new Sort(Direction.ASC, "_id");
+
+	/** completed one-off migrations, by _id */
+	private static final String MIGRATIONS = "migrations";
+	private static final String YEAR_MIGRATION = "meterReadingYears";
+	private static final String SCHEMA_MIGRATION = "meterReadingSchema";
+
+	@Autowired
+	private MongoTemplate mongoTemplate;
+
+	@Autowired
+	private ApplicationProperties applicationProperties;
+
+	@Override
+	public Set<Integer> bulkUpsert(List<MeterReading> meterReadings) {
+		if (meterReadings.isEmpty()) {
+			return Collections.emptySet();
+		}
+
+		BulkOperations bulkOps = mongoTemplate.bulkOps(BulkMode.UNORDERED, MeterReading.class);
+		for (MeterReading meterReading : meterReadings) {
+			DBObject document = new BasicDBObject();
+			mongoTemplate.getConverter().write(meterReading, document);
+			// bulk operations pass the query as is, so it takes the converted id. Bulk updates need operators, a plain
+			// document is rejected by the driver
+			Object id = document.removeField(MeterReadingSchema.ID);
+			bulkOps.upsert(Query.query(Criteria.where(MeterReadingSchema.ID).is(id)), new BasicUpdate(new BasicDBObject("$set", document)));
+		}
+
+		try {
+			bulkOps.execute();
+			return Collections.emptySet();
+		} catch (BulkOperationException e) {
+			// unordered, so every other document of the batch has been written
+			log.error("Bulk upsert of {} meterReadings failed for {} of them", meterReadings.size(), e.getErrors().size());
+			return e.getErrors().stream().map(BulkWriteError::getIndex).collect(toSet());
+		}
+	}
+
+	@Override
+	public Map<Connection, Long> findFingerprints(Collection<Connection> connections) {
+		if (connections.isEmpty()) {
+			return Collections.emptyMap();
+		}
+		String fingerprint = MeterReadingSchema.fingerprintField(applicationProperties.getStorage().isCompactMeterReadings());
+		Query query = Query.query(Criteria.where(MeterReadingSchema.ID).in(connections));
+		query.fields().include(MeterReadingSchema.ID).include(fingerprint);
+
+		Map<Connection, Long> fingerprints = new HashMap<>();
+		for (MeterReading meterReading : mongoTemplate.find(query, MeterReading.class)) {
+			if (null != meterReading.getFingerprint()) {
+				fingerprints.put(meterReading.getConnection(), meterReading.getFingerprint());
+			}
+		}
+		return fingerprints;
+	}
+
+	@Override
+	public long bulkDelete(Collection<Connection> connections) {
+		if (connections.isEmpty()) {
+			return 0;
+		}
+		return mongoTemplate.remove(Query.query(Criteria.where(MeterReadingSchema.ID).in(connections)), MeterReading.class).getN();
+	}
+
+	@Override
+	public List<MeterReading> findPage(String profileName, Connection after, int size) {
+		return mongoTemplate.find(connectionRange(profileName, after).limit(size), MeterReading.class);
+	}
+
+	@Override
+	public CloseableIterator<MeterReading> stream(String profileName) {
+		return mongoTemplate.stream(connectionRange(profileName, null), MeterReading.class);
+	}
+
+	@Override
+	public List<MeterReading> findByYearlyConsumption(String profileName, Long minYearlyConsumption,
+			Long maxYearlyConsumption, Pageable pageable) {
+		boolean compact = applicationProperties.getStorage().isCompactMeterReadings();
+		String yearlyConsumption = MeterReadingSchema.yearlyConsumptionField(compact);
+
+		Query query = new Query();
+		if (null != profileName) {
+			query.addCriteria(Criteria.where(MeterReadingSchema.ID + "." + MeterReadingSchema.profileNameField(compact)).is(profileName));
+		}
+		if (null != minYearlyConsumption || null != maxYearlyConsumption) {
+			Criteria range = Criteria.where(yearlyConsumption);
+			if (null != minYearlyConsumption) {
+				range.gte(minYearlyConsumption);
+			}
+			if (null != maxYearlyConsumption) {
+				range.lte(maxYearlyConsumption);
+			}
+			query.addCriteria(range);
+		} else {
+			// documents without the field are not ordered by the index
+			query.addCriteria(Criteria.where(yearlyConsumption).ne(null));
+		}
+		query.with(new Sort(Direction.ASC, yearlyConsumption, MeterReadingSchema.ID)).skip(pageable.getOffset())
+				.limit(pageable.getPageSize());
+		query.fields().include(MeterReadingSchema.ID).include(yearlyConsumption);
+		return mongoTemplate.find(query, MeterReading.class);
+	}
+
+	@Override
+	public List<MeterReading> findYears(String profileName, String connectionId, Integer fromYear, Integer toYear) {
+		boolean compact = applicationProperties.getStorage().isCompactMeterReadings();
+		DBObject from = connectionPrefix(compact, profileName, connectionId);
+		if (null != fromYear) {
+			from.put(MeterReadingSchema.yearField(compact), fromYear);
+		}
+		Criteria criteria = Criteria.where(MeterReadingSchema.ID).gte(from);
+		if (null != toYear) {
+			criteria.lte(connectionPrefix(compact, profileName, connectionId).append(MeterReadingSchema.yearField(compact), toYear));
+		} else {
+			criteria.lt(connectionPrefix(compact, profileName, connectionId + '\0'));
+		}
+		return mongoTemplate.find(Query.query(criteria).with(CONNECTION_ORDER), MeterReading.class);
+	}
+
+	private BasicDBObject connectionPrefix(boolean compact, String profileName, String connectionId) {
+		return new BasicDBObject(MeterReadingSchema.profileNameField(compact), profileName)
+				.append(compact ? MeterReadingSchema.CONNECTION_ID : MeterReadingSchema.MAPPED_CONNECTION_ID, connectionId);
+	}
+
+	@Override
+	public long backfillYearlyConsumption(int batchSize) {
+		String yearlyConsumption = MeterReadingSchema.yearlyConsumptionField(applicationProperties.getStorage().isCompactMeterReadings());
+		// served from the yearly consumption index, missing fields are indexed as null
+		return rewrite(new BasicDBObject(yearlyConsumption, null), batchSize, (bulk, document) -> {
+			MeterReading meterReading = mongoTemplate.getConverter().read(MeterReading.class, document);
+			bulk.find(new BasicDBObject(MeterReadingSchema.ID, document.get(MeterReadingSchema.ID)))
+					.updateOne(new BasicDBObject("$set", new BasicDBObject(yearlyConsumption,
+							MeterReading.yearlyConsumption(meterReading.getMeterRecords(), meterReading.getBaseline()))));
+		});
+	}
+
+	@Override
+	public long migrateSchema(int batchSize) {
+		boolean compact = applicationProperties.getStorage().isCompactMeterReadings();
+		DBCollection migrations = mongoTemplate.getCollection(MIGRATIONS);
+		DBObject marker = migrations.findOne(new BasicDBObject(MeterReadingSchema.ID, SCHEMA_MIGRATION));
+		if (null != marker && Boolean.valueOf(compact).equals(marker.get("compact"))) {
+			return 0;
+		}
+
+		DBObject otherFormat = new BasicDBObject(MeterReadingSchema.ID + "." + MeterReadingSchema.profileNameField(!compact),
+				new BasicDBObject("$exists", true));
+		long migrated = rewrite(otherFormat, batchSize, (bulk, document) -> {
+			DBObject converted = new BasicDBObject();
+			mongoTemplate.getConverter().write(mongoTemplate.getConverter().read(MeterReading.class, document), converted);
+			Object id = converted.removeField(MeterReadingSchema.ID);
+
+			bulk.find(new BasicDBObject(MeterReadingSchema.ID, id)).upsert().updateOne(new BasicDBObject("$setOnInsert", converted));
+			bulk.find(new BasicDBObject(MeterReadingSchema.ID, document.get(MeterReadingSchema.ID))).removeOne();
+		});
+		// later startups skip the scan until the format is switched again
+		migrations.save(new BasicDBObject(MeterReadingSchema.ID, SCHEMA_MIGRATION).append("compact", compact)
+				.append("migrated", migrated).append("completed", new Date()));
+		return migrated;
+	}
+
+	@Override
+	public long migrateToYear(int year, int batchSize) {
+		DBCollection migrations = mongoTemplate.getCollection(MIGRATIONS);
+		if (null != migrations.findOne(new BasicDBObject(MeterReadingSchema.ID, YEAR_MIGRATION))) {
+			return 0;
+		}
+
+		boolean compact = applicationProperties.getStorage().isCompactMeterReadings();
+		DBObject withoutYear = new BasicDBObject(MeterReadingSchema.ID + "." + MeterReadingSchema.yearField(compact),
+				new BasicDBObject("$exists", false));
+		long moved = rewrite(withoutYear, batchSize, (bulk, document) -> {
+			MeterReading meterReading = mongoTemplate.getConverter().read(MeterReading.class, document);
+			meterReading.getConnection().setYear(year);
+			DBObject migrated = new BasicDBObject();
+			mongoTemplate.getConverter().write(meterReading, migrated);
+			Object id = migrated.removeField(MeterReadingSchema.ID);
+
+			bulk.find(new BasicDBObject(MeterReadingSchema.ID, id)).upsert().updateOne(new BasicDBObject("$setOnInsert", migrated));
+			bulk.find(new BasicDBObject(MeterReadingSchema.ID, document.get(MeterReadingSchema.ID))).removeOne();
+		});
+		// later startups skip the scan, every document written from now on has its year
+		migrations.save(new BasicDBObject(MeterReadingSchema.ID, YEAR_MIGRATION).append("year", year).append("migrated", moved)
+				.append("completed", new Date()));
+		return moved;
+	}
+
+	/**
+	 * Queues writes for every document matching the filter and executes them in unordered bulk writes of batchSize
+	 * 
+	 * @param filter
+	 * @param batchSize
+	 * @param rewrite adds the writes of a document to the bulk write
+	 * @return number of documents rewritten
+	 */
+	private long rewrite(DBObject filter, int batchSize, BiConsumer<BulkWriteOperation, DBObject> rewrite) {
+		DBCollection collection = mongoTemplate.getCollection(mongoTemplate.getCollectionName(MeterReading.class));
+		long rewritten = 0;
+		try (DBCursor cursor = collection.find(filter).batchSize(batchSize)) {
+			BulkWriteOperation bulk = collection.initializeUnorderedBulkOperation();
+			int pending = 0;
+			while (cursor.hasNext()) {
+				rewrite.accept(bulk, cursor.next());
+				if (++pending == batchSize) {
+					bulk.execute();
+					rewritten += pending;
+					log.info("Rewrote {} meterReadings matching {}", rewritten, filter);
+					bulk = collection.initializeUnorderedBulkOperation();
+					pending = 0;
+				}
+			}
+			if (pending > 0) {
+				bulk.execute();
+				rewritten += pending;
+			}
+		}
+		return rewritten;
+	}
+
+	/**
+	 * Query in connection order on a range of the composite _id. Embedded documents compare field by field,
+	 * so {profileName: name} sorts before and {profileName: name + '\0'} after every connection of the profile.
+	 * The field name depends on the {@link MeterReadingSchema} in use.
+	 * 
+	 * @param profileName only connections of this profile, all if null
+	 * @param after only connections after this one, from the first one if null
+	 * @return
+	 */
+	private Query connectionRange(String profileName, Connection after) {
+		Query query = new Query().with(CONNECTION_ORDER);
+		if (null == profileName && null == after) {
+			return query;
+		}
+
+		Criteria criteria = Criteria.where("_id");
+		if (null != profileName) {
+			String field = MeterReadingSchema.profileNameField(applicationProperties.getStorage().isCompactMeterReadings());
+			criteria.gte(new BasicDBObject(field, profileName)).lt(new BasicDBObject(field, profileName + '\0'));
+		}
+		if (null != after) {
+			criteria.gt(after);
+		}
+		return query.addCriteria(criteria);
+	}
+}
@@ -0,0 +1,14 @@
+package com.oroprise.repository;
+
+import org.springframework.data.repository.Repository;
+
+import com.oroprise.bo.Profile;
+
+/**
+ * Spring Data implementation of {@link ProfileRepository} on Mongo, the custom methods are in {@link MongoProfileRepositoryImpl}.
+ * Only the CRUD methods declared by ProfileRepository are exposed.
+ *
+ */
+public interface MongoProfileRepository extends Repository<Profile, String>, ProfileRepository {
+
+}
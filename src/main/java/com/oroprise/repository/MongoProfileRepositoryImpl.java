@@ -0,0 +1,59 @@
+package com.oroprise.repository;
+
+import static java.util.stream.Collectors.toSet;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.BulkOperations.BulkMode;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.BasicUpdate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.BulkWriteError;
+import com.mongodb.DBObject;
+import com.oroprise.bo.Profile;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * MongoTemplate backed implementation of {@link ProfileRepositoryCustom}, picked up by Spring Data through the Impl postfix
+ *
+ */
+@Slf4j
+public class MongoProfileRepositoryImpl implements ProfileRepositoryCustom {
+
+	@Autowired
+	private MongoTemplate mongoTemplate;
+
+	@Override
+	public Set<Integer> bulkUpsert(List<Profile> profiles) {
+		if (profiles.isEmpty()) {
+			return Collections.emptySet();
+		}
+
+		BulkOperations bulkOps = mongoTemplate.bulkOps(BulkMode.UNORDERED, Profile.class);
+		for (Profile profile : profiles) {
+			DBObject document = new BasicDBObject();
+			mongoTemplate.getConverter().write(profile, document);
+			// bulk updates need operators, a plain document is rejected by the driver
+			document.removeField("_id");
+			bulkOps.upsert(Query.query(Criteria.where("_id").is(profile.getName())), new BasicUpdate(new BasicDBObject("$set", document)));
+		}
+
+		try {
+			bulkOps.execute();
+			return Collections.emptySet();
+		} catch (BulkOperationException e) {
+			// unordered, so every other document of the batch has been written
+			log.error("Bulk upsert of {} profiles failed for {} of them", profiles.size(), e.getErrors().size());
+			return e.getErrors().stream().map(BulkWriteError::getIndex).collect(toSet());
+		}
+	}
+}
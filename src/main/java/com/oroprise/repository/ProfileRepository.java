@@ -3,16 +3,64 @@
  */
 package com.oroprise.repository;
 
-import org.springframework.data.mongodb.repository.MongoRepository;
-import org.springframework.stereotype.Repository;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
 
 import com.oroprise.bo.Profile;
 
 /**
+ * Storage of the profiles, on Mongo through {@link MongoProfileRepository} or in memory, as selected by
+ * oroprise.storage.engine
+ * 
  * @author danis
  *
  */
-//@Repository
-public interface ProfileRepository extends MongoRepository<Profile, String> {
+public interface ProfileRepository extends ProfileRepositoryCustom {
+
+	Profile findOne(String name);
+
+	/**
+	 * @param names
+	 * @return the profiles found, in no particular order
+	 */
+	Iterable<Profile> findAll(Iterable<String> names);
+
+	List<Profile> findAll();
+
+	<S extends Profile> S save(S profile);
+
+	<S extends Profile> List<S> save(Iterable<S> profiles);
+
+	void delete(String name);
+
+	void deleteAll();
+
+	/**
+	 * First page of profiles in name order, without a count query
+	 * 
+	 * @param pageable
+	 * @return
+	 */
+	List<Profile> findAllBy(Pageable pageable);
+
+	/**
+	 * Keyset pagination on the profile name
+	 * 
+	 * @param name name of the last profile of the previous page
+	 * @param pageable
+	 * @return
+	 */
+	List<Profile> findByNameGreaterThan(String name, Pageable pageable);
+
+	/**
+	 * All profiles read through a Mongo cursor, the stream must be closed
+	 * 
+	 * @param sort
+	 * @return
+	 */
+	Stream<Profile> streamAllBy(Sort sort);
 
 }
@@ -0,0 +1,21 @@
+package com.oroprise.repository;
+
+import java.util.List;
+import java.util.Set;
+
+import com.oroprise.bo.Profile;
+
+/**
+ * Bulk operations on Profiles that are not covered by {@link org.springframework.data.mongodb.repository.MongoRepository}
+ *
+ */
+public interface ProfileRepositoryCustom {
+
+	/**
+	 * Upserts all profiles keyed on their name in a single unordered bulk write
+	 * 
+	 * @param profiles
+	 * @return indexes (in profiles) of the documents that could not be written, empty if all succeeded
+	 */
+	Set<Integer> bulkUpsert(List<Profile> profiles);
+}
@@ -0,0 +1,119 @@
+package com.oroprise.repository.memory;
+
+import static java.util.Comparator.naturalOrder;
+import static java.util.Comparator.nullsFirst;
+import static java.util.stream.Collectors.toList;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Repository;
+
+import com.oroprise.bo.ConsumptionRollup;
+import com.oroprise.bo.ProfileMonth;
+import com.oroprise.repository.ConsumptionRollupRepository;
+
+/**
+ * {@link ConsumptionRollupRepository} of the memory storage engine, rollups are kept in profile, year and month order.
+ * Increments replace the rollup atomically, callers get copies.
+ *
+ */
+@Repository
+@ConditionalOnProperty(prefix = "oroprise.storage", name = "engine", havingValue = "memory")
+public class InMemoryConsumptionRollupRepository implements ConsumptionRollupRepository {
+
+	static final Comparator<ProfileMonth> PROFILE_MONTH_ORDER = Comparator
+			.comparing(ProfileMonth::getProfileName, nullsFirst(naturalOrder()))
+			.thenComparing(ProfileMonth::getYear, nullsFirst(naturalOrder()))
+			.thenComparing(ProfileMonth::getMonth, nullsFirst(naturalOrder()));
+
+	private final ConcurrentSkipListMap<ProfileMonth, ConsumptionRollup> rollups = new ConcurrentSkipListMap<>(PROFILE_MONTH_ORDER);
+
+	@Override
+	public void increment(Collection<ConsumptionRollup> deltas) {
+		for (ConsumptionRollup delta : deltas) {
+			rollups.compute(copy(delta.getId()), (id, stored) -> {
+				ConsumptionRollup rollup = null == stored ? new ConsumptionRollup(id) : copy(stored);
+				rollup.setTotalConsumption(rollup.getTotalConsumption() + delta.getTotalConsumption());
+				rollup.setConnections(rollup.getConnections() + delta.getConnections());
+				if (null != delta.getMinConsumption()) {
+					rollup.setMinConsumption(null == rollup.getMinConsumption() ? delta.getMinConsumption()
+							: Math.min(rollup.getMinConsumption(), delta.getMinConsumption()));
+				}
+				if (null != delta.getMaxConsumption()) {
+					rollup.setMaxConsumption(null == rollup.getMaxConsumption() ? delta.getMaxConsumption()
+							: Math.max(rollup.getMaxConsumption(), delta.getMaxConsumption()));
+				}
+				return rollup;
+			});
+		}
+	}
+
+	@Override
+	public ConsumptionRollup findOne(ProfileMonth id) {
+		ConsumptionRollup rollup = rollups.get(id);
+		return null == rollup ? null : copy(rollup);
+	}
+
+	@Override
+	public List<ConsumptionRollup> findByProfileName(String profileName, Integer year) {
+		return profileRange(profileName, year).values().stream().map(InMemoryConsumptionRollupRepository::copy).collect(toList());
+	}
+
+	@Override
+	public <S extends ConsumptionRollup> List<S> save(Iterable<S> rollups) {
+		List<S> saved = new ArrayList<>();
+		for (S rollup : rollups) {
+			this.rollups.put(copy(rollup.getId()), copy(rollup));
+			saved.add(rollup);
+		}
+		return saved;
+	}
+
+	@Override
+	public void deleteByProfileName(String profileName, Integer year) {
+		profileRange(profileName, year).clear();
+	}
+
+	@Override
+	public void deleteAll() {
+		rollups.clear();
+	}
+
+	/**
+	 * @param profileName
+	 * @param year all years if null
+	 * @return a view of the rollups of the profile, or of the profile in a year
+	 */
+	private ConcurrentNavigableMap<ProfileMonth, ConsumptionRollup> profileRange(String profileName, Integer year) {
+		if (null == year) {
+			return rollups.subMap(new ProfileMonth(profileName, null, null), new ProfileMonth(profileName + '\0', null, null));
+		}
+		return rollups.subMap(new ProfileMonth(profileName, year, null), new ProfileMonth(profileName, year + 1, null));
+	}
+
+	static ConsumptionRollup copy(ConsumptionRollup rollup) {
+		ConsumptionRollup copy = new ConsumptionRollup(copy(rollup.getId()));
+		copy.setTotalConsumption(rollup.getTotalConsumption());
+		copy.setConnections(rollup.getConnections());
+		copy.setMinConsumption(rollup.getMinConsumption());
+		copy.setMaxConsumption(rollup.getMaxConsumption());
+		return copy;
+	}
+
+	private static ProfileMonth copy(ProfileMonth id) {
+		return new ProfileMonth(id.getProfileName(), id.getYear(), id.getMonth());
+	}
+
+	/**
+	 * @return the live map of the rollups, for the snapshot
+	 */
+	ConcurrentSkipListMap<ProfileMonth, ConsumptionRollup> rollups() {
+		return rollups;
+	}
+}
@@ -0,0 +1,253 @@
+package com.oroprise.repository.memory;
+
+import static java.util.Comparator.naturalOrder;
+import static java.util.Comparator.nullsFirst;
+import static java.util.stream.Collectors.toList;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.util.CloseableIterator;
+import org.springframework.stereotype.Repository;
+
+import com.oroprise.bo.Connection;
+import com.oroprise.bo.MeterReading;
+import com.oroprise.repository.MeterReadingRepository;
+
+/**
+ * {@link MeterReadingRepository} of the memory storage engine. MeterReadings are kept in a concurrent skip list keyed
+ * on their connection, in the order of the composite _id of the Mongo engine, so lookups by connection take
+ * microseconds and pages, years and profiles are range scans.
+ *
+ */
+@Repository
+@ConditionalOnProperty(prefix = "oroprise.storage", name = "engine", havingValue = "memory")
+public class InMemoryMeterReadingRepository implements MeterReadingRepository {
+
+	/** profileName, connectionId then year, like the fields of the _id */
+	static final Comparator<Connection> CONNECTION_ORDER = Comparator
+			.comparing(Connection::getProfileName, nullsFirst(naturalOrder()))
+			.thenComparing(Connection::getConnectionId, nullsFirst(naturalOrder()))
+			.thenComparing(Connection::getYear, nullsFirst(naturalOrder()));
+
+	private static final Comparator<Entry<Connection, StoredMeterReading>> YEARLY_CONSUMPTION_ORDER = Comparator
+			.<Entry<Connection, StoredMeterReading>>comparingLong(e -> e.getValue().yearlyConsumption)
+			.thenComparing(Entry::getKey, CONNECTION_ORDER);
+
+	private final ConcurrentSkipListMap<Connection, StoredMeterReading> meterReadings = new ConcurrentSkipListMap<>(CONNECTION_ORDER);
+
+	@Override
+	public MeterReading findOne(Connection connection) {
+		StoredMeterReading stored = meterReadings.get(connection);
+		return null == stored ? null : stored.toMeterReading(connection);
+	}
+
+	@Override
+	public Iterable<MeterReading> findAll(Iterable<Connection> connections) {
+		List<MeterReading> found = new ArrayList<>();
+		for (Connection connection : connections) {
+			MeterReading meterReading = findOne(connection);
+			if (null != meterReading) {
+				found.add(meterReading);
+			}
+		}
+		return found;
+	}
+
+	@Override
+	public List<MeterReading> findAll() {
+		return toMeterReadings(meterReadings, Integer.MAX_VALUE);
+	}
+
+	@Override
+	public <S extends MeterReading> S save(S meterReading) {
+		meterReadings.put(StoredMeterReading.copy(meterReading.getConnection()), StoredMeterReading.of(meterReading));
+		return meterReading;
+	}
+
+	@Override
+	public Set<Integer> bulkUpsert(List<MeterReading> meterReadings) {
+		meterReadings.forEach(this::save);
+		return Collections.emptySet();
+	}
+
+	@Override
+	public void delete(Connection connection) {
+		meterReadings.remove(connection);
+	}
+
+	@Override
+	public long bulkDelete(Collection<Connection> connections) {
+		long deleted = 0;
+		for (Connection connection : connections) {
+			if (null != meterReadings.remove(connection)) {
+				deleted++;
+			}
+		}
+		return deleted;
+	}
+
+	@Override
+	public void deleteAll() {
+		meterReadings.clear();
+	}
+
+	@Override
+	public Map<Connection, Long> findFingerprints(Collection<Connection> connections) {
+		Map<Connection, Long> fingerprints = new HashMap<>();
+		for (Connection connection : connections) {
+			StoredMeterReading stored = meterReadings.get(connection);
+			if (null != stored && stored.has(StoredMeterReading.HAS_FINGERPRINT)) {
+				fingerprints.put(connection, stored.fingerprint);
+			}
+		}
+		return fingerprints;
+	}
+
+	@Override
+	public List<MeterReading> findPage(String profileName, Connection after, int size) {
+		return toMeterReadings(range(profileName, after), size);
+	}
+
+	@Override
+	public CloseableIterator<MeterReading> stream(String profileName) {
+		Iterator<Entry<Connection, StoredMeterReading>> entries = range(profileName, null).entrySet().iterator();
+		return new CloseableIterator<MeterReading>() {
+
+			@Override
+			public boolean hasNext() {
+				return entries.hasNext();
+			}
+
+			@Override
+			public MeterReading next() {
+				Entry<Connection, StoredMeterReading> entry = entries.next();
+				return entry.getValue().toMeterReading(entry.getKey());
+			}
+
+			@Override
+			public void close() {
+			}
+		};
+	}
+
+	@Override
+	public List<MeterReading> findYears(String profileName, String connectionId, Integer fromYear, Integer toYear) {
+		NavigableMap<Connection, StoredMeterReading> years = meterReadings.subMap(new Connection(profileName, connectionId, fromYear), true,
+				null == toYear ? new Connection(profileName, connectionId + '\0', null) : new Connection(profileName, connectionId, toYear),
+				null != toYear);
+		return toMeterReadings(years, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Scans all meterReadings of the profile, or all of them, there is no index on the yearly consumption
+	 */
+	@Override
+	public List<MeterReading> findByYearlyConsumption(String profileName, Long minYearlyConsumption,
+			Long maxYearlyConsumption, Pageable pageable) {
+		return range(profileName, null).entrySet().stream()
+				.filter(e -> e.getValue().has(StoredMeterReading.HAS_YEARLY_CONSUMPTION))
+				.filter(e -> null == minYearlyConsumption || e.getValue().yearlyConsumption >= minYearlyConsumption)
+				.filter(e -> null == maxYearlyConsumption || e.getValue().yearlyConsumption <= maxYearlyConsumption)
+				.sorted(YEARLY_CONSUMPTION_ORDER)
+				.skip(pageable.getOffset())
+				.limit(pageable.getPageSize())
+				.map(e -> {
+					// only the connection and the yearly consumption, like the projection of the Mongo engine
+					MeterReading meterReading = new MeterReading();
+					meterReading.setConnection(StoredMeterReading.copy(e.getKey()));
+					meterReading.setYearlyConsumption(e.getValue().yearlyConsumption);
+					return meterReading;
+				})
+				.collect(toList());
+	}
+
+	/**
+	 * Nothing to migrate, the memory engine has no document format
+	 */
+	@Override
+	public long migrateSchema(int batchSize) {
+		return 0;
+	}
+
+	@Override
+	public long backfillYearlyConsumption(int batchSize) {
+		long updated = 0;
+		for (Entry<Connection, StoredMeterReading> entry : meterReadings.entrySet()) {
+			if (!entry.getValue().has(StoredMeterReading.HAS_YEARLY_CONSUMPTION)
+					&& meterReadings.replace(entry.getKey(), entry.getValue(), entry.getValue().withYearlyConsumption())) {
+				updated++;
+			}
+		}
+		return updated;
+	}
+
+	@Override
+	public long migrateToYear(int year, int batchSize) {
+		long migrated = 0;
+		for (Entry<Connection, StoredMeterReading> entry : meterReadings.entrySet()) {
+			Connection connection = entry.getKey();
+			if (null == connection.getYear()) {
+				meterReadings.putIfAbsent(new Connection(connection.getProfileName(), connection.getConnectionId(), year), entry.getValue());
+				meterReadings.remove(connection, entry.getValue());
+				migrated++;
+			}
+		}
+		return migrated;
+	}
+
+	/**
+	 * @param profileName only connections of this profile, all if null
+	 * @param after only connections after this one, from the first one if null
+	 * @return a view of the meterReadings in connection order
+	 */
+	private NavigableMap<Connection, StoredMeterReading> range(String profileName, Connection after) {
+		// connections with null fields sort first, so these bound every connection of the profile
+		Connection from = null == profileName ? null : new Connection(profileName, null, null);
+		Connection to = null == profileName ? null : new Connection(profileName + '\0', null, null);
+		boolean fromInclusive = true;
+		if (null != after && (null == from || CONNECTION_ORDER.compare(after, from) >= 0)) {
+			from = after;
+			fromInclusive = false;
+		}
+
+		if (null == from) {
+			return meterReadings;
+		} else if (null == to) {
+			return meterReadings.tailMap(from, fromInclusive);
+		} else if (CONNECTION_ORDER.compare(from, to) > 0) {
+			return Collections.emptyNavigableMap();
+		}
+		return meterReadings.subMap(from, fromInclusive, to, false);
+	}
+
+	private static List<MeterReading> toMeterReadings(NavigableMap<Connection, StoredMeterReading> range, int limit) {
+		List<MeterReading> result = new ArrayList<>();
+		for (Entry<Connection, StoredMeterReading> entry : range.entrySet()) {
+			if (result.size() == limit) {
+				break;
+			}
+			result.add(entry.getValue().toMeterReading(entry.getKey()));
+		}
+		return result;
+	}
+
+	/**
+	 * @return the live map of the meterReadings, for the snapshot
+	 */
+	ConcurrentSkipListMap<Connection, StoredMeterReading> meterReadings() {
+		return meterReadings;
+	}
+}
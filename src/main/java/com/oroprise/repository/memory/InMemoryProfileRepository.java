@@ -0,0 +1,115 @@
+package com.oroprise.repository.memory;
+
+import static java.util.stream.Collectors.toList;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.stream.Stream;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Sort.Direction;
+import org.springframework.stereotype.Repository;
+
+import com.oroprise.bo.Profile;
+import com.oroprise.repository.ProfileRepository;
+
+/**
+ * {@link ProfileRepository} of the memory storage engine, profiles are kept by name in name order. Profiles are not
+ * changed once built, so the stored instances are handed out.
+ *
+ */
+@Repository
+@ConditionalOnProperty(prefix = "oroprise.storage", name = "engine", havingValue = "memory")
+public class InMemoryProfileRepository implements ProfileRepository {
+
+	private final ConcurrentSkipListMap<String, Profile> profiles = new ConcurrentSkipListMap<>();
+
+	@Override
+	public Profile findOne(String name) {
+		return profiles.get(name);
+	}
+
+	@Override
+	public Iterable<Profile> findAll(Iterable<String> names) {
+		List<Profile> found = new ArrayList<>();
+		for (String name : names) {
+			Profile profile = profiles.get(name);
+			if (null != profile) {
+				found.add(profile);
+			}
+		}
+		return found;
+	}
+
+	@Override
+	public List<Profile> findAll() {
+		return new ArrayList<>(profiles.values());
+	}
+
+	@Override
+	public <S extends Profile> S save(S profile) {
+		profiles.put(profile.getName(), profile);
+		return profile;
+	}
+
+	@Override
+	public <S extends Profile> List<S> save(Iterable<S> profiles) {
+		List<S> saved = new ArrayList<>();
+		profiles.forEach(profile -> saved.add(save(profile)));
+		return saved;
+	}
+
+	@Override
+	public Set<Integer> bulkUpsert(List<Profile> profiles) {
+		save(profiles);
+		return Collections.emptySet();
+	}
+
+	@Override
+	public void delete(String name) {
+		profiles.remove(name);
+	}
+
+	@Override
+	public void deleteAll() {
+		profiles.clear();
+	}
+
+	@Override
+	public List<Profile> findAllBy(Pageable pageable) {
+		return page(profiles, pageable);
+	}
+
+	@Override
+	public List<Profile> findByNameGreaterThan(String name, Pageable pageable) {
+		return page(profiles.tailMap(name, false), pageable);
+	}
+
+	/**
+	 * @param sort only the direction of the name is taken into account, the profiles are always in name order
+	 */
+	@Override
+	public Stream<Profile> streamAllBy(Sort sort) {
+		Sort.Order order = null == sort ? null : sort.getOrderFor("name");
+		NavigableMap<String, Profile> ordered = null != order && order.getDirection() == Direction.DESC ? profiles.descendingMap() : profiles;
+		return ordered.values().stream();
+	}
+
+	private static List<Profile> page(Map<String, Profile> profiles, Pageable pageable) {
+		return profiles.values().stream().skip(pageable.getOffset()).limit(pageable.getPageSize()).collect(toList());
+	}
+
+	/**
+	 * @return the live map of the profiles, for the snapshot
+	 */
+	Map<String, Profile> profiles() {
+		return profiles;
+	}
+}
@@ -0,0 +1,363 @@
+package com.oroprise.repository.memory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import com.oroprise.bo.Connection;
+import com.oroprise.bo.ConsumptionRollup;
+import com.oroprise.bo.Fraction;
+import com.oroprise.bo.Month;
+import com.oroprise.bo.Profile;
+import com.oroprise.bo.ProfileMonth;
+import com.oroprise.config.ApplicationProperties;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Saves the memory storage engine to oroprise.storage.memory.snapshot-file and loads it back on startup. The file is
+ * written and read through memory mapped regions, a new snapshot is written next to it and moved over it once
+ * complete. Snapshots are taken while ingests go on, the meterReadings and rollups of a running ingest may be saved in
+ * part, rebuild the rollups of the profile after restoring such a snapshot.
+ * <p>
+ * All numbers are big endian, strings are UTF-8 prefixed by their int16 byte length, -1 for null.
+ * <pre>
+ * header         int32 magic 'ORMS', int8 version 1
+ * profiles       int32 count, each string name, 12 x float64 fractions JAN..DEC
+ * meterReadings  int32 count, each string profileName, string connectionId, int32 year, int32 flags,
+ *                int64 baseline, int64 yearlyConsumption, int64 fingerprint, 12 x int64 readings JAN..DEC
+ * rollups        int32 count, each string profileName, int32 year, int8 month ordinal, int8 flags,
+ *                int64 totalConsumption, int64 connections, int64 minConsumption, int64 maxConsumption
+ * </pre>
+ * Flags mark the optional fields present, see {@link StoredMeterReading} for those of the meterReadings.
+ *
+ */
+@Component
+@Slf4j
+@ConditionalOnProperty(prefix = "oroprise.storage", name = "engine", havingValue = "memory")
+public class InMemorySnapshot {
+
+	static final int MAGIC = 'O' << 24 | 'R' << 16 | 'M' << 8 | 'S';
+	static final byte VERSION = 1;
+
+	/** year of the connection present, above the flags of {@link StoredMeterReading} */
+	private static final int HAS_YEAR = 1 << 16;
+	private static final int ROLLUP_HAS_YEAR = 1;
+	private static final int ROLLUP_HAS_MONTH = 1 << 1;
+	private static final int ROLLUP_HAS_MIN = 1 << 2;
+	private static final int ROLLUP_HAS_MAX = 1 << 3;
+
+	private static final int MONTHS = StoredMeterReading.MONTHS;
+	private static final Month[] MONTH_VALUES = Month.values();
+	/** files are mapped this much at a time, a mapping cannot exceed 2GB */
+	private static final long REGION_SIZE = 64 * 1024 * 1024;
+
+	@Autowired
+	private InMemoryProfileRepository profileRepository;
+
+	@Autowired
+	private InMemoryMeterReadingRepository meterReadingRepository;
+
+	@Autowired
+	private InMemoryConsumptionRollupRepository consumptionRollupRepository;
+
+	@Autowired
+	private ApplicationProperties applicationProperties;
+
+	private ScheduledExecutorService scheduler;
+
+	@PostConstruct
+	public void init() throws IOException {
+		Path file = file();
+		if (null == file) {
+			log.info("Memory storage engine without snapshot file, nothing is kept across restarts");
+			return;
+		}
+		if (Files.exists(file)) {
+			load(file);
+		}
+
+		long interval = applicationProperties.getStorage().getMemory().getSnapshotIntervalSeconds();
+		if (interval > 0) {
+			scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+				Thread thread = new Thread(runnable, "memory-snapshot");
+				thread.setDaemon(true);
+				return thread;
+			});
+			scheduler.scheduleWithFixedDelay(() -> {
+				try {
+					save(file);
+				} catch (IOException | RuntimeException e) {
+					log.error("Snapshot of the memory storage engine could not be saved to " + file, e);
+				}
+			}, interval, interval, TimeUnit.SECONDS);
+		}
+	}
+
+	@PreDestroy
+	public void destroy() throws IOException, InterruptedException {
+		Path file = file();
+		if (null == file) {
+			return;
+		}
+		if (null != scheduler) {
+			scheduler.shutdown();
+			scheduler.awaitTermination(1, TimeUnit.MINUTES);
+		}
+		save(file);
+	}
+
+	private Path file() {
+		String file = applicationProperties.getStorage().getMemory().getSnapshotFile();
+		return null == file || file.isEmpty() ? null : Paths.get(file);
+	}
+
+	/**
+	 * Writes all profiles, meterReadings and rollups to a new file moved over the given one
+	 *
+	 * @param file
+	 * @throws IOException
+	 */
+	synchronized void save(Path file) throws IOException {
+		long start = System.currentTimeMillis();
+		List<Profile> profiles = new ArrayList<>(profileRepository.profiles().values());
+		// entries of a skip list are immutable copies
+		List<Entry<Connection, StoredMeterReading>> meterReadings = new ArrayList<>(meterReadingRepository.meterReadings().entrySet());
+		List<ConsumptionRollup> rollups = new ArrayList<>(consumptionRollupRepository.rollups().values());
+
+		long size = 4 + 1 + 4 + 4 + 4;
+		for (Profile profile : profiles) {
+			size += stringSize(profile.getName()) + MONTHS * 8;
+		}
+		for (Entry<Connection, StoredMeterReading> entry : meterReadings) {
+			size += stringSize(entry.getKey().getProfileName()) + stringSize(entry.getKey().getConnectionId()) + 4 + 4 + 3 * 8 + MONTHS * 8;
+		}
+		for (ConsumptionRollup rollup : rollups) {
+			size += stringSize(rollup.getId().getProfileName()) + 4 + 1 + 1 + 4 * 8;
+		}
+
+		Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+		try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+				StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			MappedFile out = new MappedFile(channel, MapMode.READ_WRITE, size);
+
+			out.ensure(4 + 1 + 4).putInt(MAGIC).put(VERSION).putInt(profiles.size());
+			for (Profile profile : profiles) {
+				out.putString(profile.getName());
+				ByteBuffer buffer = out.ensure(MONTHS * 8);
+				for (double fraction : profile.getFractionValues()) {
+					buffer.putDouble(fraction);
+				}
+			}
+
+			out.ensure(4).putInt(meterReadings.size());
+			for (Entry<Connection, StoredMeterReading> entry : meterReadings) {
+				Connection connection = entry.getKey();
+				StoredMeterReading stored = entry.getValue();
+				out.putString(connection.getProfileName());
+				out.putString(connection.getConnectionId());
+				ByteBuffer buffer = out.ensure(4 + 4 + 3 * 8 + MONTHS * 8)
+						.putInt(null == connection.getYear() ? 0 : connection.getYear())
+						.putInt(stored.flags | (null == connection.getYear() ? 0 : HAS_YEAR))
+						.putLong(stored.baseline).putLong(stored.yearlyConsumption).putLong(stored.fingerprint);
+				for (long reading : stored.readings) {
+					buffer.putLong(reading);
+				}
+			}
+
+			out.ensure(4).putInt(rollups.size());
+			for (ConsumptionRollup rollup : rollups) {
+				ProfileMonth id = rollup.getId();
+				out.putString(id.getProfileName());
+				int flags = (null == id.getYear() ? 0 : ROLLUP_HAS_YEAR) | (null == id.getMonth() ? 0 : ROLLUP_HAS_MONTH)
+						| (null == rollup.getMinConsumption() ? 0 : ROLLUP_HAS_MIN) | (null == rollup.getMaxConsumption() ? 0 : ROLLUP_HAS_MAX);
+				out.ensure(4 + 1 + 1 + 4 * 8)
+						.putInt(null == id.getYear() ? 0 : id.getYear())
+						.put((byte) (null == id.getMonth() ? 0 : id.getMonth().ordinal()))
+						.put((byte) flags)
+						.putLong(rollup.getTotalConsumption())
+						.putLong(rollup.getConnections())
+						.putLong(null == rollup.getMinConsumption() ? 0 : rollup.getMinConsumption())
+						.putLong(null == rollup.getMaxConsumption() ? 0 : rollup.getMaxConsumption());
+			}
+			out.force();
+		}
+		Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		log.info("Saved {} profiles, {} meterReadings and {} rollups to {} in {} ms", profiles.size(), meterReadings.size(),
+				rollups.size(), file, System.currentTimeMillis() - start);
+	}
+
+	/**
+	 * Adds the profiles, meterReadings and rollups of the file to the engine
+	 *
+	 * @param file
+	 * @throws IOException if the file is not readable or not a snapshot, the application does not start rather than
+	 * overwrite it with an empty one on shutdown
+	 */
+	void load(Path file) throws IOException {
+		long start = System.currentTimeMillis();
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			MappedFile in = new MappedFile(channel, MapMode.READ_ONLY, channel.size());
+
+			ByteBuffer buffer = in.ensure(4 + 1 + 4);
+			int magic = buffer.getInt();
+			byte version = buffer.get();
+			if (magic != MAGIC || version != VERSION) {
+				throw new IOException("Not a memory storage snapshot of version " + VERSION + " : " + file);
+			}
+
+			int profiles = buffer.getInt();
+			for (int p = 0; p < profiles; p++) {
+				Profile.ProfileBuilder builder = new Profile.ProfileBuilder(in.getString());
+				buffer = in.ensure(MONTHS * 8);
+				for (int i = 0; i < MONTHS; i++) {
+					builder.addFraction(new Fraction(MONTH_VALUES[i], buffer.getDouble()));
+				}
+				profileRepository.save(builder.build());
+			}
+
+			int meterReadings = in.ensure(4).getInt();
+			for (int m = 0; m < meterReadings; m++) {
+				String profileName = in.getString();
+				String connectionId = in.getString();
+				buffer = in.ensure(4 + 4 + 3 * 8 + MONTHS * 8);
+				int year = buffer.getInt();
+				int flags = buffer.getInt();
+				long baseline = buffer.getLong();
+				long yearlyConsumption = buffer.getLong();
+				long fingerprint = buffer.getLong();
+				long[] readings = new long[MONTHS];
+				for (int i = 0; i < MONTHS; i++) {
+					readings[i] = buffer.getLong();
+				}
+				meterReadingRepository.meterReadings().put(
+						new Connection(profileName, connectionId, (flags & HAS_YEAR) == 0 ? null : year),
+						new StoredMeterReading(readings, flags & ~HAS_YEAR, baseline, yearlyConsumption, fingerprint));
+			}
+
+			int rollups = in.ensure(4).getInt();
+			for (int r = 0; r < rollups; r++) {
+				String profileName = in.getString();
+				buffer = in.ensure(4 + 1 + 1 + 4 * 8);
+				int year = buffer.getInt();
+				int month = buffer.get();
+				int flags = buffer.get();
+				ConsumptionRollup rollup = new ConsumptionRollup(new ProfileMonth(profileName,
+						(flags & ROLLUP_HAS_YEAR) == 0 ? null : year, (flags & ROLLUP_HAS_MONTH) == 0 ? null : MONTH_VALUES[month]));
+				rollup.setTotalConsumption(buffer.getLong());
+				rollup.setConnections(buffer.getLong());
+				long min = buffer.getLong();
+				long max = buffer.getLong();
+				rollup.setMinConsumption((flags & ROLLUP_HAS_MIN) == 0 ? null : min);
+				rollup.setMaxConsumption((flags & ROLLUP_HAS_MAX) == 0 ? null : max);
+				consumptionRollupRepository.rollups().put(rollup.getId(), rollup);
+			}
+			log.info("Loaded {} profiles, {} meterReadings and {} rollups from {} in {} ms", profiles, meterReadings, rollups,
+					file, System.currentTimeMillis() - start);
+		} catch (IndexOutOfBoundsException | IllegalArgumentException e) {
+			throw new IOException("Memory storage snapshot truncated or corrupt : " + file, e);
+		}
+	}
+
+	private static int stringSize(String value) {
+		if (null == value) {
+			return 2;
+		}
+		int bytes = 0;
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c < 0x80) {
+				bytes += 1;
+			} else if (c < 0x800) {
+				bytes += 2;
+			} else if (Character.isHighSurrogate(c) && i + 1 < value.length() && Character.isLowSurrogate(value.charAt(i + 1))) {
+				bytes += 4;
+				i++;
+			} else {
+				bytes += 3;
+			}
+		}
+		return 2 + bytes;
+	}
+
+	/**
+	 * Maps a file a region at a time, moving the region along as fields are read or written
+	 */
+	private static class MappedFile {
+		private final FileChannel channel;
+		private final MapMode mode;
+		private final long size;
+		private long regionStart;
+		private MappedByteBuffer buffer;
+
+		MappedFile(FileChannel channel, MapMode mode, long size) throws IOException {
+			this.channel = channel;
+			this.mode = mode;
+			this.size = size;
+			this.buffer = channel.map(mode, 0, Math.min(REGION_SIZE, size));
+		}
+
+		/**
+		 * @param bytes
+		 * @return the buffer holding the next bytes at its position
+		 */
+		ByteBuffer ensure(int bytes) throws IOException {
+			if (buffer.remaining() < bytes) {
+				long position = regionStart + buffer.position();
+				if (position + bytes > size) {
+					throw new IndexOutOfBoundsException("Past the end of the file at " + position);
+				}
+				if (mode == MapMode.READ_WRITE) {
+					buffer.force();
+				}
+				regionStart = position;
+				buffer = channel.map(mode, position, Math.max(bytes, Math.min(REGION_SIZE, size - position)));
+			}
+			return buffer;
+		}
+
+		void putString(String value) throws IOException {
+			if (null == value) {
+				ensure(2).putShort((short) -1);
+				return;
+			}
+			byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+			ensure(2 + bytes.length).putShort((short) bytes.length).put(bytes);
+		}
+
+		String getString() throws IOException {
+			short length = ensure(2).getShort();
+			if (length < 0) {
+				return null;
+			}
+			byte[] bytes = new byte[length];
+			ensure(length).get(bytes);
+			return new String(bytes, StandardCharsets.UTF_8);
+		}
+
+		void force() {
+			buffer.force();
+		}
+	}
+}
@@ -0,0 +1,106 @@
+package com.oroprise.repository.memory;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.oroprise.bo.Connection;
+import com.oroprise.bo.MeterReading;
+import com.oroprise.bo.MeterRecord;
+import com.oroprise.bo.Month;
+
+/**
+ * A meterReading as kept by the memory storage engine, the readings in a primitive array indexed by month ordinal.
+ * Immutable, a write replaces the whole instance.
+ *
+ */
+final class StoredMeterReading {
+
+	static final int MONTHS = 12;
+	/** bits 0 to 11 flag the months present */
+	static final int ALL_MONTHS = (1 << MONTHS) - 1;
+	static final int HAS_BASELINE = 1 << MONTHS;
+	static final int HAS_YEARLY_CONSUMPTION = 1 << MONTHS + 1;
+	static final int HAS_FINGERPRINT = 1 << MONTHS + 2;
+
+	private static final Month[] MONTH_VALUES = Month.values();
+
+	final long[] readings;
+	final int flags;
+	final long baseline;
+	final long yearlyConsumption;
+	final long fingerprint;
+
+	StoredMeterReading(long[] readings, int flags, long baseline, long yearlyConsumption, long fingerprint) {
+		this.readings = readings;
+		this.flags = flags;
+		this.baseline = baseline;
+		this.yearlyConsumption = yearlyConsumption;
+		this.fingerprint = fingerprint;
+	}
+
+	static StoredMeterReading of(MeterReading meterReading) {
+		long[] readings = new long[MONTHS];
+		int flags = 0;
+		if (null != meterReading.getMeterRecords()) {
+			for (MeterRecord meterRecord : meterReading.getMeterRecords()) {
+				readings[meterRecord.getMonth().ordinal()] = meterRecord.getReading();
+				flags |= 1 << meterRecord.getMonth().ordinal();
+			}
+		}
+		long baseline = 0;
+		if (null != meterReading.getBaseline()) {
+			baseline = meterReading.getBaseline();
+			flags |= HAS_BASELINE;
+		}
+		long yearlyConsumption = 0;
+		if (null != meterReading.getYearlyConsumption()) {
+			yearlyConsumption = meterReading.getYearlyConsumption();
+			flags |= HAS_YEARLY_CONSUMPTION;
+		}
+		long fingerprint = 0;
+		if (null != meterReading.getFingerprint()) {
+			fingerprint = meterReading.getFingerprint();
+			flags |= HAS_FINGERPRINT;
+		}
+		return new StoredMeterReading(readings, flags, baseline, yearlyConsumption, fingerprint);
+	}
+
+	boolean has(int flag) {
+		return (flags & flag) != 0;
+	}
+
+	/**
+	 * @return the yearly consumption derived from the readings, the same one as written by the ingest
+	 */
+	StoredMeterReading withYearlyConsumption() {
+		long december = (flags & 1 << Month.DEC.ordinal()) != 0 ? readings[Month.DEC.ordinal()] : 0;
+		return new StoredMeterReading(readings, flags | HAS_YEARLY_CONSUMPTION, baseline, december - baseline, fingerprint);
+	}
+
+	/**
+	 * @param connection
+	 * @return a new MeterReading, its meterRecords in month order
+	 */
+	MeterReading toMeterReading(Connection connection) {
+		List<MeterRecord> meterRecords = new ArrayList<>(Integer.bitCount(flags & ALL_MONTHS));
+		for (int i = 0; i < MONTHS; i++) {
+			if ((flags & 1 << i) != 0) {
+				meterRecords.add(new MeterRecord(MONTH_VALUES[i], readings[i]));
+			}
+		}
+		MeterReading meterReading = new MeterReading();
+		meterReading.setConnection(copy(connection));
+		meterReading.setMeterRecords(meterRecords);
+		meterReading.setBaseline(has(HAS_BASELINE) ? baseline : null);
+		meterReading.setYearlyConsumption(has(HAS_YEARLY_CONSUMPTION) ? yearlyConsumption : null);
+		meterReading.setFingerprint(has(HAS_FINGERPRINT) ? fingerprint : null);
+		return meterReading;
+	}
+
+	/**
+	 * Connections are mutable, keys and the connections handed out are copies
+	 */
+	static Connection copy(Connection connection) {
+		return new Connection(connection.getProfileName(), connection.getConnectionId(), connection.getYear());
+	}
+}
@@ -0,0 +1,238 @@
+package com.oroprise.service;
+
+import static java.util.stream.Collectors.groupingBy;
+import static java.util.stream.Collectors.toList;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import com.codahale.metrics.Timer;
+import com.google.common.collect.Lists;
+import com.oroprise.bo.Connection;
+import com.oroprise.bo.ConsumptionRollup;
+import com.oroprise.bo.MeterReading;
+import com.oroprise.bo.MonthlyReadings;
+import com.oroprise.bo.Profile;
+import com.oroprise.config.ApplicationProperties;
+import com.oroprise.repository.AsyncIngestRepository;
+import com.oroprise.vo.MeterReadingStatus;
+import com.oroprise.vo.MeterReadingVo;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Non-blocking variant of {@link CreateMeterReadingService#execute(List)} for the async ingest mode. The same steps
+ * decide the same statuses, but every lookup and write is issued on the asynchronous driver and the next step continues
+ * once it completes, so no thread waits for the database. The $in chunks and write batches of a request are sent
+ * concurrently. Validation runs on the meterReadingValidationPool, the threads of the driver only hand over results.
+ *
+ */
+@Service
+@Slf4j
+@ConditionalOnProperty(prefix = "oroprise.async", name = "enabled")
+public class AsyncCreateMeterReadingService {
+
+	@Autowired
+	private CreateMeterReadingService createMeterReadingService;
+
+	@Autowired
+	private ProfileCacheService profileCacheService;
+
+	@Autowired
+	private ConsumptionRollupService consumptionRollupService;
+
+	@Autowired
+	private ConsumptionIndexService consumptionIndexService;
+
+	@Autowired
+	private ResponseCacheService responseCacheService;
+
+	@Autowired
+	private AsyncIngestRepository asyncIngestRepository;
+
+	@Autowired
+	private ApplicationProperties applicationProperties;
+
+	@Autowired
+	private ForkJoinPool meterReadingValidationPool;
+
+	@Autowired
+	private IngestMetrics ingestMetrics;
+
+	/**
+	 * @param meterReadingVos
+	 * @return completes with the status of every connection once all valid ones are persisted, exceptionally if the
+	 *         database could not be reached
+	 */
+	public CompletableFuture<List<MeterReadingStatus>> execute(List<MeterReadingVo> meterReadingVos) {
+		Timer.Context requestTimer = ingestMetrics.getRequest().time();
+		ingestMetrics.getRows().mark(meterReadingVos.size());
+		// only one stage adds statuses at a time, each one completes before the next starts
+		List<MeterReadingStatus> result = new ArrayList<>();
+
+		// Step1 : group by profilename
+		long start = System.nanoTime();
+		Map<String, List<MeterReadingVo>> profileGroup = meterReadingVos.stream()
+				.collect(groupingBy(MeterReadingVo::getProfileName, TreeMap::new, toList()));
+		long groupingNanos = System.nanoTime() - start;
+
+		// Step2 : profiles not cached yet are loaded in bulk
+		return getProfiles(profileGroup.keySet()).thenCompose(profiles -> {
+			// Step2 & Step3 : validate profile existence, group by ConnectionId and year
+			long groupingStart = System.nanoTime();
+			List<MonthlyReadings> connections = createMeterReadingService.groupConnections(profileGroup, profiles, result::add);
+			ingestMetrics.getGrouping().update(groupingNanos + System.nanoTime() - groupingStart, TimeUnit.NANOSECONDS);
+			ingestMetrics.getConnections().mark(connections.size());
+
+			// Step4 : baselines, then resent connections are done, Step5 to Step7 : validate and build, Step8 : persist
+			return loadBaselines(connections)
+					.thenCompose(loaded -> skipUnchanged(connections, result))
+					.thenApplyAsync(changed -> validateAll(changed, profiles, result), meterReadingValidationPool)
+					.thenCompose(meterReadings -> persist(meterReadings, result));
+		}).thenApply(persisted -> result).whenComplete((statuses, t) -> requestTimer.stop());
+	}
+
+	private CompletableFuture<Map<String, Optional<Profile>>> getProfiles(Set<String> names) {
+		Timer.Context timer = ingestMetrics.getProfileLookup().time();
+		Map<String, Optional<Profile>> profiles = new HashMap<>(profileCacheService.getAllPresent(names));
+		List<String> missing = names.stream().filter(name -> !profiles.containsKey(name)).collect(toList());
+
+		int chunkSize = applicationProperties.getIngest().getProfileLookupChunkSize();
+		return allOf(Lists.partition(missing, chunkSize).stream().map(asyncIngestRepository::findProfiles)).thenApply(chunks -> {
+			Map<String, Optional<Profile>> loaded = new HashMap<>();
+			chunks.forEach(chunk -> chunk.forEach(profile -> loaded.put(profile.getName(), Optional.of(profile))));
+			missing.forEach(name -> loaded.putIfAbsent(name, Optional.empty()));
+			profileCacheService.putAll(loaded);
+			profiles.putAll(loaded);
+			timer.stop();
+			return profiles;
+		});
+	}
+
+	private CompletableFuture<List<MonthlyReadings>> skipUnchanged(List<MonthlyReadings> connections,
+			List<MeterReadingStatus> result) {
+		if (!applicationProperties.getIngest().isSkipUnchanged()) {
+			return CompletableFuture.completedFuture(connections);
+		}
+
+		Timer.Context timer = ingestMetrics.getFingerprintLookup().time();
+		return allOf(Lists.partition(connections, applicationProperties.getIngest().getWriteBatchSize()).stream()
+				.map(chunk -> asyncIngestRepository.findFingerprints(CreateMeterReadingService.completeConnections(chunk))))
+				.thenApply(chunks -> {
+					Map<Connection, Long> fingerprints = new HashMap<>();
+					chunks.forEach(fingerprints::putAll);
+					timer.stop();
+					return createMeterReadingService.skipUnchanged(connections, fingerprints, result::add);
+				});
+	}
+
+	private CompletableFuture<Void> loadBaselines(List<MonthlyReadings> connections) {
+		Map<Connection, MonthlyReadings> byPreviousYear = CreateMeterReadingService.uploadedBaselines(connections);
+
+		Timer.Context timer = ingestMetrics.getBaselineLookup().time();
+		return allOf(Lists.partition(new ArrayList<>(byPreviousYear.keySet()), applicationProperties.getIngest().getWriteBatchSize())
+				.stream().map(asyncIngestRepository::findMeterReadings)).thenAccept(chunks -> {
+					chunks.forEach(previousYears -> CreateMeterReadingService.storedBaselines(byPreviousYear, previousYears));
+					timer.stop();
+				});
+	}
+
+	/**
+	 * Runs on the meterReadingValidationPool, so large uploads are validated by a parallel stream on its threads
+	 *
+	 * @return the valid connections as MeterReadings, in their order
+	 */
+	private List<MeterReading> validateAll(List<MonthlyReadings> connections, Map<String, Optional<Profile>> profiles,
+			List<MeterReadingStatus> result) {
+		Timer.Context timer = ingestMetrics.getValidation().time();
+		Function<MonthlyReadings, MeterReadingStatus> validation = readings -> createMeterReadingService
+				.validate(profiles.get(readings.getConnection().getProfileName()).get(), readings);
+		Stream<MonthlyReadings> stream = connections.size() < applicationProperties.getIngest().getValidationParallelThreshold()
+				? connections.stream() : connections.parallelStream();
+		List<MeterReadingStatus> failures = stream.map(validation).collect(toList());
+
+		List<MeterReading> meterReadings = new ArrayList<>(connections.size());
+		for (int i = 0; i < connections.size(); i++) {
+			if (null != failures.get(i)) {
+				result.add(failures.get(i));
+			} else {
+				meterReadings.add(createMeterReadingService.toMeterReading(connections.get(i)));
+			}
+		}
+		timer.stop();
+		return meterReadings;
+	}
+
+	private CompletableFuture<Void> persist(List<MeterReading> meterReadings, List<MeterReadingStatus> result) {
+		Timer.Context timer = ingestMetrics.getPersistence().time();
+		return allOf(Lists.partition(meterReadings, applicationProperties.getIngest().getWriteBatchSize()).stream()
+				.map(this::write)).thenAccept(batches -> {
+					batches.forEach(result::addAll);
+					timer.stop();
+				});
+	}
+
+	/**
+	 * Bulk upserts one batch, then moves the rollups from the replaced readings to the written ones. The connections
+	 * are locked until the rollups are incremented, the lock is released on the thread completing the batch.
+	 *
+	 * @param batch
+	 * @return the status of every meterReading of the batch
+	 */
+	private CompletableFuture<List<MeterReadingStatus>> write(List<MeterReading> batch) {
+		List<Connection> connections = batch.stream().map(MeterReading::getConnection).collect(toList());
+		ConsumptionRollupService.ConnectionLock lock = consumptionRollupService.lock(connections);
+		Timer.Context rollupTimer = ingestMetrics.getRollup().time();
+		return asyncIngestRepository.findMeterReadings(connections).thenCompose(previousReadings -> {
+			rollupTimer.stop();
+			Map<Connection, MeterReading> previous = new HashMap<>();
+			previousReadings.forEach(meterReading -> previous.put(meterReading.getConnection(), meterReading));
+
+			Timer.Context repositoryTimer = ingestMetrics.getMeterReadingRepositoryCalls().time();
+			return asyncIngestRepository.bulkUpsert(batch).thenCompose(failed -> {
+				repositoryTimer.stop();
+				List<MeterReadingStatus> statuses = new ArrayList<>(batch.size());
+				List<MeterReading> written = createMeterReadingService.reportWritten(batch, failed, statuses::add);
+				consumptionIndexService.put(written);
+				responseCacheService.invalidateMeterReadings(connections);
+				Collection<ConsumptionRollup> deltas = consumptionRollupService
+						.deltas(ConsumptionRollupService.replaced(previous, written), written);
+
+				// the meterReadings stay the reference, rollups that could not be updated can be rebuilt from them
+				Timer.Context incrementTimer = ingestMetrics.getRollup().time();
+				return asyncIngestRepository.incrementRollups(deltas).handle((updated, t) -> {
+					incrementTimer.stop();
+					if (null != t) {
+						log.error("Rollups of {} profile months could not be updated", deltas.size(), t);
+					}
+					return statuses;
+				});
+			});
+		}).whenComplete((statuses, t) -> lock.close());
+	}
+
+	/**
+	 * @param futures
+	 * @return completes with the results of all futures in their order, once all of them are done
+	 */
+	private static <T> CompletableFuture<List<T>> allOf(Stream<CompletableFuture<T>> futures) {
+		List<CompletableFuture<T>> all = futures.collect(toList());
+		return CompletableFuture.allOf(all.toArray(new CompletableFuture<?>[all.size()]))
+				.thenApply(done -> all.stream().map(CompletableFuture::join).collect(toList()));
+	}
+}
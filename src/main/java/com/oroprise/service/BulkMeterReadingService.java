@@ -0,0 +1,188 @@
+package com.oroprise.service;
+
+import static java.util.stream.Collectors.toList;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Year;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import com.google.common.collect.Lists;
+import com.oroprise.bo.Connection;
+import com.oroprise.bo.MeterReading;
+import com.oroprise.config.ApplicationProperties;
+import com.oroprise.repository.MeterReadingJournal;
+import com.oroprise.repository.MeterReadingRepository;
+import com.oroprise.vo.FetchedMeterReading;
+import com.oroprise.vo.MeterReadingStatus;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Fetches and deletes the meterReadings of many connections, or of a whole profile, in multi-key operations of
+ * writeBatchSize connections instead of one request per connection
+ *
+ */
+@Service
+@Slf4j
+public class BulkMeterReadingService {
+
+	@Autowired
+	private MeterReadingRepository meterReadingRepository;
+
+	@Autowired
+	private MeterReadingJournal meterReadingJournal;
+
+	@Autowired
+	private ConsumptionRollupService consumptionRollupService;
+
+	@Autowired
+	private ConsumptionIndexService consumptionIndexService;
+
+	@Autowired
+	private ResponseCacheService responseCacheService;
+
+	@Autowired
+	private ApplicationProperties applicationProperties;
+
+	/**
+	 *  Step1 : Read the stored meterReadings in $in chunks of writeBatchSize connections
+	 *  Step2 : Report a result per connection in request order, with the meterReading if it is stored
+	 *
+	 * @param connections the year of each defaults to the current year
+	 * @return
+	 */
+	public List<FetchedMeterReading> fetch(List<Connection> connections) {
+		List<FetchedMeterReading> result = new ArrayList<>(connections.size());
+		for (List<Connection> chunk : Lists.partition(withYears(connections), batchSize())) {
+			Map<Connection, MeterReading> stored = findAll(chunk);
+			for (Connection connection : chunk) {
+				MeterReading meterReading = stored.get(connection);
+				result.add(new FetchedMeterReading(connection.getProfileName(), connection.getConnectionId(), connection.getYear(),
+						null == meterReading ? MeterReadingStatus.NOT_FOUND : MeterReadingStatus.SUCCESS, meterReading));
+			}
+		}
+		return result;
+	}
+
+	/**
+	 *  Step1 : Drop the journaled meterReadings of the chunk of writeBatchSize connections, so they are not written later
+	 *  Step2 : Lock the chunk and read its stored meterReadings in a single $in query, their readings leave the rollups
+	 *  Step3 : Delete the stored ones of the chunk in a single $in delete, then release the lock
+	 *  Step4 : Report a status per connection in request order
+	 *
+	 * @param connections the year of each defaults to the current year
+	 * @return
+	 */
+	public List<MeterReadingStatus> delete(List<Connection> connections) {
+		List<MeterReadingStatus> statuses = new ArrayList<>(connections.size());
+		for (List<Connection> chunk : Lists.partition(withYears(connections), batchSize())) {
+			Set<Connection> journaled = removeJournaled(() -> meterReadingJournal.remove(chunk));
+			Map<Connection, MeterReading> stored = deleteStored(chunk);
+			for (Connection connection : chunk) {
+				boolean found = stored.containsKey(connection) || journaled.contains(connection);
+				statuses.add(new MeterReadingStatus(connection.getProfileName(), connection.getConnectionId(), connection.getYear(),
+						found ? MeterReadingStatus.SUCCESS : MeterReadingStatus.NOT_FOUND));
+			}
+		}
+		return statuses;
+	}
+
+	/**
+	 * Deletes every meterReading of a profile, a page of writeBatchSize in connection order at a time
+	 *
+	 * @param profileName
+	 * @param sink receives the status of every deleted meterReading
+	 * @return number of deleted meterReadings
+	 */
+	public long deleteProfile(String profileName, Consumer<MeterReadingStatus> sink) {
+		// journaled ones would be written after the delete otherwise
+		Set<Connection> journaled = removeJournaled(() -> meterReadingJournal.removeProfile(profileName));
+		for (Connection connection : journaled) {
+			sink.accept(new MeterReadingStatus(connection.getProfileName(), connection.getConnectionId(), connection.getYear(),
+					MeterReadingStatus.SUCCESS));
+		}
+		long deleted = journaled.size();
+		Connection after = null;
+		List<MeterReading> page;
+		while (!(page = meterReadingRepository.findPage(profileName, after, batchSize())).isEmpty()) {
+			deleteStored(Lists.transform(page, MeterReading::getConnection));
+			for (MeterReading meterReading : page) {
+				Connection connection = meterReading.getConnection();
+				// written meanwhile by the journal, already reported
+				if (journaled.contains(connection)) {
+					continue;
+				}
+				sink.accept(new MeterReadingStatus(connection.getProfileName(), connection.getConnectionId(), connection.getYear(),
+						MeterReadingStatus.SUCCESS));
+				deleted++;
+			}
+			after = page.get(page.size() - 1).getConnection();
+		}
+		log.debug("Deleted {} meterReadings of profile {}", deleted, profileName);
+		return deleted;
+	}
+
+	/**
+	 * Reads the stored meterReadings again under the lock of their connections, so their rollups are not moved by a
+	 * concurrent write in between
+	 *
+	 * @param connections
+	 * @return the deleted meterReadings, by connection
+	 */
+	private Map<Connection, MeterReading> deleteStored(List<Connection> connections) {
+		Map<Connection, MeterReading> stored;
+		try (ConsumptionRollupService.ConnectionLock lock = consumptionRollupService.lock(connections)) {
+			stored = findAll(connections);
+			if (stored.isEmpty()) {
+				return stored;
+			}
+			List<Connection> storedConnections = new ArrayList<>(stored.keySet());
+			long deleted = meterReadingRepository.bulkDelete(storedConnections);
+			if (deleted != storedConnections.size()) {
+				log.warn("{} of {} meterReadings deleted, the others were deleted meanwhile", deleted, storedConnections.size());
+			}
+			consumptionRollupService.update(stored.values(), Collections.emptyList());
+		}
+		stored.keySet().forEach(consumptionIndexService::remove);
+		responseCacheService.invalidateMeterReadings(stored.keySet());
+		return stored;
+	}
+
+	private interface JournalRemoval {
+		Set<Connection> remove() throws IOException;
+	}
+
+	private static Set<Connection> removeJournaled(JournalRemoval removal) {
+		try {
+			return removal.remove();
+		} catch (IOException e) {
+			throw new UncheckedIOException("The journaled meterReadings could not be dropped, nothing was deleted", e);
+		}
+	}
+
+	private Map<Connection, MeterReading> findAll(List<Connection> connections) {
+		Map<Connection, MeterReading> stored = new HashMap<>();
+		meterReadingRepository.findAll(connections).forEach(meterReading -> stored.put(meterReading.getConnection(), meterReading));
+		return stored;
+	}
+
+	private static List<Connection> withYears(List<Connection> connections) {
+		int currentYear = Year.now().getValue();
+		return connections.stream().map(connection -> null != connection.getYear() ? connection
+				: new Connection(connection.getProfileName(), connection.getConnectionId(), currentYear)).collect(toList());
+	}
+
+	private int batchSize() {
+		return applicationProperties.getIngest().getWriteBatchSize();
+	}
+}
@@ -0,0 +1,355 @@
+package com.oroprise.service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.util.CloseableIterator;
+import org.springframework.stereotype.Service;
+
+import com.oroprise.bo.Connection;
+import com.oroprise.bo.ConsumptionColumns;
+import com.oroprise.bo.ConsumptionRollup;
+import com.oroprise.bo.MeterReading;
+import com.oroprise.bo.MeterRecord;
+import com.oroprise.bo.Month;
+import com.oroprise.bo.MonthlyReadings;
+import com.oroprise.bo.Profile;
+import com.oroprise.bo.ProfileMonth;
+import com.oroprise.config.ApplicationProperties;
+import com.oroprise.repository.MeterReadingRepository;
+import com.oroprise.repository.ProfileRepository;
+import com.oroprise.vo.IndexedConsumptionVo;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Optional in-memory index of the readings of every connection, by profile and year in {@link ConsumptionColumns}.
+ * Filters, aggregates and rankings over the connections of a profile are scans of primitive arrays instead of loading
+ * every MeterReading. Maintained with the written and deleted meterReadings, loaded from the MeterReadingRepository
+ * in parallel once the application is ready, queries are refused until then. A connection deleted while the index
+ * loads may stay in it until the next restart.
+ *
+ */
+@Service
+@Slf4j
+public class ConsumptionIndexService {
+
+	private static final Month[] MONTHS = Month.values();
+
+	/** columns of every profile by year */
+	private final Map<String, Map<Integer, Segment>> profiles = new ConcurrentHashMap<>();
+
+	private volatile boolean ready;
+
+	@Autowired
+	private MeterReadingRepository meterReadingRepository;
+
+	@Autowired
+	private ProfileRepository profileRepository;
+
+	@Autowired
+	private ProfileCacheService profileCacheService;
+
+	@Autowired
+	private ApplicationProperties applicationProperties;
+
+	/**
+	 * Columns of a profile year with the lock guarding them, writers hold it only to update a row
+	 */
+	private static class Segment {
+		private final ReadWriteLock lock = new ReentrantReadWriteLock();
+		private final ConsumptionColumns columns = new ConsumptionColumns();
+	}
+
+	public boolean isEnabled() {
+		return applicationProperties.getConsumptionIndex().isEnabled();
+	}
+
+	/**
+	 * @return true once the stored meterReadings are loaded
+	 */
+	public boolean isReady() {
+		return ready;
+	}
+
+	/**
+	 * Loads the meterReadings of all profiles on a pool of loader-parallelism threads, a profile at a time per thread.
+	 * Connections written meanwhile are not overwritten by the loaded ones.
+	 */
+	@EventListener(ApplicationReadyEvent.class)
+	public void load() {
+		if (!isEnabled()) {
+			return;
+		}
+		long start = System.currentTimeMillis();
+		AtomicInteger threads = new AtomicInteger();
+		ExecutorService loaders = Executors.newFixedThreadPool(applicationProperties.getConsumptionIndex().getLoaderParallelism(),
+				runnable -> new Thread(runnable, "consumption-index-loader-" + threads.incrementAndGet()));
+		AtomicLong loaded = new AtomicLong();
+		List<CompletableFuture<Void>> profileLoads = new ArrayList<>();
+		for (Profile profile : profileRepository.findAll()) {
+			profileLoads.add(CompletableFuture.runAsync(() -> loaded.addAndGet(load(profile.getName())), loaders));
+		}
+		CompletableFuture.allOf(profileLoads.toArray(new CompletableFuture<?>[profileLoads.size()])).whenComplete((done, t) -> {
+			loaders.shutdown();
+			if (null != t) {
+				log.error("Consumption index could not be loaded, its queries stay unavailable", t);
+				return;
+			}
+			ready = true;
+			log.info("Loaded {} meterReadings of {} profiles into the consumption index in {} ms", loaded.get(),
+					profileLoads.size(), System.currentTimeMillis() - start);
+		});
+	}
+
+	private long load(String profileName) {
+		long loaded = 0;
+		try (CloseableIterator<MeterReading> meterReadings = meterReadingRepository.stream(profileName)) {
+			while (meterReadings.hasNext()) {
+				MeterReading meterReading = meterReadings.next();
+				Connection connection = meterReading.getConnection();
+				if (null == connection.getYear()) {
+					// not migrated to a year yet, see oroprise.storage.legacy-reading-year
+					continue;
+				}
+				Segment segment = segment(profileName, connection.getYear());
+				segment.lock.writeLock().lock();
+				try {
+					if (!segment.columns.contains(connection.getConnectionId())) {
+						segment.columns.put(connection.getConnectionId(), baseline(meterReading), readings(meterReading));
+						loaded++;
+					}
+				} finally {
+					segment.lock.writeLock().unlock();
+				}
+			}
+		}
+		return loaded;
+	}
+
+	/**
+	 * @param written meterReadings that were written, new or replacing stored ones
+	 */
+	public void put(Collection<MeterReading> written) {
+		if (!isEnabled()) {
+			return;
+		}
+		for (MeterReading meterReading : written) {
+			Connection connection = meterReading.getConnection();
+			Segment segment = segment(connection.getProfileName(), connection.getYear());
+			long baseline = baseline(meterReading);
+			long[] readings = readings(meterReading);
+			segment.lock.writeLock().lock();
+			try {
+				segment.columns.put(connection.getConnectionId(), baseline, readings);
+			} finally {
+				segment.lock.writeLock().unlock();
+			}
+		}
+	}
+
+	/**
+	 * @param connection connection of a deleted meterReading
+	 */
+	public void remove(Connection connection) {
+		if (!isEnabled()) {
+			return;
+		}
+		Map<Integer, Segment> years = profiles.get(connection.getProfileName());
+		Segment segment = null == years || null == connection.getYear() ? null : years.get(connection.getYear());
+		if (null == segment) {
+			return;
+		}
+		segment.lock.writeLock().lock();
+		try {
+			segment.columns.remove(connection.getConnectionId());
+		} finally {
+			segment.lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Connections of a profile by their consumption in a month or in the year, in connectionId order
+	 *
+	 * @param profileName
+	 * @param year
+	 * @param month the year if null
+	 * @param minConsumption lowest consumption included, optional
+	 * @param maxConsumption highest consumption included, optional
+	 * @param outOfRange only connections out of the range allowed by the profile fraction of the month, which is
+	 * required then
+	 * @param pageable
+	 * @return the page of connections, null if outOfRange is asked and the profile does not exist
+	 */
+	public List<IndexedConsumptionVo> filter(String profileName, int year, Month month, Long minConsumption, Long maxConsumption,
+			boolean outOfRange, Pageable pageable) {
+		double fraction = 0;
+		if (outOfRange) {
+			if (null == month) {
+				throw new IllegalArgumentException("outOfRange needs a month");
+			}
+			Profile profile = profileCacheService.get(profileName);
+			if (null == profile) {
+				return null;
+			}
+			fraction = profile.getFractionValues()[month.ordinal()];
+		}
+		double monthFraction = fraction;
+
+		List<IndexedConsumptionVo> matches = read(profileName, year, new ArrayList<>(), columns -> {
+			List<IndexedConsumptionVo> found = new ArrayList<>();
+			long[] consumptions = null == month ? columns.yearlyConsumptions() : columns.consumptions(month.ordinal());
+			long[] yearlyConsumptions = outOfRange ? columns.yearlyConsumptions() : null;
+			long min = null == minConsumption ? Long.MIN_VALUE : minConsumption;
+			long max = null == maxConsumption ? Long.MAX_VALUE : maxConsumption;
+			for (int i = 0; i < consumptions.length; i++) {
+				long consumption = consumptions[i];
+				if (consumption < min || consumption > max) {
+					continue;
+				}
+				if (!outOfRange) {
+					found.add(new IndexedConsumptionVo(columns.getConnectionId(i), year, month, consumption, null, null));
+					continue;
+				}
+				long allowedFrom = CreateMeterReadingService.allowedConsumptionFrom(monthFraction, yearlyConsumptions[i]);
+				long allowedTill = CreateMeterReadingService.allowedConsumptionTill(allowedFrom);
+				if (consumption < allowedFrom || consumption > allowedTill) {
+					found.add(new IndexedConsumptionVo(columns.getConnectionId(i), year, month, consumption, allowedFrom, allowedTill));
+				}
+			}
+			return found;
+		});
+
+		matches.sort(Comparator.comparing(IndexedConsumptionVo::getConnectionId));
+		int from = Math.min(pageable.getOffset(), matches.size());
+		return new ArrayList<>(matches.subList(from, Math.min(from + pageable.getPageSize(), matches.size())));
+	}
+
+	/**
+	 * @param profileName
+	 * @param year
+	 * @return exact rollups of every month of the profile in the year, computed from the indexed readings, empty if
+	 * there is no connection
+	 */
+	public List<ConsumptionRollup> aggregate(String profileName, int year) {
+		return read(profileName, year, new ArrayList<>(), columns -> {
+			List<ConsumptionRollup> rollups = new ArrayList<>(MONTHS.length);
+			if (columns.size() == 0) {
+				return rollups;
+			}
+			for (Month month : MONTHS) {
+				long[] consumptions = columns.consumptions(month.ordinal());
+				long total = 0;
+				long min = Long.MAX_VALUE;
+				long max = Long.MIN_VALUE;
+				for (long consumption : consumptions) {
+					total += consumption;
+					min = Math.min(min, consumption);
+					max = Math.max(max, consumption);
+				}
+				ConsumptionRollup rollup = new ConsumptionRollup(new ProfileMonth(profileName, year, month));
+				rollup.setTotalConsumption(total);
+				rollup.setConnections(consumptions.length);
+				rollup.setMinConsumption(min);
+				rollup.setMaxConsumption(max);
+				rollups.add(rollup);
+			}
+			return rollups;
+		});
+	}
+
+	/**
+	 * @param profileName
+	 * @param year
+	 * @param month the year if null
+	 * @param size number of connections
+	 * @param ascending lowest consumptions first, highest first otherwise
+	 * @return the connections of the profile with the highest, or lowest, consumption in the month or year
+	 */
+	public List<IndexedConsumptionVo> top(String profileName, int year, Month month, int size, boolean ascending) {
+		return read(profileName, year, new ArrayList<>(), columns -> {
+			long[] consumptions = null == month ? columns.yearlyConsumptions() : columns.consumptions(month.ordinal());
+			// worst rows first, ties are ranked by connectionId
+			Comparator<Integer> byConsumption = Comparator.comparingLong(row -> consumptions[row]);
+			Comparator<Integer> ranking = (ascending ? byConsumption.reversed() : byConsumption)
+					.thenComparing(columns::getConnectionId, Comparator.reverseOrder());
+
+			// keeps the best rows seen so far, the worst of them on top
+			PriorityQueue<Integer> best = new PriorityQueue<>(size + 1, ranking);
+			for (int i = 0; i < consumptions.length; i++) {
+				best.offer(i);
+				if (best.size() > size) {
+					best.poll();
+				}
+			}
+
+			List<IndexedConsumptionVo> result = new ArrayList<>(best.size());
+			while (!best.isEmpty()) {
+				int row = best.poll();
+				result.add(new IndexedConsumptionVo(columns.getConnectionId(row), year, month, consumptions[row], null, null));
+			}
+			Collections.reverse(result);
+			return result;
+		});
+	}
+
+	/**
+	 * Runs the query on the columns of the profile year under their read lock
+	 *
+	 * @param profileName
+	 * @param year
+	 * @param empty result if the profile has no connection in the year
+	 * @param query
+	 * @return
+	 */
+	private <T> T read(String profileName, int year, T empty, Function<ConsumptionColumns, T> query) {
+		if (!ready) {
+			throw new IllegalStateException("Consumption index is loading");
+		}
+		Map<Integer, Segment> years = profiles.get(profileName);
+		Segment segment = null == years ? null : years.get(year);
+		if (null == segment) {
+			return empty;
+		}
+		segment.lock.readLock().lock();
+		try {
+			return query.apply(segment.columns);
+		} finally {
+			segment.lock.readLock().unlock();
+		}
+	}
+
+	private Segment segment(String profileName, Integer year) {
+		return profiles.computeIfAbsent(profileName, name -> new ConcurrentHashMap<>()).computeIfAbsent(year, y -> new Segment());
+	}
+
+	private static long baseline(MeterReading meterReading) {
+		return null == meterReading.getBaseline() ? 0 : meterReading.getBaseline();
+	}
+
+	private static long[] readings(MeterReading meterReading) {
+		long[] readings = new long[MonthlyReadings.MONTHS];
+		for (MeterRecord meterRecord : meterReading.getMeterRecords()) {
+			readings[meterRecord.getMonth().ordinal()] = meterRecord.getReading();
+		}
+		return readings;
+	}
+}
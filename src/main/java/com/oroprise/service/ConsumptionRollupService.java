@@ -0,0 +1,249 @@
+package com.oroprise.service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.util.CloseableIterator;
+import org.springframework.stereotype.Service;
+
+import com.codahale.metrics.Timer;
+import com.google.common.util.concurrent.Striped;
+import com.oroprise.bo.Connection;
+import com.oroprise.bo.ConsumptionRollup;
+import com.oroprise.bo.MeterReading;
+import com.oroprise.bo.MeterRecord;
+import com.oroprise.bo.Month;
+import com.oroprise.bo.MonthlyReadings;
+import com.oroprise.bo.ProfileMonth;
+import com.oroprise.repository.ConsumptionRollupRepository;
+import com.oroprise.repository.MeterReadingRepository;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Keeps the ConsumptionRollups of every profile, year and month in step with the stored meterReadings.
+ * Rollups are updated with the consumption delta of each written or deleted connection, a re-uploaded connection
+ * first has its previous consumption taken out. minConsumption and maxConsumption can only widen incrementally,
+ * after connections are replaced or deleted they are exact again once the profile is rebuilt.
+ * Writes and deletes hold the {@link #lock(Collection)} of their connections from reading the previous meterReadings
+ * until the rollups are updated, so concurrent uploads of the same connection do not drift the totals. The locks only
+ * cover this instance, with several instances writing the same connections the profile needs a rebuild.
+ *
+ */
+@Service
+@Slf4j
+public class ConsumptionRollupService {
+
+	private static final Month[] MONTHS = Month.values();
+
+	private static final int LOCK_STRIPES = 1024;
+
+	private static final Comparator<ConsumptionRollup> MONTH_ORDER = Comparator
+			.comparing((ConsumptionRollup rollup) -> rollup.getId().getYear(), Comparator.nullsFirst(Comparator.<Integer>naturalOrder()))
+			.thenComparing(rollup -> rollup.getId().getMonth());
+
+	@Autowired
+	private ConsumptionRollupRepository consumptionRollupRepository;
+
+	@Autowired
+	private MeterReadingRepository meterReadingRepository;
+
+	@Autowired
+	private IngestMetrics ingestMetrics;
+
+	// semaphores rather than locks, the async ingest releases them on another thread
+	private final Striped<Semaphore> connectionLocks = Striped.semaphore(LOCK_STRIPES, 1);
+
+	/**
+	 * Blocks until no other write or delete holds any of the connections. The stripes are taken in a fixed order, so
+	 * callers cannot deadlock each other.
+	 * 
+	 * @param connections
+	 * @return the held lock, to be closed once the rollups are updated
+	 */
+	public ConnectionLock lock(Collection<Connection> connections) {
+		List<Semaphore> stripes = new ArrayList<>();
+		for (Semaphore stripe : connectionLocks.bulkGet(connections)) {
+			// connections sharing a stripe are next to each other
+			if (stripes.isEmpty() || stripes.get(stripes.size() - 1) != stripe) {
+				stripe.acquireUninterruptibly();
+				stripes.add(stripe);
+			}
+		}
+		return new ConnectionLock(stripes);
+	}
+
+	/**
+	 * @param meterReadings meterReadings about to be written
+	 * @return the stored meterReadings of the same connections, by connection
+	 */
+	public Map<Connection, MeterReading> findPrevious(List<MeterReading> meterReadings) {
+		List<Connection> connections = new ArrayList<>(meterReadings.size());
+		meterReadings.forEach(meterReading -> connections.add(meterReading.getConnection()));
+
+		Map<Connection, MeterReading> previous = new HashMap<>();
+		Timer.Context timer = ingestMetrics.getRollup().time();
+		try {
+			meterReadingRepository.findAll(connections).forEach(meterReading -> previous.put(meterReading.getConnection(), meterReading));
+		} finally {
+			timer.stop();
+		}
+		return previous;
+	}
+
+	/**
+	 * Moves the rollups from the removed to the added meterReadings. Failures are logged only, the meterReadings stay the
+	 * reference and the rollups of the profile can be rebuilt from them.
+	 * 
+	 * @param removed meterReadings that were replaced or deleted
+	 * @param added meterReadings that were written
+	 */
+	public void update(Collection<MeterReading> removed, Collection<MeterReading> added) {
+		Collection<ConsumptionRollup> deltas = deltas(removed, added);
+		if (deltas.isEmpty()) {
+			return;
+		}
+
+		Timer.Context timer = ingestMetrics.getRollup().time();
+		try {
+			consumptionRollupRepository.increment(deltas);
+		} catch (DataAccessException e) {
+			log.error("Rollups of {} profile months could not be updated", deltas.size(), e);
+		} finally {
+			timer.stop();
+		}
+	}
+
+	/**
+	 * @param removed meterReadings that were replaced or deleted
+	 * @param added meterReadings that were written
+	 * @return the increments of the rollups of every profile month touched
+	 */
+	public Collection<ConsumptionRollup> deltas(Collection<MeterReading> removed, Collection<MeterReading> added) {
+		Map<ProfileMonth, ConsumptionRollup> deltas = new HashMap<>();
+		removed.forEach(meterReading -> accumulate(deltas, meterReading, -1));
+		added.forEach(meterReading -> accumulate(deltas, meterReading, 1));
+		return deltas.values();
+	}
+
+	/**
+	 * @param previous stored meterReadings before the write, by connection
+	 * @param written meterReadings that were written
+	 * @return the previous meterReadings replaced by the written ones
+	 */
+	public static List<MeterReading> replaced(Map<Connection, MeterReading> previous, List<MeterReading> written) {
+		List<MeterReading> replaced = new ArrayList<>();
+		for (MeterReading meterReading : written) {
+			MeterReading replacedReading = previous.get(meterReading.getConnection());
+			if (null != replacedReading) {
+				replaced.add(replacedReading);
+			}
+		}
+		return replaced;
+	}
+
+	/**
+	 * @param profileName
+	 * @param year only rollups of this year, all years if null
+	 * @return the rollups of the profile in year and month order, months without any connection are left out
+	 */
+	public List<ConsumptionRollup> getRollups(String profileName, Integer year) {
+		List<ConsumptionRollup> rollups = consumptionRollupRepository.findByProfileName(profileName, year);
+		rollups.sort(MONTH_ORDER);
+		return rollups;
+	}
+
+	/**
+	 * @param profileName
+	 * @param year
+	 * @param month
+	 * @return the rollup, null if there is no connection for the profile in the year
+	 */
+	public ConsumptionRollup getRollup(String profileName, Integer year, Month month) {
+		return consumptionRollupRepository.findOne(new ProfileMonth(profileName, year, month));
+	}
+
+	/**
+	 * Recomputes the rollups of the profile in all years from its stored meterReadings. Connections written concurrently
+	 * may be counted twice or not at all, the rebuild does not take the connection locks.
+	 * 
+	 * @param profileName
+	 * @return the new rollups of the profile in month order
+	 */
+	public List<ConsumptionRollup> rebuild(String profileName) {
+		Map<ProfileMonth, ConsumptionRollup> rollups = new HashMap<>();
+		try (CloseableIterator<MeterReading> meterReadings = meterReadingRepository.stream(profileName)) {
+			meterReadings.forEachRemaining(meterReading -> accumulate(rollups, meterReading, 1));
+		}
+
+		consumptionRollupRepository.deleteByProfileName(profileName, null);
+		List<ConsumptionRollup> result = consumptionRollupRepository.save(rollups.values());
+		result.sort(MONTH_ORDER);
+		return result;
+	}
+
+	private void accumulate(Map<ProfileMonth, ConsumptionRollup> rollups, MeterReading meterReading, int sign) {
+		String profileName = meterReading.getConnection().getProfileName();
+		Integer year = meterReading.getConnection().getYear();
+		long[] consumptions = consumptions(meterReading);
+		for (int i = 0; i < MonthlyReadings.MONTHS; i++) {
+			long consumption = consumptions[i];
+			ConsumptionRollup rollup = rollups.computeIfAbsent(new ProfileMonth(profileName, year, MONTHS[i]), ConsumptionRollup::new);
+			rollup.setTotalConsumption(rollup.getTotalConsumption() + sign * consumption);
+			rollup.setConnections(rollup.getConnections() + sign);
+			if (sign > 0) {
+				rollup.setMinConsumption(null == rollup.getMinConsumption() ? consumption : Math.min(rollup.getMinConsumption(), consumption));
+				rollup.setMaxConsumption(null == rollup.getMaxConsumption() ? consumption : Math.max(rollup.getMaxConsumption(), consumption));
+			}
+		}
+	}
+
+	/**
+	 * Consumption of every month as the difference to the reading of the previous month, the reading before JAN being
+	 * the baseline
+	 * 
+	 * @param meterReading
+	 * @return consumptions indexed by {@link Month#ordinal()}
+	 */
+	static long[] consumptions(MeterReading meterReading) {
+		long[] readings = new long[MonthlyReadings.MONTHS];
+		for (MeterRecord meterRecord : meterReading.getMeterRecords()) {
+			readings[meterRecord.getMonth().ordinal()] = meterRecord.getReading();
+		}
+
+		long[] consumptions = new long[MonthlyReadings.MONTHS];
+		long prevReading = null == meterReading.getBaseline() ? 0 : meterReading.getBaseline();
+		for (int i = 0; i < MonthlyReadings.MONTHS; i++) {
+			consumptions[i] = readings[i] - prevReading;
+			prevReading = readings[i];
+		}
+		return consumptions;
+	}
+
+	/**
+	 * Stripes held by {@link ConsumptionRollupService#lock(Collection)}, may be closed on any thread
+	 *
+	 */
+	public static final class ConnectionLock implements AutoCloseable {
+
+		private final List<Semaphore> stripes;
+
+		private ConnectionLock(List<Semaphore> stripes) {
+			this.stripes = stripes;
+		}
+
+		@Override
+		public void close() {
+			for (int i = stripes.size() - 1; i >= 0; i--) {
+				stripes.get(i).release();
+			}
+		}
+	}
+}
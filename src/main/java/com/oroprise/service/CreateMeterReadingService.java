@@ -1,139 +1,663 @@
 package com.oroprise.service;
 
 import static java.util.stream.Collectors.groupingBy;
-import static java.util.stream.Collectors.mapping;
 import static java.util.stream.Collectors.toList;
 
+import java.io.IOException;
+import java.time.Year;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
-import com.google.common.collect.Ordering;
+import com.codahale.metrics.Timer;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ContiguousSet;
+import com.google.common.collect.DiscreteDomain;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Range;
+import com.google.common.collect.Sets;
 import com.oroprise.bo.Connection;
-import com.oroprise.bo.Fraction;
 import com.oroprise.bo.MeterReading;
 import com.oroprise.bo.MeterRecord;
 import com.oroprise.bo.Month;
+import com.oroprise.bo.MonthlyReadings;
 import com.oroprise.bo.Profile;
+import com.oroprise.config.ApplicationProperties;
+import com.oroprise.repository.MeterReadingJournal;
 import com.oroprise.repository.MeterReadingRepository;
-import com.oroprise.repository.ProfileRepository;
+import com.oroprise.service.IngestMetrics.Failure;
+import com.oroprise.vo.ConsumptionFailure;
 import com.oroprise.vo.MeterReadingStatus;
 import com.oroprise.vo.MeterReadingVo;
 
 import lombok.extern.slf4j.Slf4j;
 
 @Service
+@Slf4j
 public class CreateMeterReadingService {
 
+	private static final Month[] MONTHS = Month.values();
+
+	private static final Comparator<Connection> CONNECTION_ORDER = Comparator
+			.comparing(Connection::getConnectionId, Comparator.nullsFirst(Comparator.<String>naturalOrder()))
+			.thenComparing(Connection::getYear);
+
 	@Autowired
-	private ProfileRepository profileRepository;
+	private ProfileCacheService profileCacheService;
 
 	@Autowired
 	private MeterReadingRepository meterReadingRepository;
 
+	@Autowired
+	private ConsumptionRollupService consumptionRollupService;
+
+	@Autowired
+	private ConsumptionIndexService consumptionIndexService;
+
+	@Autowired
+	private ResponseCacheService responseCacheService;
+
+	@Autowired
+	private MeterReadingJournal meterReadingJournal;
+
+	@Autowired
+	private ApplicationProperties applicationProperties;
+
+	@Autowired
+	private ForkJoinPool meterReadingValidationPool;
+
+	@Autowired
+	private IngestMetrics ingestMetrics;
+
 	/**
 	 *  Takes list of MeterReadingVo
 	 *  Step1 : Group the MeterReadingVos by profileNames
-	 *  Step2 : Validate profile names and add invalid data to error list
-	 *  Step3 : Group the MeterReadingVos by profileName->connectionId
-	 *  Step4 : Order the MeterReadings by Month
+	 *  Step2 : Load all referenced profiles in bulk, validate profile names and add invalid data to error list
+	 *  Step3 : Group the MeterReadingVos by profileName->connectionId->year
+	 *  Step4 : Index the MeterReadings by Month, starting from the DEC reading of the previous year as baseline,
+	 *          report connections with unchanged readings and baseline
 	 *  Step5 : Validate MeterReadings, greater than previous month
 	 *  Step6 : Validate Consumption data, add failed data to error list
 	 *  Step7 : Build MeterReadingVos of distinct connection to MeterReading POJO
-	 *  Step8 : Persist Data that had passes all validations
-	 *  
-	 *  Returns List<MeterReadingStatus> having all connections and status (SUCCESS/FAILURE) 
-	 * 
+	 *  Step8 : Persist Data that had passes all validations, in unordered bulk upserts of writeBatchSize,
+	 *          and update the ConsumptionRollups of their profiles, or append them to the journal if it is enabled
+	 *
+	 *  Returns List<MeterReadingStatus> having all connections and status (SUCCESS/UNCHANGED/FAILURE)
+	 *
 	 * @param meterReadingVos
 	 * @return
 	 */
 	public List<MeterReadingStatus> execute(List<MeterReadingVo> meterReadingVos) {
 		List<MeterReadingStatus> result = new ArrayList<>();
+		execute(meterReadingVos, result::add);
+		return result;
+	}
+
+	/**
+	 * Same as {@link #execute(List)}, handing over every MeterReadingStatus as soon as it is decided,
+	 * successes once their write batch is persisted
+	 *
+	 * @param meterReadingVos
+	 * @param sink
+	 */
+	public void execute(List<MeterReadingVo> meterReadingVos, Consumer<MeterReadingStatus> sink) {
+		Timer.Context requestTimer = ingestMetrics.getRequest().time();
+		try {
+			ingestMetrics.getRows().mark(meterReadingVos.size());
+
+			// Step1 : group by profilename, sorted so the result order does not depend on the thread scheduling
+			long start = System.nanoTime();
+			Map<String, List<MeterReadingVo>> profileGroup = meterReadingVos.parallelStream()
+					.collect(groupingBy(MeterReadingVo::getProfileName, TreeMap::new, toList()));
+			long groupingNanos = System.nanoTime() - start;
+
+			// Step2 : fetch every referenced profile upfront, the ones not cached yet are loaded in bulk
+			Map<String, Optional<Profile>> profiles;
+			Timer.Context stageTimer = ingestMetrics.getProfileLookup().time();
+			try {
+				profiles = profileCacheService.getAll(profileGroup.keySet());
+			} finally {
+				stageTimer.stop();
+			}
+			IngestSession session = new IngestSession(sink, profiles);
+
+			start = System.nanoTime();
+			List<MonthlyReadings> connections = groupConnections(profileGroup, profiles, sink);
+			ingestMetrics.getGrouping().update(groupingNanos + System.nanoTime() - start, TimeUnit.NANOSECONDS);
+			ingestMetrics.getConnections().mark(connections.size());
+
+			// Step4 : baselines of all connections upfront, so the validation does not touch the database
+			loadBaselines(connections, Collections.emptyMap());
 
-		// Step1 : group by profilename
-		Map<String, List<MeterReadingVo>> profileGroup = meterReadingVos.parallelStream()
-				.collect(groupingBy(MeterReadingVo::getProfileName, toList()));
+			// Step4 : resent connections are done, unless the previous year changed meanwhile
+			connections = skipUnchanged(connections, sink);
 
+			// Step4 to Step6 : connections are independent, validate them in parallel
+			List<MeterReadingStatus> failures;
+			stageTimer = ingestMetrics.getValidation().time();
+			try {
+				failures = validateAll(connections, profiles);
+			} finally {
+				stageTimer.stop();
+			}
+
+			// Step7 & Step8 : build and queue the valid connections, in their sorted order
+			stageTimer = ingestMetrics.getPersistence().time();
+			try {
+				for (int i = 0; i < connections.size(); i++) {
+					session.submit(connections.get(i), failures.get(i));
+				}
+				session.close();
+			} finally {
+				stageTimer.stop();
+			}
+		} finally {
+			requestTimer.stop();
+		}
+	}
+
+	/**
+	 * Step2 & Step3 : reports the profiles that do not exist, groups the readings of the others by connection and year
+	 *
+	 * @param profileGroup MeterReadingVos by profileName
+	 * @param profiles all profiles of profileGroup
+	 * @param sink
+	 * @return the connections in profile and connection order
+	 */
+	List<MonthlyReadings> groupConnections(Map<String, List<MeterReadingVo>> profileGroup,
+			Map<String, Optional<Profile>> profiles, Consumer<MeterReadingStatus> sink) {
+		List<MonthlyReadings> connections = new ArrayList<>();
+		int currentYear = Year.now().getValue();
 		for (Entry<String, List<MeterReadingVo>> e : profileGroup.entrySet()) {
 			String profileName = e.getKey();
 			// Step2 : validate profile existence
-			Profile profile = profileRepository.findOne(profileName);
-			if (null == profile) {
+			if (!profiles.get(profileName).isPresent()) {
 				// profile NOTFOUND error response added
-				result.add(new MeterReadingStatus(profileName, null, "FAILURE, Profile NOT FOUND"));
+				ingestMetrics.failed(Failure.PROFILE_NOT_FOUND);
+				sink.accept(new MeterReadingStatus(profileName, null, null, "FAILURE, Profile NOT FOUND"));
 				continue;
 			}
 
-			// Step3 : group by ConnectionId
-			Map<String, List<MeterReadingVo>> connectionGroup = e.getValue().stream()
-					.collect(groupingBy(MeterReadingVo::getConnectionId, toList()));
-			for (Entry<String, List<MeterReadingVo>> c : connectionGroup.entrySet()) {
-				String connectionId = c.getKey();
-				// validate whether 12 readings are present
-				if(c.getValue().size() != 12) {
-					// connection readings invalid order error response added
-					result.add(new MeterReadingStatus(profileName, connectionId,
-							"FAILURE, Readings Insufficient ie., not all months data found"));
-					continue;
-				}
-				
-				// Step4 : Order the MeterReadings by Month
-				List<Long> cReadings = c.getValue().stream().sorted(MeterReadingVo.METER_MONTH_COMPARATOR)
-						.collect(mapping(MeterReadingVo::getReading, toList()));
-				boolean isReadingsAsc = Ordering.natural().isOrdered(cReadings);
-				// Step5 : validate reading value greater than previous one
-				if (!isReadingsAsc) {
-					// connection readings invalid order error response added
-					result.add(new MeterReadingStatus(profileName, connectionId,
-							"FAILURE, Readings Invalid ie., not in ascending Order"));
-					continue;
-				}
+			// Step3 : group by ConnectionId and year into a primitive reading vector per connection year
+			Map<Connection, MonthlyReadings> connectionGroup = new TreeMap<>(CONNECTION_ORDER);
+			for (MeterReadingVo vo : e.getValue()) {
+				connectionGroup
+						.computeIfAbsent(new Connection(profileName, vo.getConnectionId(), vo.getYear(currentYear)), MonthlyReadings::new)
+						.set(vo.getMonth(), vo.getReading());
+			}
+			connections.addAll(connectionGroup.values());
+		}
+		return connections;
+	}
+
+	/**
+	 * Reports the complete connections whose readings have the fingerprint of the stored or journaled ones as UNCHANGED.
+	 * The stored fingerprints are looked up in $in chunks of writeBatchSize. Their baselines have to be loaded first,
+	 * they are part of the fingerprint.
+	 *
+	 * @param connections
+	 * @param sink
+	 * @return the other connections, in their order
+	 */
+	private List<MonthlyReadings> skipUnchanged(List<MonthlyReadings> connections, Consumer<MeterReadingStatus> sink) {
+		if (!applicationProperties.getIngest().isSkipUnchanged()) {
+			return connections;
+		}
+
+		List<MonthlyReadings> changed = new ArrayList<>(connections.size());
+		Timer.Context timer = ingestMetrics.getFingerprintLookup().time();
+		try {
+			for (List<MonthlyReadings> chunk : Lists.partition(connections, applicationProperties.getIngest().getWriteBatchSize())) {
+				changed.addAll(skipUnchanged(chunk, findFingerprints(completeConnections(chunk)), sink));
+			}
+		} finally {
+			timer.stop();
+		}
+		return changed;
+	}
+
+	/**
+	 * @param connections
+	 * @return fingerprint by connection, the journaled ones replacing the stored ones
+	 */
+	private Map<Connection, Long> findFingerprints(List<Connection> connections) {
+		Map<Connection, Long> fingerprints = meterReadingRepository.findFingerprints(connections);
+		Map<Connection, MeterReading> journaled = meterReadingJournal.findPending(connections);
+		if (journaled.isEmpty()) {
+			return fingerprints;
+		}
+		fingerprints = new HashMap<>(fingerprints);
+		for (MeterReading meterReading : journaled.values()) {
+			fingerprints.put(meterReading.getConnection(), meterReading.getFingerprint());
+		}
+		return fingerprints;
+	}
+
+	/**
+	 * @param connections
+	 * @return the connections holding all 12 readings, the only ones that can be unchanged
+	 */
+	static List<Connection> completeConnections(List<MonthlyReadings> connections) {
+		List<Connection> complete = new ArrayList<>(connections.size());
+		connections.stream().filter(MonthlyReadings::isComplete).forEach(readings -> complete.add(readings.getConnection()));
+		return complete;
+	}
+
+	/**
+	 * @param connections with their baselines
+	 * @param fingerprints stored fingerprints of the complete connections
+	 * @param sink receives the UNCHANGED status of the resent connections
+	 * @return the other connections, in their order
+	 */
+	List<MonthlyReadings> skipUnchanged(List<MonthlyReadings> connections, Map<Connection, Long> fingerprints,
+			Consumer<MeterReadingStatus> sink) {
+		List<MonthlyReadings> changed = new ArrayList<>(connections.size());
+		for (MonthlyReadings readings : connections) {
+			Connection connection = readings.getConnection();
+			Long fingerprint = fingerprints.get(connection);
+			if (null != fingerprint && readings.isComplete() && fingerprint == readings.fingerprint()) {
+				ingestMetrics.getUnchanged().mark();
+				sink.accept(new MeterReadingStatus(connection.getProfileName(), connection.getConnectionId(),
+						connection.getYear(), MeterReadingStatus.UNCHANGED));
+			} else {
+				changed.add(readings);
+			}
+		}
+		return changed;
+	}
+
+	/**
+	 * Sets the DEC reading of the previous year of every connection as its baseline. The previous year is taken from
+	 * the connections themselves if they hold it, otherwise from the validated meterReadings not written yet, or from
+	 * the journaled or stored meterReadings, the stored ones looked up in $in chunks of writeBatchSize.
+	 *
+	 * @param connections
+	 * @param unwritten validated meterReadings waiting for their write batch, by connection
+	 */
+	private void loadBaselines(List<MonthlyReadings> connections, Map<Connection, MeterReading> unwritten) {
+		Map<Connection, MonthlyReadings> byPreviousYear = uploadedBaselines(connections);
+		Set<Connection> lookup = new HashSet<>(byPreviousYear.keySet());
+		for (Connection previousYear : byPreviousYear.keySet()) {
+			MeterReading previous = unwritten.get(previousYear);
+			if (null != previous) {
+				byPreviousYear.get(previousYear).setBaseline(MeterReading.decemberReading(previous.getMeterRecords()));
+				lookup.remove(previousYear);
+			}
+		}
+
+		Timer.Context timer = ingestMetrics.getBaselineLookup().time();
+		try {
+			Map<Connection, MeterReading> journaled = meterReadingJournal.findPending(lookup);
+			storedBaselines(byPreviousYear, journaled.values());
+			for (List<Connection> chunk : Iterables.partition(Sets.difference(lookup, journaled.keySet()),
+					applicationProperties.getIngest().getWriteBatchSize())) {
+				storedBaselines(byPreviousYear, meterReadingRepository.findAll(chunk));
+			}
+		} finally {
+			timer.stop();
+		}
+	}
 
-				Fraction[] fractions = profile.getFractions().toArray(new Fraction[profile.getFractions().size()]);
-				// Step 6 & Step7 : build MeterReading POJO, TODO validate consumption
-				MeterReading meterReading = new MeterReading();
-				meterReading.setConnection(new Connection(profileName, connectionId));
-				Month[] months = Month.values();
-				List<MeterRecord> meterRecords = new ArrayList<>();
-				// starting reading
-				long prevReading = 0;
-				// reading in DEC month, considering starting reading in each year would be 0
-				long thisYearConsumption = cReadings.get(11);
-				boolean isConsumptionDataValid = true;
-				for (int i = 0; i < 12; i++) {
-					long thisMonthReading = cReadings.get(i);
-					long consumption = thisMonthReading - prevReading;
-					double fraction = fractions[i].getValue();
-					long allowedConsumptionFrom = (long) (fraction * thisYearConsumption);
-					long allowedConsumptionTill = allowedConsumptionFrom + (long) (allowedConsumptionFrom * 0.25);
-					
-					if(consumption > allowedConsumptionTill || consumption < allowedConsumptionFrom) {
-						result.add(new MeterReadingStatus(profileName, connectionId,
-								String.format("consumption: %d, allowedConsumption: %d to %d, ie., AllowedMeterReadingRange for %s: %d to %d, totalyearconsumption: %d", consumption, allowedConsumptionFrom, allowedConsumptionTill, months[i], prevReading+allowedConsumptionFrom, prevReading+allowedConsumptionTill , thisYearConsumption)));
-						isConsumptionDataValid = false;
-						break;
-					}
-
-					MeterRecord record = new MeterRecord(months[i], thisMonthReading);
-					meterRecords.add(record);
-					prevReading = thisMonthReading;
+	/**
+	 * Sets the baselines the connections hold themselves
+	 *
+	 * @param connections
+	 * @return the other connections, by the connection of their previous year
+	 */
+	static Map<Connection, MonthlyReadings> uploadedBaselines(List<MonthlyReadings> connections) {
+		Map<Connection, MonthlyReadings> byConnection = new HashMap<>();
+		connections.forEach(readings -> byConnection.put(readings.getConnection(), readings));
+
+		Map<Connection, MonthlyReadings> byPreviousYear = new HashMap<>();
+		for (MonthlyReadings readings : connections) {
+			Connection connection = readings.getConnection();
+			Connection previousYear = new Connection(connection.getProfileName(), connection.getConnectionId(),
+					connection.getYear() - 1);
+			MonthlyReadings uploaded = byConnection.get(previousYear);
+			if (null != uploaded) {
+				readings.setBaseline(uploaded.get(MonthlyReadings.MONTHS - 1));
+			} else {
+				byPreviousYear.put(previousYear, readings);
+			}
+		}
+		return byPreviousYear;
+	}
+
+	/**
+	 * @param byPreviousYear connections by the connection of their previous year
+	 * @param previousYears stored meterReadings of some of the previous years
+	 */
+	static void storedBaselines(Map<Connection, MonthlyReadings> byPreviousYear, Iterable<MeterReading> previousYears) {
+		for (MeterReading previous : previousYears) {
+			byPreviousYear.get(previous.getConnection()).setBaseline(MeterReading.decemberReading(previous.getMeterRecords()));
+		}
+	}
+
+	/**
+	 * Validates the connections on the meterReadingValidationPool once there are enough of them to pay off
+	 *
+	 * @param connections
+	 * @param profiles all profiles of the connections
+	 * @return the failure status of every connection, null for the valid ones, in the order of connections
+	 */
+	private List<MeterReadingStatus> validateAll(List<MonthlyReadings> connections, Map<String, Optional<Profile>> profiles) {
+		Function<MonthlyReadings, MeterReadingStatus> validation = readings -> validate(
+				profiles.get(readings.getConnection().getProfileName()).get(), readings);
+
+		if (connections.size() < applicationProperties.getIngest().getValidationParallelThreshold()) {
+			return connections.stream().map(validation).collect(toList());
+		}
+
+		// the parallel stream runs on the pool it is submitted from
+		try {
+			return meterReadingValidationPool.submit(() -> connections.parallelStream().map(validation).collect(toList()))
+					.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while validating meterReadings", e);
+		} catch (ExecutionException e) {
+			Throwables.throwIfUnchecked(e.getCause());
+			throw new IllegalStateException(e.getCause());
+		}
+	}
+
+	/**
+	 * Opens an IngestSession for callers that hand over the readings one connection at a time, eg., while streaming
+	 * the upload. Profiles are looked up lazily and kept for the lifetime of the session.
+	 *
+	 * @param sink receives the status of every submitted connection, in the order they are decided
+	 * @return
+	 */
+	public IngestSession openSession(Consumer<MeterReadingStatus> sink) {
+		return new IngestSession(sink, new HashMap<>());
+	}
+
+	/**
+	 * Validates and persists the readings of single connections (Step4 to Step8 of {@link CreateMeterReadingService#execute(List)}),
+	 * buffering them until a batch is full, so the baselines are looked up and the valid ones written per batch.
+	 * Not thread safe, close it to process the last batch.
+	 *
+	 */
+	public class IngestSession implements AutoCloseable {
+		private final Consumer<MeterReadingStatus> sink;
+		private final Map<String, Optional<Profile>> profiles;
+		private final List<MonthlyReadings> pendingValidation = new ArrayList<>();
+		private final List<MeterReading> pendingWrites = new ArrayList<>();
+		/** pendingWrites by connection, the baselines of the next years of the session */
+		private final Map<Connection, MeterReading> unwritten = new HashMap<>();
+
+		private IngestSession(Consumer<MeterReadingStatus> sink, Map<String, Optional<Profile>> profiles) {
+			this.sink = sink;
+			this.profiles = profiles;
+		}
+
+		private Profile getProfile(String profileName) {
+			if (null == profileName) {
+				return null;
+			}
+			return profiles.computeIfAbsent(profileName, name -> Optional.ofNullable(profileCacheService.get(name)))
+					.orElse(null);
+		}
+
+		/**
+		 * Queues the readings of one connection year for validation, the status is reported to the sink once decided
+		 *
+		 * @param readings all readings of the connection in the year
+		 */
+		public void submit(MonthlyReadings readings) {
+			ingestMetrics.getConnections().mark();
+			Connection connection = readings.getConnection();
+			if (null == getProfile(connection.getProfileName())) {
+				ingestMetrics.failed(Failure.PROFILE_NOT_FOUND);
+				sink.accept(new MeterReadingStatus(connection.getProfileName(), connection.getConnectionId(),
+						connection.getYear(), "FAILURE, Profile NOT FOUND"));
+				return;
+			}
+
+			pendingValidation.add(readings);
+			if (pendingValidation.size() >= applicationProperties.getIngest().getWriteBatchSize()) {
+				validatePending();
+			}
+		}
+
+		private void validatePending() {
+			loadBaselines(pendingValidation, unwritten);
+			List<MonthlyReadings> changed = skipUnchanged(pendingValidation, sink);
+			for (MonthlyReadings readings : changed) {
+				submit(readings, validate(getProfile(readings.getConnection().getProfileName()), readings));
+			}
+			pendingValidation.clear();
+		}
+
+		private void submit(MonthlyReadings readings, MeterReadingStatus failure) {
+			if (null != failure) {
+				sink.accept(failure);
+				return;
+			}
+
+			// Step8 : queue readings, saved once a full batch is gathered
+			MeterReading meterReading = toMeterReading(readings);
+			pendingWrites.add(meterReading);
+			unwritten.put(meterReading.getConnection(), meterReading);
+			if (pendingWrites.size() >= applicationProperties.getIngest().getWriteBatchSize()) {
+				flush();
+			}
+		}
+
+		/**
+		 * Writes the pending meterReadings, see {@link CreateMeterReadingService#write(List)}, and reports a status for
+		 * each of them. With the journal enabled they are appended to it instead, and reported once synced.
+		 */
+		public void flush() {
+			if (pendingWrites.isEmpty()) {
+				return;
+			}
+			if (meterReadingJournal.isEnabled()) {
+				Set<Integer> failed = Collections.emptySet();
+				Timer.Context journalTimer = ingestMetrics.getJournalAppends().time();
+				try {
+					meterReadingJournal.append(pendingWrites);
+				} catch (IOException e) {
+					log.error("{} meterReadings could not be journaled", pendingWrites.size(), e);
+					failed = ContiguousSet.create(Range.closedOpen(0, pendingWrites.size()), DiscreteDomain.integers());
+				} finally {
+					journalTimer.stop();
 				}
-				meterReading.setMeterRecords(meterRecords);
-				
-				if(!isConsumptionDataValid) {
-					continue;
+				reportWritten(pendingWrites, failed, sink);
+			} else {
+				reportWritten(pendingWrites, write(pendingWrites), sink);
+			}
+			pendingWrites.clear();
+			unwritten.clear();
+		}
+
+		@Override
+		public void close() {
+			validatePending();
+			flush();
+		}
+	}
+
+	/**
+	 * Bulk upserts the meterReadings, moves the rollups from the replaced readings to the written ones, indexes them
+	 * and invalidates their cached responses. The connections are locked until their rollups are updated.
+	 *
+	 * @param meterReadings
+	 * @return indexes (in meterReadings) of the ones that could not be written
+	 */
+	Set<Integer> write(List<MeterReading> meterReadings) {
+		List<MeterReading> written = new ArrayList<>(meterReadings.size());
+		Set<Integer> failed;
+		try (ConsumptionRollupService.ConnectionLock lock = consumptionRollupService
+				.lock(Lists.transform(meterReadings, MeterReading::getConnection))) {
+			Map<Connection, MeterReading> previous = consumptionRollupService.findPrevious(meterReadings);
+
+			Timer.Context repositoryTimer = ingestMetrics.getMeterReadingRepositoryCalls().time();
+			try {
+				failed = meterReadingRepository.bulkUpsert(meterReadings);
+			} finally {
+				repositoryTimer.stop();
+			}
+
+			for (int i = 0; i < meterReadings.size(); i++) {
+				if (!failed.contains(i)) {
+					written.add(meterReadings.get(i));
 				}
+			}
+			consumptionRollupService.update(ConsumptionRollupService.replaced(previous, written), written);
+		}
+		consumptionIndexService.put(written);
+		responseCacheService.invalidateMeterReadings(Lists.transform(meterReadings, MeterReading::getConnection));
+		return failed;
+	}
 
-				// Step8 : save readings
-				meterReadingRepository.save(meterReading);
-				result.add(new MeterReadingStatus(profileName, connectionId, "SUCCESS"));
+	/**
+	 * Reports the status of every meterReading of a bulk upsert
+	 *
+	 * @param meterReadings
+	 * @param failed indexes of the meterReadings that could not be written
+	 * @param sink
+	 * @return the written meterReadings
+	 */
+	List<MeterReading> reportWritten(List<MeterReading> meterReadings, Set<Integer> failed, Consumer<MeterReadingStatus> sink) {
+		ingestMetrics.getSuccesses().mark(meterReadings.size() - failed.size());
+		List<MeterReading> written = new ArrayList<>(meterReadings.size());
+		for (int i = 0; i < meterReadings.size(); i++) {
+			MeterReading meterReading = meterReadings.get(i);
+			Connection connection = meterReading.getConnection();
+			String status = MeterReadingStatus.SUCCESS;
+			if (failed.contains(i)) {
+				ingestMetrics.failed(Failure.PERSISTENCE_FAILED);
+				status = "FAILURE, Readings could not be persisted";
+			} else {
+				written.add(meterReading);
 			}
+			sink.accept(new MeterReadingStatus(connection.getProfileName(), connection.getConnectionId(),
+					connection.getYear(), status));
 		}
-		
-		return result;
+		return written;
+	}
+
+	/**
+	 * Step4 to Step6 for the readings of a single connection, working on the primitive reading and fraction vectors.
+	 * Free of side effects so connections can be validated concurrently. With full diagnostics all months are checked
+	 * and every one out of range is listed in the consumptionFailures of the status.
+	 *
+	 * @param profile
+	 * @param readings
+	 * @return the failure status, or null if the readings are valid
+	 */
+	MeterReadingStatus validate(Profile profile, MonthlyReadings readings) {
+		String profileName = profile.getName();
+		String connectionId = readings.getConnection().getConnectionId();
+		Integer year = readings.getConnection().getYear();
+		// validate whether 12 readings are present
+		if(!readings.isComplete()) {
+			// connection readings invalid order error response added
+			ingestMetrics.failed(Failure.INSUFFICIENT_READINGS);
+			return new MeterReadingStatus(profileName, connectionId, year,
+					"FAILURE, Readings Insufficient ie., not all months data found");
+		}
+
+		// Step4 & Step5 : readings are indexed by month, validate reading value greater than previous one
+		if (!readings.isAscending()) {
+			// connection readings invalid order error response added
+			ingestMetrics.failed(Failure.INVALID_ORDER);
+			return new MeterReadingStatus(profileName, connectionId, year,
+					"FAILURE, Readings Invalid ie., not in ascending Order");
+		}
+
+		double[] fractions = profile.getFractionValues();
+		// Step6 : validate consumption of every month against the profile fraction
+		boolean fullDiagnostics = applicationProperties.getIngest().isFullDiagnostics();
+		List<ConsumptionFailure> consumptionFailures = null;
+		long start = System.nanoTime();
+		// starting reading, carried over from DEC of the previous year
+		long prevReading = readings.getBaseline();
+		// reading in DEC month, counting on from the starting reading
+		long thisYearConsumption = readings.get(MonthlyReadings.MONTHS - 1) - prevReading;
+		for (int i = 0; i < MonthlyReadings.MONTHS; i++) {
+			long thisMonthReading = readings.get(i);
+			long consumption = thisMonthReading - prevReading;
+			long allowedConsumptionFrom = allowedConsumptionFrom(fractions[i], thisYearConsumption);
+			long allowedConsumptionTill = allowedConsumptionTill(allowedConsumptionFrom);
+
+			if (fullDiagnostics && (consumption > allowedConsumptionTill || consumption < allowedConsumptionFrom)) {
+				// carry on with the next months, the failures are kept as numbers
+				if (null == consumptionFailures) {
+					consumptionFailures = new ArrayList<>(MonthlyReadings.MONTHS);
+				}
+				consumptionFailures.add(new ConsumptionFailure(MONTHS[i], consumption, allowedConsumptionFrom, allowedConsumptionTill));
+			} else if(consumption > allowedConsumptionTill || consumption < allowedConsumptionFrom) {
+				ingestMetrics.getConsumptionCheckNanos().inc(System.nanoTime() - start);
+				ingestMetrics.failed(Failure.CONSUMPTION_OUT_OF_RANGE);
+				return new MeterReadingStatus(profileName, connectionId, year,
+						String.format("consumption: %d, allowedConsumption: %d to %d, ie., AllowedMeterReadingRange for %s: %d to %d, totalyearconsumption: %d", consumption, allowedConsumptionFrom, allowedConsumptionTill, MONTHS[i], prevReading+allowedConsumptionFrom, prevReading+allowedConsumptionTill , thisYearConsumption));
+			}
+			prevReading = thisMonthReading;
+		}
+		ingestMetrics.getConsumptionCheckNanos().inc(System.nanoTime() - start);
+
+		if (null != consumptionFailures) {
+			ingestMetrics.failed(Failure.CONSUMPTION_OUT_OF_RANGE);
+			return new MeterReadingStatus(profileName, connectionId, year, MeterReadingStatus.CONSUMPTION_OUT_OF_RANGE,
+					consumptionFailures);
+		}
+		return null;
+	}
+
+	/**
+	 * @param fraction profile fraction of the month
+	 * @param yearConsumption consumption of the connection in the year
+	 * @return lowest consumption allowed in the month
+	 */
+	static long allowedConsumptionFrom(double fraction, long yearConsumption) {
+		return (long) (fraction * yearConsumption);
+	}
+
+	/**
+	 * @param allowedConsumptionFrom
+	 * @return highest consumption allowed in the month, 25% above the lowest one
+	 */
+	static long allowedConsumptionTill(long allowedConsumptionFrom) {
+		return allowedConsumptionFrom + (long) (allowedConsumptionFrom * 0.25);
+	}
+
+	/**
+	 * Step7 : build MeterReading POJO
+	 *
+	 * @param readings validated readings
+	 * @return
+	 */
+	MeterReading toMeterReading(MonthlyReadings readings) {
+		MeterReading meterReading = new MeterReading();
+		meterReading.setConnection(readings.getConnection());
+		List<MeterRecord> meterRecords = new ArrayList<>(MonthlyReadings.MONTHS);
+		for (int i = 0; i < MonthlyReadings.MONTHS; i++) {
+			meterRecords.add(new MeterRecord(MONTHS[i], readings.get(i)));
+		}
+		meterReading.setMeterRecords(meterRecords);
+		meterReading.setBaseline(readings.getBaseline());
+		meterReading.setYearlyConsumption(readings.get(MonthlyReadings.MONTHS - 1) - readings.getBaseline());
+		meterReading.setFingerprint(readings.fingerprint());
+
+		return meterReading;
 	}
 }
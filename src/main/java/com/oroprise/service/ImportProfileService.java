@@ -0,0 +1,112 @@
+package com.oroprise.service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import com.google.common.collect.Lists;
+import com.oroprise.bo.Fraction;
+import com.oroprise.bo.Month;
+import com.oroprise.bo.Profile;
+import com.oroprise.config.ApplicationProperties;
+import com.oroprise.repository.ProfileRepository;
+import com.oroprise.vo.ProfileStatus;
+import com.oroprise.vo.ProfileVo;
+
+import lombok.extern.slf4j.Slf4j;
+
+@Service
+@Slf4j
+public class ImportProfileService {
+
+	@Autowired
+	private ProfileRepository profileRepository;
+
+	@Autowired
+	private ProfileCacheService profileCacheService;
+
+	@Autowired
+	private ResponseCacheService responseCacheService;
+
+	@Autowired
+	private ApplicationProperties applicationProperties;
+
+	/**
+	 *  Takes list of ProfileVo
+	 *  Step1 : Group the ProfileVos by name while parsing month and fraction, add profiles with an unparsable row to error list
+	 *  Step2 : Build every profile, add the ones whose fractions do not total 1 to error list
+	 *  Step3 : Persist the valid profiles in unordered bulk upserts of writeBatchSize, refresh them in the profile cache
+	 *
+	 *  Returns List<ProfileStatus> having all profiles and status (SUCCESS/FAILURE)
+	 *
+	 * @param profileVos
+	 * @return
+	 */
+	public List<ProfileStatus> execute(List<ProfileVo> profileVos) {
+		List<ProfileStatus> result = new ArrayList<>();
+
+		// Step1 : group by name, sorted so the result order is stable. Profiles with an invalid row map to null
+		Map<String, Profile.ProfileBuilder> builders = new TreeMap<>();
+		Map<String, String> invalidRows = new HashMap<>();
+		for (ProfileVo vo : profileVos) {
+			String name = vo.getName();
+			if (null == name) {
+				result.add(new ProfileStatus(null, "FAILURE, Profile name missing"));
+				continue;
+			}
+			if (builders.containsKey(name) && null == builders.get(name)) {
+				continue;
+			}
+
+			Fraction fraction;
+			try {
+				fraction = new Fraction(Month.valueOf(vo.getMonth()), Double.parseDouble(vo.getFraction()));
+			} catch (IllegalArgumentException | NullPointerException e) {
+				builders.put(name, null);
+				invalidRows.put(name, String.format("FAILURE, Invalid row ie., month: %s, fraction: %s", vo.getMonth(), vo.getFraction()));
+				continue;
+			}
+			builders.computeIfAbsent(name, Profile.ProfileBuilder::new).addFraction(fraction);
+		}
+
+		// Step2 : build profiles, validating the total of their fractions
+		List<Profile> profiles = new ArrayList<>(builders.size());
+		for (Entry<String, Profile.ProfileBuilder> e : builders.entrySet()) {
+			if (null == e.getValue()) {
+				result.add(new ProfileStatus(e.getKey(), invalidRows.get(e.getKey())));
+				continue;
+			}
+			try {
+				profiles.add(e.getValue().build());
+			} catch (IllegalArgumentException ex) {
+				result.add(new ProfileStatus(e.getKey(), "FAILURE, " + ex.getMessage()));
+			}
+		}
+
+		// Step3 : persist in batches, every written profile replaces its cache entry and invalidates its responses
+		for (List<Profile> batch : Lists.partition(profiles, applicationProperties.getIngest().getWriteBatchSize())) {
+			Set<Integer> failed = profileRepository.bulkUpsert(batch);
+			for (int i = 0; i < batch.size(); i++) {
+				Profile profile = batch.get(i);
+				if (failed.contains(i)) {
+					profileCacheService.invalidate(profile.getName());
+					result.add(new ProfileStatus(profile.getName(), "FAILURE, Profile could not be persisted"));
+				} else {
+					profileCacheService.put(profile);
+					result.add(new ProfileStatus(profile.getName(), ProfileStatus.SUCCESS));
+				}
+			}
+			responseCacheService.invalidateProfiles(Lists.transform(batch, Profile::getName));
+		}
+		log.debug("{} of {} profiles valid", profiles.size(), builders.size());
+
+		return result;
+	}
+}
@@ -0,0 +1,144 @@
+package com.oroprise.service;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.stereotype.Service;
+
+import com.oroprise.config.ApplicationProperties;
+import com.oroprise.vo.IngestJobStatus;
+import com.oroprise.vo.MeterReadingStatus;
+import com.oroprise.vo.MeterReadingVo;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Runs meter reading uploads in the background on the bounded meterReadingJobExecutor, so the servlet thread only
+ * queues the job and returns its id
+ *
+ */
+@Service
+@Slf4j
+public class IngestJobService {
+
+	public enum State {
+		QUEUED, RUNNING, COMPLETED, FAILED
+	}
+
+	@Autowired
+	private CreateMeterReadingService createMeterReadingService;
+
+	@Autowired
+	private TaskExecutor meterReadingJobExecutor;
+
+	@Autowired
+	private ApplicationProperties applicationProperties;
+
+	private final Map<String, IngestJob> jobs = new ConcurrentHashMap<>();
+
+	/**
+	 * Queues the upload
+	 * 
+	 * @param meterReadingVos
+	 * @return status of the queued job
+	 * @throws TaskRejectedException if the job queue is full
+	 */
+	public IngestJobStatus submit(List<MeterReadingVo> meterReadingVos) {
+		evictFinishedJobs();
+
+		IngestJob job = new IngestJob(UUID.randomUUID().toString(), meterReadingVos.size());
+		jobs.put(job.id, job);
+		try {
+			meterReadingJobExecutor.execute(() -> run(job, meterReadingVos));
+		} catch (TaskRejectedException e) {
+			jobs.remove(job.id);
+			throw e;
+		}
+		log.debug("Queued ingest job {} of {} meterReadings", job.id, meterReadingVos.size());
+		return job.snapshot(0);
+	}
+
+	/**
+	 * @param id
+	 * @param resultsFrom index of the first MeterReadingStatus returned, lets pollers fetch only new results
+	 * @return status of the job, or null if unknown or evicted
+	 */
+	public IngestJobStatus getStatus(String id, int resultsFrom) {
+		IngestJob job = jobs.get(id);
+		return null == job ? null : job.snapshot(resultsFrom);
+	}
+
+	private void run(IngestJob job, List<MeterReadingVo> meterReadingVos) {
+		job.state = State.RUNNING;
+		job.started = new Date();
+		try {
+			createMeterReadingService.execute(meterReadingVos, job::add);
+			job.state = State.COMPLETED;
+		} catch (RuntimeException e) {
+			log.error("Ingest job {} failed", job.id, e);
+			job.error = e.getMessage();
+			job.state = State.FAILED;
+		} finally {
+			job.finished = new Date();
+		}
+	}
+
+	private void evictFinishedJobs() {
+		long retention = TimeUnit.SECONDS.toMillis(applicationProperties.getIngestJobs().getRetentionSeconds());
+		long now = System.currentTimeMillis();
+		jobs.values().removeIf(job -> null != job.finished && now - job.finished.getTime() > retention);
+	}
+
+	/**
+	 * Job written by its worker thread and read by pollers, results only grow
+	 *
+	 */
+	private static class IngestJob {
+		private final String id;
+		private final int rows;
+		private final Date submitted = new Date();
+		private final List<MeterReadingStatus> results = new ArrayList<>();
+		private int failures;
+		private volatile State state = State.QUEUED;
+		private volatile Date started;
+		private volatile Date finished;
+		private volatile String error;
+
+		private IngestJob(String id, int rows) {
+			this.id = id;
+			this.rows = rows;
+		}
+
+		private synchronized void add(MeterReadingStatus status) {
+			results.add(status);
+			if (status.isFailure()) {
+				failures++;
+			}
+		}
+
+		private synchronized IngestJobStatus snapshot(int resultsFrom) {
+			IngestJobStatus status = new IngestJobStatus();
+			status.setId(id);
+			status.setState(state.name());
+			status.setRows(rows);
+			status.setProcessed(results.size());
+			status.setFailures(failures);
+			status.setSubmitted(submitted);
+			status.setStarted(started);
+			status.setFinished(finished);
+			status.setError(error);
+			int from = Math.max(0, Math.min(resultsFrom, results.size()));
+			status.setResultsFrom(from);
+			status.setResults(new ArrayList<>(results.subList(from, results.size())));
+			return status;
+		}
+	}
+}
@@ -0,0 +1,101 @@
+package com.oroprise.service;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+
+import lombok.Getter;
+
+/**
+ * Timers, meters and counters of the meter reading ingest, registered in the Dropwizard MetricRegistry that the
+ * actuator /metrics endpoint exposes.
+ *
+ */
+@Component
+@Getter
+public class IngestMetrics {
+
+	/**
+	 * Reasons a connection is rejected, each counted under ingest.failures.[metricName]
+	 */
+	public enum Failure {
+		PROFILE_NOT_FOUND("profile-not-found"),
+		INSUFFICIENT_READINGS("insufficient-readings"),
+		INVALID_ORDER("invalid-order"),
+		CONSUMPTION_OUT_OF_RANGE("consumption-out-of-range"),
+		PERSISTENCE_FAILED("persistence-failed"),
+		INVALID_ROW("invalid-row"),
+		MALFORMED_UPLOAD("malformed-upload");
+
+		private final String metricName;
+
+		private Failure(String metricName) {
+			this.metricName = metricName;
+		}
+	}
+
+	/** whole execute call */
+	private final Timer request;
+	/** Step1 & Step3 */
+	private final Timer grouping;
+	/** Step2 */
+	private final Timer profileLookup;
+	/** Step3, stored fingerprints */
+	private final Timer fingerprintLookup;
+	/** Step4, previous year readings */
+	private final Timer baselineLookup;
+	/** Step4 to Step6 */
+	private final Timer validation;
+	/** Step6, accumulated over all connections, in nanoseconds */
+	private final Counter consumptionCheckNanos;
+	/** Step7 & Step8 */
+	private final Timer persistence;
+	/** reading replaced meterReadings and updating the ConsumptionRollups, part of Step8 */
+	private final Timer rollup;
+
+	private final Timer profileRepositoryCalls;
+	private final Timer meterReadingRepositoryCalls;
+	/** appending and syncing a write batch to the journal, instead of the bulk upsert */
+	private final Timer journalAppends;
+
+	private final Meter rows;
+	private final Meter connections;
+	private final Meter successes;
+	private final Meter unchanged;
+	@Getter(lombok.AccessLevel.NONE)
+	private final Map<Failure, Counter> failures = new EnumMap<>(Failure.class);
+
+	@Autowired
+	public IngestMetrics(MetricRegistry metricRegistry) {
+		request = metricRegistry.timer("ingest.request");
+		grouping = metricRegistry.timer("ingest.stage.grouping");
+		profileLookup = metricRegistry.timer("ingest.stage.profile-lookup");
+		fingerprintLookup = metricRegistry.timer("ingest.stage.fingerprint-lookup");
+		baselineLookup = metricRegistry.timer("ingest.stage.baseline-lookup");
+		validation = metricRegistry.timer("ingest.stage.validation");
+		consumptionCheckNanos = metricRegistry.counter("ingest.stage.consumption-check.nanos");
+		persistence = metricRegistry.timer("ingest.stage.persistence");
+		rollup = metricRegistry.timer("ingest.stage.rollup");
+		profileRepositoryCalls = metricRegistry.timer("repository.profile.find");
+		meterReadingRepositoryCalls = metricRegistry.timer("repository.meter-reading.bulk-upsert");
+		journalAppends = metricRegistry.timer("journal.append");
+		rows = metricRegistry.meter("ingest.rows");
+		connections = metricRegistry.meter("ingest.connections");
+		successes = metricRegistry.meter("ingest.successes");
+		unchanged = metricRegistry.meter("ingest.unchanged");
+		for (Failure failure : Failure.values()) {
+			failures.put(failure, metricRegistry.counter("ingest.failures." + failure.metricName));
+		}
+	}
+
+	public void failed(Failure failure) {
+		failures.get(failure).inc();
+	}
+}
@@ -0,0 +1,98 @@
+package com.oroprise.service;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import com.oroprise.bo.MeterReading;
+import com.oroprise.config.ApplicationProperties;
+import com.oroprise.repository.MeterReadingJournal;
+import com.oroprise.repository.MeterReadingJournal.Batch;
+import com.oroprise.service.IngestMetrics.Failure;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Background flusher of the {@link MeterReadingJournal}. It writes the journaled meterReadings to the repository in
+ * batches of oroprise.journal.flush-batch-size, the same way an upload without the journal would. If the storage
+ * engine is unavailable, the batch stays journaled and is retried on the next run.
+ *
+ */
+@Service
+@Slf4j
+public class JournalFlushService {
+
+	@Autowired
+	private MeterReadingJournal meterReadingJournal;
+
+	@Autowired
+	private CreateMeterReadingService createMeterReadingService;
+
+	@Autowired
+	private ApplicationProperties applicationProperties;
+
+	@Autowired
+	private IngestMetrics ingestMetrics;
+
+	private ScheduledExecutorService scheduler;
+
+	@PostConstruct
+	public void init() {
+		if (!meterReadingJournal.isEnabled()) {
+			return;
+		}
+		long interval = applicationProperties.getJournal().getFlushIntervalMillis();
+		scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "journal-flusher");
+			thread.setDaemon(true);
+			return thread;
+		});
+		// starts with the meterReadings replayed from the journal
+		scheduler.scheduleWithFixedDelay(this::flush, 0, interval, TimeUnit.MILLISECONDS);
+	}
+
+	@PreDestroy
+	public void destroy() throws InterruptedException {
+		if (null == scheduler) {
+			return;
+		}
+		scheduler.shutdown();
+		scheduler.awaitTermination(1, TimeUnit.MINUTES);
+		// a last run for what was acknowledged meanwhile, anything left is replayed on the next startup
+		flush();
+	}
+
+	/**
+	 * Writes journaled meterReadings until the journal is empty or a write fails. Runs one at a time, so once it returns
+	 * the meterReadings journaled before the call are written, unless a write failed.
+	 */
+	public synchronized void flush() {
+		int batchSize = applicationProperties.getJournal().getFlushBatchSize();
+		Batch batch;
+		while (!(batch = meterReadingJournal.drain(batchSize)).isEmpty()) {
+			List<MeterReading> meterReadings = batch.getMeterReadings();
+			try {
+				Set<Integer> failed = createMeterReadingService.write(meterReadings);
+				for (Integer index : failed) {
+					// rejected by the storage engine itself, retrying would not help
+					ingestMetrics.failed(Failure.PERSISTENCE_FAILED);
+					log.error("Journaled meterReading of {} could not be written, it is dropped",
+							meterReadings.get(index).getConnection());
+				}
+			} catch (RuntimeException e) {
+				meterReadingJournal.requeue(batch);
+				log.error("{} journaled meterReadings could not be written, retrying", meterReadings.size(), e);
+				return;
+			}
+			meterReadingJournal.acknowledge(batch);
+		}
+	}
+}
@@ -0,0 +1,49 @@
+package com.oroprise.service;
+
+import java.time.Year;
+
+import javax.annotation.PostConstruct;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import com.oroprise.config.ApplicationProperties;
+import com.oroprise.repository.MeterReadingRepository;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Moves the stored meterReadings to the schema in use once it is switched, and the ones written before readings were kept
+ * per year to the configured legacy year, once. Runs before the web server accepts requests, as range queries only see documents
+ * in the schema in use.
+ *
+ */
+@Service
+@Slf4j
+public class MeterReadingMigrationService {
+
+	@Autowired
+	private MeterReadingRepository meterReadingRepository;
+
+	@Autowired
+	private ApplicationProperties applicationProperties;
+
+	@PostConstruct
+	public void migrate() {
+		ApplicationProperties.Storage storage = applicationProperties.getStorage();
+		int batchSize = applicationProperties.getIngest().getWriteBatchSize();
+		long start = System.currentTimeMillis();
+		long migrated = meterReadingRepository.migrateSchema(batchSize);
+		if (migrated > 0) {
+			log.info("Migrated {} meterReadings to the {} schema in {} ms", migrated,
+					storage.isCompactMeterReadings() ? "compact" : "mapped", System.currentTimeMillis() - start);
+		}
+		// until they have a year, GET, DELETE and uploads of the current year would not find them
+		int legacyYear = null != storage.getLegacyReadingYear() ? storage.getLegacyReadingYear() : Year.now().getValue();
+		start = System.currentTimeMillis();
+		migrated = meterReadingRepository.migrateToYear(legacyYear, batchSize);
+		if (migrated > 0) {
+			log.info("Moved {} meterReadings without year to {} in {} ms", migrated, legacyYear, System.currentTimeMillis() - start);
+		}
+	}
+}
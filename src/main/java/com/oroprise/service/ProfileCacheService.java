@@ -0,0 +1,172 @@
+package com.oroprise.service;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import com.oroprise.bo.Profile;
+import com.oroprise.config.ApplicationProperties;
+import com.oroprise.repository.ProfileRepository;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Bounded in-process cache of Profiles in front of {@link ProfileRepository}, shared by the ingest and the read path.
+ * Missing profiles are cached as well, writes through {@link com.oroprise.web.rest.ProfileResource} refresh or
+ * invalidate the entries.
+ *
+ */
+@Service
+@Slf4j
+public class ProfileCacheService {
+
+	@Autowired
+	private ProfileRepository profileRepository;
+
+	@Autowired
+	private ApplicationProperties applicationProperties;
+
+	@Autowired
+	private IngestMetrics ingestMetrics;
+
+	@Autowired
+	private MetricRegistry metricRegistry;
+
+	private LoadingCache<String, Optional<Profile>> cache;
+
+	@PostConstruct
+	public void init() {
+		ApplicationProperties.ProfileCache config = applicationProperties.getProfileCache();
+		cache = CacheBuilder.newBuilder()
+				.maximumSize(config.getMaximumSize())
+				.expireAfterWrite(config.getTimeToLiveSeconds(), TimeUnit.SECONDS)
+				.recordStats()
+				.build(new CacheLoader<String, Optional<Profile>>() {
+					@Override
+					public Optional<Profile> load(String name) {
+						Timer.Context repositoryTimer = ingestMetrics.getProfileRepositoryCalls().time();
+						try {
+							return Optional.ofNullable(profileRepository.findOne(name));
+						} finally {
+							repositoryTimer.stop();
+						}
+					}
+
+					@Override
+					public Map<String, Optional<Profile>> loadAll(Iterable<? extends String> names) {
+						// one $in query per chunk of names instead of one findOne per name
+						Map<String, Optional<Profile>> profiles = new HashMap<>();
+						int chunkSize = applicationProperties.getIngest().getProfileLookupChunkSize();
+						for (List<? extends String> chunk : Iterables.partition(names, chunkSize)) {
+							Timer.Context repositoryTimer = ingestMetrics.getProfileRepositoryCalls().time();
+							try {
+								profileRepository.findAll(ImmutableList.<String>copyOf(chunk))
+										.forEach(profile -> profiles.put(profile.getName(), Optional.of(profile)));
+							} finally {
+								repositoryTimer.stop();
+							}
+						}
+						names.forEach(name -> profiles.putIfAbsent(name, Optional.empty()));
+						return profiles;
+					}
+				});
+		metricRegistry.register("profile-cache.hits", (Gauge<Long>) () -> cache.stats().hitCount());
+		metricRegistry.register("profile-cache.misses", (Gauge<Long>) () -> cache.stats().missCount());
+		metricRegistry.register("profile-cache.evictions", (Gauge<Long>) () -> cache.stats().evictionCount());
+		metricRegistry.register("profile-cache.size", (Gauge<Long>) cache::size);
+		log.debug("Profile cache initialized with {}", config);
+	}
+
+	/**
+	 * @param name
+	 * @return the profile, or null if it does not exist
+	 */
+	public Profile get(String name) {
+		return cache.getUnchecked(name).orElse(null);
+	}
+
+	/**
+	 * Loads all profiles missing in the cache in bulk
+	 * 
+	 * @param names
+	 * @return map of profileName to Profile, empty for the profiles that do not exist
+	 */
+	public Map<String, Optional<Profile>> getAll(Collection<String> names) {
+		try {
+			return cache.getAll(names);
+		} catch (ExecutionException e) {
+			throw new UncheckedExecutionException(e.getCause());
+		}
+	}
+
+	/**
+	 * Looks up the cache only, for callers loading the missing profiles themselves
+	 * 
+	 * @param names
+	 * @return map of profileName to Profile for the names cached, empty for the profiles known not to exist
+	 */
+	public Map<String, Optional<Profile>> getAllPresent(Collection<String> names) {
+		return cache.getAllPresent(names);
+	}
+
+	/**
+	 * Caches profiles loaded outside of the cache
+	 * 
+	 * @param profiles map of profileName to Profile, empty for the profiles that do not exist
+	 */
+	public void putAll(Map<String, Optional<Profile>> profiles) {
+		cache.putAll(profiles);
+	}
+
+	/**
+	 * Refreshes the cache entry of a profile that was just written
+	 * 
+	 * @param profile
+	 */
+	public void put(Profile profile) {
+		cache.put(profile.getName(), Optional.of(profile));
+	}
+
+	/**
+	 * Evicts a profile that was deleted or changed outside of the cache
+	 * 
+	 * @param name
+	 */
+	public void invalidate(String name) {
+		cache.invalidate(name);
+	}
+
+	public void invalidateAll() {
+		cache.invalidateAll();
+	}
+
+	/**
+	 * @return hit, miss, load and eviction counters since startup
+	 */
+	public CacheStats stats() {
+		return cache.stats();
+	}
+
+	public long size() {
+		return cache.size();
+	}
+}
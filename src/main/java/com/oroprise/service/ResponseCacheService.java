@@ -0,0 +1,186 @@
+package com.oroprise.service;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import javax.annotation.PostConstruct;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.Hashing;
+import com.oroprise.bo.Connection;
+import com.oroprise.config.ApplicationProperties;
+
+import lombok.Getter;
+
+/**
+ * Cache of the serialized JSON of GET /api/profiles, /api/profiles/{name} and /api/meterreadings/{profileName}/{connectionId},
+ * so unchanged resources are served without reading the database nor serializing them again. Every response carries
+ * an ETag derived from its body, the version of the entity as served, and requests sending it back in If-None-Match
+ * are answered 304 (Not Modified) by Spring MVC.
+ * <p>
+ * Writes and deletes invalidate the entries of their entities, any profile write the cached profile pages. A response
+ * loaded while an entity of its kind is written is not kept. Entries expire after time-to-live-seconds, for the
+ * changes made by other instances.
+ *
+ */
+@Service
+public class ResponseCacheService {
+
+	@Autowired
+	private ObjectMapper objectMapper;
+
+	@Autowired
+	private ApplicationProperties applicationProperties;
+
+	@Autowired
+	private MetricRegistry metricRegistry;
+
+	private Cache<String, CachedResponse> profiles;
+	private Cache<String, CachedResponse> profilePages;
+	private Cache<Connection, CachedResponse> meterReadings;
+
+	/** counts the profile and meterReading writes, responses loaded across one of them are not cached */
+	private final AtomicLong profileWrites = new AtomicLong();
+	private final AtomicLong meterReadingWrites = new AtomicLong();
+
+	/**
+	 * Serialized body of a 200 (OK) response, with its headers and ETag
+	 */
+	@Getter
+	public static class CachedResponse {
+		private final byte[] body;
+		private final String eTag;
+		private final HttpHeaders headers;
+
+		CachedResponse(byte[] body, HttpHeaders headers) {
+			this.body = body;
+			this.eTag = '"' + Hashing.murmur3_128().hashBytes(body).toString() + '"';
+			this.headers = HttpHeaders.readOnlyHttpHeaders(headers);
+		}
+
+		public ResponseEntity<byte[]> toResponseEntity() {
+			return ResponseEntity.ok().headers(headers).eTag(eTag).contentType(MediaType.APPLICATION_JSON_UTF8).body(body);
+		}
+	}
+
+	@PostConstruct
+	public void init() {
+		profiles = register("profiles", newCache());
+		profilePages = register("profile-pages", newCache());
+		meterReadings = register("meter-readings", newCache());
+	}
+
+	private <K> Cache<K, CachedResponse> newCache() {
+		ApplicationProperties.ResponseCache config = applicationProperties.getResponseCache();
+		return CacheBuilder.newBuilder()
+				.maximumSize(config.getMaximumSize())
+				.expireAfterWrite(config.getTimeToLiveSeconds(), TimeUnit.SECONDS)
+				.recordStats()
+				.build();
+	}
+
+	private <K> Cache<K, CachedResponse> register(String name, Cache<K, CachedResponse> cache) {
+		metricRegistry.register("response-cache." + name + ".hits", (Gauge<Long>) () -> cache.stats().hitCount());
+		metricRegistry.register("response-cache." + name + ".misses", (Gauge<Long>) () -> cache.stats().missCount());
+		metricRegistry.register("response-cache." + name + ".size", (Gauge<Long>) cache::size);
+		return cache;
+	}
+
+	/**
+	 * @param name
+	 * @param loader the response of GET /api/profiles/{name}
+	 * @return the cached response, or the loaded one
+	 */
+	public ResponseEntity<byte[]> getProfile(String name, Supplier<ResponseEntity<?>> loader) {
+		return get(profiles, profileWrites, name, loader);
+	}
+
+	/**
+	 * @param size
+	 * @param after
+	 * @param loader the response of GET /api/profiles
+	 * @return the cached response, or the loaded one
+	 */
+	public ResponseEntity<byte[]> getProfilePage(int size, String after, Supplier<ResponseEntity<?>> loader) {
+		return get(profilePages, profileWrites, size + "/" + (null == after ? "" : after), loader);
+	}
+
+	/**
+	 * @param connection
+	 * @param loader the response of GET /api/meterreadings/{profileName}/{connectionId}
+	 * @return the cached response, or the loaded one
+	 */
+	public ResponseEntity<byte[]> getMeterReading(Connection connection, Supplier<ResponseEntity<?>> loader) {
+		return get(meterReadings, meterReadingWrites,
+				new Connection(connection.getProfileName(), connection.getConnectionId(), connection.getYear()), loader);
+	}
+
+	/**
+	 * Call once the profiles are written or deleted
+	 *
+	 * @param names
+	 */
+	public void invalidateProfiles(Collection<String> names) {
+		profileWrites.incrementAndGet();
+		profiles.invalidateAll(names);
+		profilePages.invalidateAll();
+	}
+
+	/**
+	 * Call once the meterReadings are written or deleted
+	 *
+	 * @param connections
+	 */
+	public void invalidateMeterReadings(Collection<Connection> connections) {
+		meterReadingWrites.incrementAndGet();
+		meterReadings.invalidateAll(connections);
+	}
+
+	public void invalidateAll() {
+		profileWrites.incrementAndGet();
+		meterReadingWrites.incrementAndGet();
+		profiles.invalidateAll();
+		profilePages.invalidateAll();
+		meterReadings.invalidateAll();
+	}
+
+	@SuppressWarnings("unchecked")
+	private <K> ResponseEntity<byte[]> get(Cache<K, CachedResponse> cache, AtomicLong writes, K key,
+			Supplier<ResponseEntity<?>> loader) {
+		CachedResponse cached = cache.getIfPresent(key);
+		if (null != cached) {
+			return cached.toResponseEntity();
+		}
+
+		long writesBefore = writes.get();
+		ResponseEntity<?> response = loader.get();
+		if (response.getStatusCode() != HttpStatus.OK) {
+			return (ResponseEntity<byte[]>) response;
+		}
+		try {
+			cached = new CachedResponse(objectMapper.writeValueAsBytes(response.getBody()), response.getHeaders());
+		} catch (JsonProcessingException e) {
+			throw new IllegalStateException("Response of " + key + " could not be serialized", e);
+		}
+		cache.put(key, cached);
+		// writers count before they invalidate, so a write missed here removes the entry afterwards
+		if (writes.get() != writesBefore) {
+			cache.invalidate(key);
+		}
+		return cached.toResponseEntity();
+	}
+}
@@ -0,0 +1,178 @@
+package com.oroprise.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.ReadableByteChannel;
+import java.time.Year;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import com.codahale.metrics.Timer;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.oroprise.bo.Connection;
+import com.oroprise.bo.MonthlyReadings;
+import com.oroprise.service.CreateMeterReadingService.IngestSession;
+import com.oroprise.service.IngestMetrics.Failure;
+import com.oroprise.util.BinaryReadingsDecoder;
+import com.oroprise.util.BinaryReadingsDecoder.MalformedException;
+import com.oroprise.util.BinaryReadingsEncoder;
+import com.oroprise.vo.MeterReadingVo;
+import com.oroprise.vo.MeterReadingStatus;
+
+import lombok.extern.slf4j.Slf4j;
+
+@Service
+@Slf4j
+public class StreamMeterReadingService {
+
+	@Autowired
+	private CreateMeterReadingService createMeterReadingService;
+
+	@Autowired
+	private ObjectMapper objectMapper;
+
+	@Autowired
+	private IngestMetrics ingestMetrics;
+
+	/**
+	 *  Reads MeterReadingVos one at a time from either a JSON array or newline delimited JSON objects
+	 *  Step1 : Group the MeterReadingVos by profileName->connectionId->year while reading
+	 *  Step2 : Hand over a connection to the IngestSession as soon as all its months are read
+	 *  Step3 : Hand over the connections still incomplete at the end of the upload, these fail validation
+	 *
+	 *  Memory is bounded by the connections in flight and the write batch, not by the size of the upload.
+	 *
+	 *  The statuses are streamed while the body is read, so a bad body is reported in the stream instead of failing the
+	 *  request. A row that is valid JSON but not a meterReading gets an INVALID_ROW status and the upload goes on, a body
+	 *  that is not valid JSON ends the upload with a MALFORMED_UPLOAD status after the statuses of the rows read before.
+	 *
+	 * @param in the request body
+	 * @param sink receives the MeterReadingStatus of every connection as soon as it is decided
+	 * @throws IOException if the body is not readable
+	 */
+	public void execute(InputStream in, Consumer<MeterReadingStatus> sink) throws IOException {
+		Timer.Context requestTimer = ingestMetrics.getRequest().time();
+		Map<Connection, MonthlyReadings> inFlight = new HashMap<>();
+		int rows = 0;
+		int currentYear = Year.now().getValue();
+		String malformed = null;
+
+		try (IngestSession session = createMeterReadingService.openSession(sink);
+				JsonParser parser = objectMapper.getFactory().createParser(in)) {
+			try {
+				JsonToken token = parser.nextToken();
+				if (token == JsonToken.START_ARRAY) {
+					token = parser.nextToken();
+				}
+
+				while (token == JsonToken.START_OBJECT) {
+					// read as a tree first, so a row that does not map leaves the parser at the next row
+					JsonNode row = parser.readValueAsTree();
+					rows++;
+					MeterReadingVo vo = toMeterReadingVo(row, rows, sink);
+
+					if (null != vo) {
+						// Step1 : group by profileName, connectionId and year
+						Connection connection = new Connection(vo.getProfileName(), vo.getConnectionId(), vo.getYear(currentYear));
+						MonthlyReadings readings = inFlight.computeIfAbsent(connection, MonthlyReadings::new);
+						readings.set(vo.getMonth(), vo.getReading());
+
+						// Step2 : connection complete
+						if (readings.getRows() == MonthlyReadings.MONTHS) {
+							inFlight.remove(connection);
+							session.submit(readings);
+						}
+					}
+					token = parser.nextToken();
+				}
+				if (null != token && token != JsonToken.END_ARRAY) {
+					malformed = "unexpected " + token + " at line " + parser.getCurrentLocation().getLineNr();
+				}
+			} catch (JsonProcessingException e) {
+				malformed = e.getOriginalMessage() + (null == e.getLocation() ? "" : " at line " + e.getLocation().getLineNr());
+			}
+
+			// Step3 : connections with missing months
+			inFlight.values().forEach(session::submit);
+		} finally {
+			ingestMetrics.getRows().mark(rows);
+			requestTimer.stop();
+		}
+
+		if (null != malformed) {
+			malformedUpload(malformed, sink);
+		}
+		log.debug("Streamed {} meterReadings", rows);
+	}
+
+	/**
+	 * @param row
+	 * @param index row number in the upload, from 1
+	 * @param sink receives the INVALID_ROW status if the row is not a meterReading
+	 * @return the MeterReadingVo, null if the row is not a meterReading
+	 */
+	private MeterReadingVo toMeterReadingVo(JsonNode row, int index, Consumer<MeterReadingStatus> sink) {
+		String reason;
+		try {
+			MeterReadingVo vo = objectMapper.treeToValue(row, MeterReadingVo.class);
+			if (null != vo.getMonth()) {
+				return vo;
+			}
+			reason = "month is missing";
+		} catch (JsonProcessingException e) {
+			reason = e.getOriginalMessage();
+		}
+
+		ingestMetrics.failed(Failure.INVALID_ROW);
+		JsonNode year = row.path("year");
+		sink.accept(new MeterReadingStatus(row.path("profileName").asText(null), row.path("connectionId").asText(null),
+				year.isInt() ? year.intValue() : null, MeterReadingStatus.INVALID_ROW + " " + index + ", " + reason));
+		return null;
+	}
+
+	private void malformedUpload(String reason, Consumer<MeterReadingStatus> sink) {
+		ingestMetrics.failed(Failure.MALFORMED_UPLOAD);
+		log.warn("Malformed meterReadings upload, {}", reason);
+		sink.accept(new MeterReadingStatus(null, null, null, MeterReadingStatus.MALFORMED_UPLOAD + ", " + reason));
+	}
+
+	/**
+	 *  Reads the binary upload format, see {@link BinaryReadingsEncoder}, one connection year per record
+	 *  Step1 : Decode each record from the buffered body straight into the MonthlyReadings of its connection
+	 *  Step2 : Hand over the connection to the IngestSession
+	 *
+	 *  A malformed body ends the upload with a MALFORMED_UPLOAD status after the statuses of the records read before.
+	 *
+	 * @param channel the request body
+	 * @param sink receives the MeterReadingStatus of every connection as soon as it is decided
+	 * @throws IOException if the body is not readable
+	 */
+	public void executeBinary(ReadableByteChannel channel, Consumer<MeterReadingStatus> sink) throws IOException {
+		Timer.Context requestTimer = ingestMetrics.getRequest().time();
+		int rows = 0;
+		String malformed = null;
+
+		try (IngestSession session = createMeterReadingService.openSession(sink)) {
+			rows = new BinaryReadingsDecoder(channel).decode(session::submit);
+		} catch (MalformedException e) {
+			malformed = e.getMessage();
+		} finally {
+			requestTimer.stop();
+		}
+
+		if (null != malformed) {
+			malformedUpload(malformed, sink);
+			return;
+		}
+		ingestMetrics.getRows().mark(rows);
+		log.debug("Decoded {} binary meterReadings", rows);
+	}
+}
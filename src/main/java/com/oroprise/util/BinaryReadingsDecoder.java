@@ -0,0 +1,160 @@
+package com.oroprise.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Consumer;
+
+import com.oroprise.bo.Connection;
+import com.oroprise.bo.Month;
+import com.oroprise.bo.MonthlyReadings;
+
+/**
+ * Reads the binary upload format described in {@link BinaryReadingsEncoder} from a channel, a buffer at a time,
+ * decoding every record straight into the MonthlyReadings of its connection year. Memory is bounded by the buffer and
+ * the dictionary, not by the size of the upload.
+ *
+ */
+public class BinaryReadingsDecoder {
+
+	/** holds the longest possible record */
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private static final Month[] MONTHS = Month.values();
+
+	private final ReadableByteChannel channel;
+	private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+	private String[] profileNames;
+
+	public BinaryReadingsDecoder(ReadableByteChannel channel) {
+		this.channel = channel;
+		buffer.flip();
+	}
+
+	/**
+	 * Decodes the whole body
+	 *
+	 * @param consumer receives the readings of every record, in the order of the body
+	 * @return number of readings decoded
+	 * @throws MalformedException if the body is malformed, the readings decoded before were handed to the consumer
+	 * @throws IOException if the channel is not readable
+	 */
+	public int decode(Consumer<MonthlyReadings> consumer) throws IOException {
+		readHeader();
+
+		int rows = 0;
+		while (fill(4)) {
+			int length = buffer.getInt();
+			if (length < 4 + 2 + 4 + 2 + MonthlyReadings.MONTHS * 8 || length > BUFFER_SIZE) {
+				throw malformed("record length " + length);
+			}
+			require(length);
+			int end = buffer.position() + length;
+
+			int profileIndex = buffer.getInt();
+			if (profileIndex < 0 || profileIndex >= profileNames.length) {
+				throw malformed("profile index " + profileIndex);
+			}
+			String connectionId = getString(end - (4 + 2 + MonthlyReadings.MONTHS * 8));
+			int year = buffer.getInt();
+			int monthsPresent = buffer.getShort();
+
+			MonthlyReadings readings = new MonthlyReadings(new Connection(profileNames[profileIndex], connectionId, year));
+			for (int i = 0; i < MonthlyReadings.MONTHS; i++) {
+				long reading = buffer.getLong();
+				if ((monthsPresent & 1 << i) != 0) {
+					readings.set(MONTHS[i], reading);
+				}
+			}
+			// fields appended by later versions
+			buffer.position(end);
+
+			rows += readings.getRows();
+			consumer.accept(readings);
+		}
+		return rows;
+	}
+
+	private void readHeader() throws IOException {
+		require(4 + 1 + 4);
+		int magic = buffer.getInt();
+		if (magic != BinaryReadingsEncoder.MAGIC) {
+			throw malformed("magic " + Integer.toHexString(magic));
+		}
+		byte version = buffer.get();
+		if (version != BinaryReadingsEncoder.VERSION) {
+			throw malformed("version " + version);
+		}
+		int count = buffer.getInt();
+		if (count < 0) {
+			throw malformed("dictionary size " + count);
+		}
+
+		profileNames = new String[count];
+		for (int i = 0; i < count; i++) {
+			require(2);
+			profileNames[i] = getString(Integer.MAX_VALUE);
+		}
+	}
+
+	/**
+	 * Reads a string whose length field is in the buffer, filling the buffer with its bytes as needed
+	 *
+	 * @param limit buffer position the string has to end at or before
+	 */
+	private String getString(int limit) throws IOException {
+		short length = buffer.getShort();
+		if (length < 0) {
+			return null;
+		}
+		if (buffer.position() + length > limit) {
+			throw malformed("string length " + length);
+		}
+		require(length);
+		String value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+		buffer.position(buffer.position() + length);
+		return value;
+	}
+
+	private void require(int bytes) throws IOException {
+		if (!fill(bytes)) {
+			throw new MalformedException("Binary meterReadings truncated");
+		}
+	}
+
+	/**
+	 * @param bytes
+	 * @return true once the buffer holds bytes, false if the body ends exactly at the current position
+	 * @throws MalformedException if the body ends within the bytes
+	 */
+	private boolean fill(int bytes) throws IOException {
+		while (buffer.remaining() < bytes) {
+			buffer.compact();
+			int read = channel.read(buffer);
+			buffer.flip();
+			if (read < 0) {
+				if (buffer.hasRemaining()) {
+					throw new MalformedException("Binary meterReadings truncated");
+				}
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static MalformedException malformed(String detail) {
+		return new MalformedException("Malformed binary meterReadings, unexpected " + detail);
+	}
+
+	/**
+	 * The body does not follow the format, unlike other IOExceptions it is not a failure of the channel
+	 */
+	public static class MalformedException extends IOException {
+		private static final long serialVersionUID = 1L;
+
+		public MalformedException(String message) {
+			super(message);
+		}
+	}
+}
@@ -0,0 +1,153 @@
+package com.oroprise.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Encodes meter readings in the binary upload format of POST /api/meterreadings
+ * ({@link MediaTypes#APPLICATION_METER_READINGS_VALUE}), one record per connection and year. Depends on the JDK only,
+ * so producers can take it over as is.
+ * <p>
+ * All numbers are big endian, strings are UTF-8 prefixed by their int16 byte length, -1 for null.
+ * <pre>
+ * header      int32 magic 'ORMR', int8 version 1
+ * dictionary  int32 count, count profile names, referenced by their index
+ * records     until the end of the body, each
+ *             int32 length of the record after this field
+ *             int32 profile name index
+ *             string connectionId
+ *             int32 year
+ *             int16 months present, bit n for the month of ordinal n (JAN = bit 0)
+ *             12 x int64 readings JAN..DEC, those of months not present are ignored
+ * </pre>
+ * Readers skip bytes appended to a record by later versions.
+ *
+ */
+public class BinaryReadingsEncoder {
+
+	public static final int MAGIC = 'O' << 24 | 'R' << 16 | 'M' << 8 | 'R';
+	public static final byte VERSION = 1;
+	public static final int MONTHS = 12;
+	public static final int ALL_MONTHS = (1 << MONTHS) - 1;
+	/** longest string in bytes */
+	public static final int MAX_STRING_LENGTH = Short.MAX_VALUE;
+
+	private final Map<String, Integer> dictionary = new LinkedHashMap<>();
+	private final ByteArrayOutputStream recordBytes = new ByteArrayOutputStream();
+	private final DataOutputStream records = new DataOutputStream(recordBytes);
+	private int count;
+
+	/**
+	 * Adds the readings of all 12 months of a connection year
+	 *
+	 * @param profileName
+	 * @param connectionId
+	 * @param year
+	 * @param readings JAN..DEC
+	 * @return this encoder
+	 */
+	public BinaryReadingsEncoder add(String profileName, String connectionId, int year, long[] readings) {
+		return add(profileName, connectionId, year, readings, ALL_MONTHS);
+	}
+
+	/**
+	 * Adds the readings of some months of a connection year, these fail validation as insufficient
+	 *
+	 * @param profileName
+	 * @param connectionId
+	 * @param year
+	 * @param readings JAN..DEC
+	 * @param monthsPresent bit n set for the month of ordinal n
+	 * @return this encoder
+	 */
+	public BinaryReadingsEncoder add(String profileName, String connectionId, int year, long[] readings, int monthsPresent) {
+		if (null == profileName) {
+			throw new IllegalArgumentException("profileName cannot be null");
+		}
+		if (readings.length != MONTHS) {
+			throw new IllegalArgumentException("Expected " + MONTHS + " readings, got " + readings.length);
+		}
+		byte[] connectionIdBytes = bytes(connectionId);
+		int profileIndex = dictionary.computeIfAbsent(profileName, name -> {
+			bytes(name);
+			return dictionary.size();
+		});
+
+		try {
+			records.writeInt(4 + 2 + (null == connectionIdBytes ? 0 : connectionIdBytes.length) + 4 + 2 + MONTHS * 8);
+			records.writeInt(profileIndex);
+			writeString(records, connectionIdBytes);
+			records.writeInt(year);
+			records.writeShort(monthsPresent & ALL_MONTHS);
+			for (long reading : readings) {
+				records.writeLong(reading);
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		count++;
+		return this;
+	}
+
+	/**
+	 * @return number of records added
+	 */
+	public int size() {
+		return count;
+	}
+
+	/**
+	 * Writes the header, the dictionary and all records added
+	 *
+	 * @param out
+	 * @throws IOException
+	 */
+	public void writeTo(OutputStream out) throws IOException {
+		DataOutputStream data = new DataOutputStream(out);
+		data.writeInt(MAGIC);
+		data.writeByte(VERSION);
+		data.writeInt(dictionary.size());
+		for (String profileName : dictionary.keySet()) {
+			writeString(data, bytes(profileName));
+		}
+		records.flush();
+		recordBytes.writeTo(data);
+		data.flush();
+	}
+
+	public byte[] toByteArray() {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(recordBytes.size() + 64 * dictionary.size() + 9);
+		try {
+			writeTo(out);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return out.toByteArray();
+	}
+
+	private static byte[] bytes(String value) {
+		if (null == value) {
+			return null;
+		}
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		if (bytes.length > MAX_STRING_LENGTH) {
+			throw new IllegalArgumentException("Longer than " + MAX_STRING_LENGTH + " bytes : " + value.substring(0, 32) + "...");
+		}
+		return bytes;
+	}
+
+	private static void writeString(DataOutputStream out, byte[] bytes) throws IOException {
+		if (null == bytes) {
+			out.writeShort(-1);
+			return;
+		}
+		out.writeShort(bytes.length);
+		out.write(bytes);
+	}
+}
@@ -38,4 +38,22 @@ public class HeaderUtil {
         headers.add("X-eventServiceApp-params", entityName);
         return headers;
     }
+
+    /**
+     * Summary of a meter reading upload
+     *
+     * @param rows number of MeterReadingVos received
+     * @param statuses number of MeterReadingStatus returned
+     * @param failures number of MeterReadingStatus that are not SUCCESS
+     * @param durationMillis processing time of the upload
+     * @return
+     */
+    public static HttpHeaders createIngestSummary(long rows, long statuses, long failures, long durationMillis) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.add("X-eventServiceApp-ingest-rows", String.valueOf(rows));
+        headers.add("X-eventServiceApp-ingest-statuses", String.valueOf(statuses));
+        headers.add("X-eventServiceApp-ingest-failures", String.valueOf(failures));
+        headers.add("X-eventServiceApp-ingest-duration-ms", String.valueOf(durationMillis));
+        return headers;
+    }
 }
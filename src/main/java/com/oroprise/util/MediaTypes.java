@@ -0,0 +1,17 @@
+package com.oroprise.util;
+
+/**
+ * Content types served by the REST resources in addition to those of {@link org.springframework.http.MediaType}
+ *
+ */
+public final class MediaTypes {
+
+	/** newline delimited JSON, one document per line */
+	public static final String APPLICATION_NDJSON_VALUE = "application/x-ndjson";
+
+	/** dictionary encoded binary meter readings, one record per connection year, see {@link BinaryReadingsEncoder} */
+	public static final String APPLICATION_METER_READINGS_VALUE = "application/vnd.oroprise.meterreadings";
+
+	private MediaTypes() {
+	}
+}
@@ -0,0 +1,28 @@
+package com.oroprise.util;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.util.UriComponentsBuilder;
+
+/**
+ * Utility class for handling keyset pagination.
+ *
+ * <p>
+ * Pagination uses the same principles as the <a href="https://developer.github.com/v3/#pagination">Github API</a>,
+ * and follows <a href="http://tools.ietf.org/html/rfc5988">RFC 5988 (Link header)</a>. Pages are addressed by the
+ * key of the last element of the previous page instead of a page number, so there is no total count and no "last" link.
+ */
+public final class PaginationUtil {
+
+    private PaginationUtil() {
+    }
+
+    /**
+     * @param nextPage uri of the next page, including the cursor of the last element returned
+     * @return headers with a "next" Link
+     */
+    public static HttpHeaders generateNextPageHttpHeaders(UriComponentsBuilder nextPage) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.add(HttpHeaders.LINK, "<" + nextPage.build().encode().toUriString() + ">; rel=\"next\"");
+        return headers;
+    }
+}
@@ -0,0 +1,12 @@
+package com.oroprise.vo;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+@Data
+@AllArgsConstructor
+public class ConnectionConsumptionVo {
+	private String profileName;
+	private String connectionId;
+	private long yearlyConsumption;
+}
@@ -0,0 +1,20 @@
+package com.oroprise.vo;
+
+import com.oroprise.bo.Month;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * A month whose consumption is out of the range allowed by the profile fraction, reported by the full diagnostics
+ * validation
+ *
+ */
+@Data
+@AllArgsConstructor
+public class ConsumptionFailure {
+	private Month month;
+	private long consumption;
+	private long allowedConsumptionFrom;
+	private long allowedConsumptionTill;
+}
@@ -0,0 +1,23 @@
+package com.oroprise.vo;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.oroprise.bo.MeterReading;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * Result of a connection in a bulk fetch, with the meterReading if it is stored
+ *
+ */
+@Data
+@AllArgsConstructor
+public class FetchedMeterReading {
+	private String profileName;
+	private String connectionId;
+	private Integer year;
+	/** {@link MeterReadingStatus#SUCCESS} or {@link MeterReadingStatus#NOT_FOUND} */
+	private String status;
+	@JsonInclude(JsonInclude.Include.NON_NULL)
+	private MeterReading meterReading;
+}
@@ -0,0 +1,24 @@
+package com.oroprise.vo;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.oroprise.bo.Month;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * Consumption of a connection in a month, or in the year if month is null, answered by the consumption index
+ *
+ */
+@Data
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class IndexedConsumptionVo {
+	private String connectionId;
+	private Integer year;
+	private Month month;
+	private long consumption;
+	/** allowed range of the month, only when filtering on it */
+	private Long allowedConsumptionFrom;
+	private Long allowedConsumptionTill;
+}
@@ -0,0 +1,26 @@
+package com.oroprise.vo;
+
+import java.util.Date;
+import java.util.List;
+
+import lombok.Data;
+
+/**
+ * Progress of an asynchronous meter reading upload, with the MeterReadingStatus decided so far
+ *
+ */
+@Data
+public class IngestJobStatus {
+	private String id;
+	private String state;
+	private int rows;
+	private int processed;
+	private int failures;
+	private Date submitted;
+	private Date started;
+	private Date finished;
+	private String error;
+	/** index of the first element of results among all results of the job */
+	private int resultsFrom;
+	private List<MeterReadingStatus> results;
+}
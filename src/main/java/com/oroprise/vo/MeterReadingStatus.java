@@ -1,12 +1,44 @@
 package com.oroprise.vo;
 
+import java.util.List;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+
 import lombok.AllArgsConstructor;
 import lombok.Data;
 
 @Data
 @AllArgsConstructor
 public class MeterReadingStatus {
+	public static final String SUCCESS = "SUCCESS";
+	/** the readings equal the stored ones, nothing was validated nor written */
+	public static final String UNCHANGED = "UNCHANGED";
+	/** status of the full diagnostics validation, the months are listed in consumptionFailures */
+	public static final String CONSUMPTION_OUT_OF_RANGE = "FAILURE, Consumption out of range";
+	/** no meterReading is stored for the connection, status of the bulk fetches and deletes */
+	public static final String NOT_FOUND = "NOT FOUND";
+	/** a streamed row that could not be read as a meterReading, followed by the row number and the reason */
+	public static final String INVALID_ROW = "FAILURE, Invalid row";
+	/** last status of a streamed upload whose body cannot be read any further, followed by the reason */
+	public static final String MALFORMED_UPLOAD = "FAILURE, Malformed upload";
+
 	private String profileName;
 	private String connectionId;
+	private Integer year;
 	private String status;
+	@JsonInclude(JsonInclude.Include.NON_NULL)
+	private List<ConsumptionFailure> consumptionFailures;
+
+	public MeterReadingStatus(String profileName, String connectionId, Integer year, String status) {
+		this(profileName, connectionId, year, status, null);
+	}
+
+	/**
+	 * @return true unless the readings were persisted or already stored
+	 */
+	@JsonIgnore
+	public boolean isFailure() {
+		return !SUCCESS.equals(status) && !UNCHANGED.equals(status);
+	}
 }
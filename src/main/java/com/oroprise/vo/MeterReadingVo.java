@@ -19,6 +19,15 @@ public class MeterReadingVo {
 	private String profileName;
 	private Month month;
 	private long reading;
+	private Integer year;
+
+	/**
+	 * @param currentYear resolved once per request
+	 * @return year of the reading, the current year if not given
+	 */
+	public int getYear(int currentYear) {
+		return null == year ? currentYear : year;
+	}
 	
 	public static final Comparator<MeterReadingVo> METER_MONTH_COMPARATOR = new Comparator<MeterReadingVo>() {
 
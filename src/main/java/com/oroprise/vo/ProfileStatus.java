@@ -0,0 +1,23 @@
+package com.oroprise.vo;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+@Data
+@AllArgsConstructor
+public class ProfileStatus {
+	public static final String SUCCESS = "SUCCESS";
+
+	private String name;
+	private String status;
+
+	/**
+	 * @return true unless the profile was persisted
+	 */
+	@JsonIgnore
+	public boolean isFailure() {
+		return !SUCCESS.equals(status);
+	}
+}
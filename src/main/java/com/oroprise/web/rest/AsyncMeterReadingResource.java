@@ -0,0 +1,59 @@
+package com.oroprise.web.rest;
+
+import java.net.URI;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.oroprise.service.AsyncCreateMeterReadingService;
+import com.oroprise.util.HeaderUtil;
+import com.oroprise.vo.MeterReadingStatus;
+import com.oroprise.vo.MeterReadingVo;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * JSON meter reading uploads in the async ingest mode (oroprise.async.enabled). The mapping declares the JSON body it
+ * consumes, which makes it more specific than {@link MeterReadingResource#createMeterReadings(List)}, so it serves
+ * these uploads whenever it is registered. The request thread is released once the body is read, the response is
+ * written when the ingest completes.
+ *
+ */
+@RestController
+@Slf4j
+@ConditionalOnProperty(prefix = "oroprise.async", name = "enabled")
+@RequestMapping(value = "/api")
+public class AsyncMeterReadingResource {
+
+	@Autowired
+	private AsyncCreateMeterReadingService asyncCreateMeterReadingService;
+
+	/**
+     * POST  /meterreadings : Creates new Meter Readings without holding the request thread
+     *
+     * @param meterReadingVos list of meterReadingVos to create
+     * @return completes with the ResponseEntity with status 201 (Created) and with body the status of every connection
+     */
+	@RequestMapping(value = "/meterreadings", method = RequestMethod.POST, consumes = MediaType.APPLICATION_JSON_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
+	public CompletableFuture<ResponseEntity<List<MeterReadingStatus>>> createMeterReadings(@RequestBody List<MeterReadingVo> meterReadingVos) {
+		log.debug("Enter createMeterReadings");
+		long start = System.currentTimeMillis();
+
+		return asyncCreateMeterReadingService.execute(meterReadingVos).thenApply(result -> {
+			long failures = result.stream().filter(MeterReadingStatus::isFailure).count();
+			log.debug("Exit createMeterReadings");
+
+			return ResponseEntity.created(URI.create("/api/meterreadings/"))
+					.headers(HeaderUtil.createIngestSummary(meterReadingVos.size(), result.size(), failures, System.currentTimeMillis() - start))
+					.body(result);
+		});
+	}
+}
@@ -0,0 +1,123 @@
+package com.oroprise.web.rest;
+
+import java.time.Year;
+import java.util.List;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.Pageable;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.oroprise.bo.ConsumptionRollup;
+import com.oroprise.bo.Month;
+import com.oroprise.service.ConsumptionIndexService;
+import com.oroprise.util.HeaderUtil;
+import com.oroprise.vo.IndexedConsumptionVo;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Queries of the in-memory consumption index, only served with oroprise.consumption-index.enabled=true
+ *
+ */
+@RestController
+@Slf4j
+@RequestMapping(value = "/api")
+@ConditionalOnProperty(prefix = "oroprise.consumption-index", name = "enabled")
+public class ConsumptionIndexResource {
+
+	@Autowired
+	private ConsumptionIndexService consumptionIndexService;
+
+	/**
+     * GET  /consumption-index/:profilename : get a page of the connections of a profile by their consumption in a month or in the year.
+     *
+     * @param profileName the name of the profile
+     * @param year the year, the current year if not given
+     * @param month the month, eg., JUL, the whole year if not given
+     * @param minConsumption lowest consumption included, optional
+     * @param maxConsumption highest consumption included, optional
+     * @param outOfRange only connections whose consumption in the month is out of the range allowed by the profile
+     * @param pageable page and size of the page, in connectionId order
+     * @return the ResponseEntity with status 200 (OK) and the list of connections in body, with status 400 (Bad Request)
+     * if outOfRange is asked without a month, with status 404 (Not Found) if it is asked for an unknown profile,
+     * or with status 503 (Service Unavailable) while the index loads
+     */
+    @RequestMapping(value = "/consumption-index/{profilename}",
+        method = RequestMethod.GET,
+        produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<List<IndexedConsumptionVo>> getConsumptions(@PathVariable(name = "profilename") String profileName,
+            @RequestParam(required = false) Integer year, @RequestParam(required = false) Month month,
+            @RequestParam(required = false) Long minConsumption, @RequestParam(required = false) Long maxConsumption,
+            @RequestParam(defaultValue = "false") boolean outOfRange, Pageable pageable) {
+        log.debug("REST request to get consumptions of {} in {} {} from {} to {}, out of range {}", profileName, year, month,
+                minConsumption, maxConsumption, outOfRange);
+        if (outOfRange && null == month) {
+            return ResponseEntity.badRequest()
+                .headers(HeaderUtil.createFailureAlert("consumptionIndex", "outOfRange needs a month")).body(null);
+        }
+        return query(() -> consumptionIndexService.filter(profileName, yearOrCurrent(year), month, minConsumption,
+                maxConsumption, outOfRange, pageable));
+    }
+
+	/**
+     * GET  /consumption-index/:profilename/aggregate : get the exact consumption rollups of every month of a profile in a year.
+     *
+     * @param profileName the name of the profile
+     * @param year the year, the current year if not given
+     * @return the ResponseEntity with status 200 (OK) and the rollups in month order in body, empty if no connection is indexed,
+     * or with status 503 (Service Unavailable) while the index loads
+     */
+    @RequestMapping(value = "/consumption-index/{profilename}/aggregate",
+        method = RequestMethod.GET,
+        produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<List<ConsumptionRollup>> getAggregate(@PathVariable(name = "profilename") String profileName,
+            @RequestParam(required = false) Integer year) {
+        log.debug("REST request to aggregate consumptions of {} in {}", profileName, year);
+        return query(() -> consumptionIndexService.aggregate(profileName, yearOrCurrent(year)));
+    }
+
+	/**
+     * GET  /consumption-index/:profilename/top : get the connections of a profile with the highest consumption in a month or in the year.
+     *
+     * @param profileName the name of the profile
+     * @param year the year, the current year if not given
+     * @param month the month, eg., JUL, the whole year if not given
+     * @param size number of connections
+     * @param ascending the connections with the lowest consumption instead
+     * @return the ResponseEntity with status 200 (OK) and the connections in ranking order in body,
+     * or with status 503 (Service Unavailable) while the index loads
+     */
+    @RequestMapping(value = "/consumption-index/{profilename}/top",
+        method = RequestMethod.GET,
+        produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<List<IndexedConsumptionVo>> getTop(@PathVariable(name = "profilename") String profileName,
+            @RequestParam(required = false) Integer year, @RequestParam(required = false) Month month,
+            @RequestParam(defaultValue = "10") int size, @RequestParam(defaultValue = "false") boolean ascending) {
+        log.debug("REST request to get the top {} consumptions of {} in {} {}", size, profileName, year, month);
+        return query(() -> consumptionIndexService.top(profileName, yearOrCurrent(year), month, Math.max(size, 1), ascending));
+    }
+
+    private static int yearOrCurrent(Integer year) {
+        return null == year ? Year.now().getValue() : year;
+    }
+
+    private <T> ResponseEntity<T> query(Supplier<T> query) {
+        if (!consumptionIndexService.isReady()) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .headers(HeaderUtil.createFailureAlert("consumptionIndex", "Consumption index is loading, retry later"))
+                .header(HttpHeaders.RETRY_AFTER, "30").body(null);
+        }
+        T result = query.get();
+        return null == result ? new ResponseEntity<>(HttpStatus.NOT_FOUND) : ResponseEntity.ok(result);
+    }
+}
@@ -0,0 +1,83 @@
+package com.oroprise.web.rest;
+
+import java.time.Year;
+import java.util.List;
+import java.util.Optional;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.oroprise.bo.ConsumptionRollup;
+import com.oroprise.bo.Month;
+import com.oroprise.service.ConsumptionRollupService;
+
+import lombok.extern.slf4j.Slf4j;
+
+@RestController
+@Slf4j
+@RequestMapping(value = "/api")
+public class ConsumptionRollupResource {
+
+	@Autowired
+	private ConsumptionRollupService consumptionRollupService;
+
+	/**
+     * GET  /rollups/:profilename : get the monthly consumption rollups of a profile.
+     *
+     * @param profileName the name of the profile
+     * @param year only rollups of this year, optional
+     * @return the ResponseEntity with status 200 (OK) and the rollups in year and month order in body, empty if no connection was ingested
+     */
+    @RequestMapping(value = "/rollups/{profilename}",
+        method = RequestMethod.GET,
+        produces = MediaType.APPLICATION_JSON_VALUE)
+    public List<ConsumptionRollup> getRollups(@PathVariable(name = "profilename") String profileName, @RequestParam(required = false) Integer year) {
+        log.debug("REST request to get rollups : {} {}", profileName, year);
+        return consumptionRollupService.getRollups(profileName, year);
+    }
+
+	/**
+     * GET  /rollups/:profilename/:month : get the consumption rollup of a profile in a month.
+     *
+     * @param profileName the name of the profile
+     * @param month the month, eg., JAN
+     * @param year the year of the month, the current year if not given
+     * @return the ResponseEntity with status 200 (OK) and with body the rollup, or with status 404 (Not Found)
+     */
+    @RequestMapping(value = "/rollups/{profilename}/{month}",
+        method = RequestMethod.GET,
+        produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<ConsumptionRollup> getRollup(@PathVariable(name = "profilename") String profileName, @PathVariable Month month,
+            @RequestParam(required = false) Integer year) {
+        log.debug("REST request to get rollup : {} {} {}", profileName, year, month);
+        int rollupYear = null == year ? Year.now().getValue() : year;
+        return Optional.ofNullable(consumptionRollupService.getRollup(profileName, rollupYear, month))
+            .map(result -> new ResponseEntity<>(
+                result,
+                HttpStatus.OK))
+            .orElse(new ResponseEntity<>(HttpStatus.NOT_FOUND));
+    }
+
+	/**
+     * POST  /rollups/:profilename/rebuild : recompute the rollups of a profile in all years from its stored meterReadings.
+     * Writes of the same connection are serialized within one instance only, run it after several instances wrote the
+     * profile concurrently, while no upload of the profile is running.
+     *
+     * @param profileName the name of the profile
+     * @return the ResponseEntity with status 200 (OK) and the rebuilt rollups in body
+     */
+    @RequestMapping(value = "/rollups/{profilename}/rebuild",
+        method = RequestMethod.POST,
+        produces = MediaType.APPLICATION_JSON_VALUE)
+    public List<ConsumptionRollup> rebuildRollups(@PathVariable(name = "profilename") String profileName) {
+        log.debug("REST request to rebuild rollups : {}", profileName);
+        return consumptionRollupService.rebuild(profileName);
+    }
+}
@@ -3,12 +3,28 @@
  */
 package com.oroprise.web.rest;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.channels.Channels;
+import java.time.Year;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+import javax.servlet.http.HttpServletResponse;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.util.CloseableIterator;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
@@ -16,13 +32,26 @@ import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.util.UriComponentsBuilder;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.oroprise.bo.Connection;
 import com.oroprise.bo.MeterReading;
 import com.oroprise.repository.MeterReadingRepository;
+import com.oroprise.service.BulkMeterReadingService;
 import com.oroprise.service.CreateMeterReadingService;
+import com.oroprise.service.IngestJobService;
+import com.oroprise.service.ResponseCacheService;
+import com.oroprise.service.StreamMeterReadingService;
+import com.oroprise.util.BinaryReadingsEncoder;
 import com.oroprise.util.HeaderUtil;
+import com.oroprise.util.MediaTypes;
+import com.oroprise.util.PaginationUtil;
+import com.oroprise.vo.ConnectionConsumptionVo;
+import com.oroprise.vo.FetchedMeterReading;
+import com.oroprise.vo.IngestJobStatus;
 import com.oroprise.vo.MeterReadingStatus;
 import com.oroprise.vo.MeterReadingVo;
 
@@ -43,6 +72,21 @@ public class MeterReadingResource {
 	@Autowired
 	private CreateMeterReadingService createMeterReadingService;
 	
+	@Autowired
+	private StreamMeterReadingService streamMeterReadingService;
+	
+	@Autowired
+	private IngestJobService ingestJobService;
+	
+	@Autowired
+	private ResponseCacheService responseCacheService;
+
+	@Autowired
+	private BulkMeterReadingService bulkMeterReadingService;
+	
+	@Autowired
+	private ObjectMapper objectMapper;
+	
 	/**
      * POST  /meterreadings : Creates new Meter Readings
      *
@@ -53,49 +97,277 @@ public class MeterReadingResource {
 	@RequestMapping(value = "/meterreadings", method = RequestMethod.POST, produces = MediaType.APPLICATION_JSON_VALUE)
 	public ResponseEntity<List<MeterReadingStatus>> createMeterReadings(@RequestBody List<MeterReadingVo> meterReadingVos) throws URISyntaxException {
 		log.debug("Enter createMeterReadings");
+		long start = System.currentTimeMillis();
 		
 		List<MeterReadingStatus> result = createMeterReadingService.execute(meterReadingVos);
 		
+		long failures = result.stream().filter(MeterReadingStatus::isFailure).count();
 		log.debug("Exit createMeterReadings");
 		
-		return ResponseEntity.created(new URI("/api/meterreadings/")).body(result);
+		return ResponseEntity.created(new URI("/api/meterreadings/"))
+				.headers(HeaderUtil.createIngestSummary(meterReadingVos.size(), result.size(), failures, System.currentTimeMillis() - start))
+				.body(result);
+	}
+	
+	/**
+     * POST  /meterreadings : Creates new Meter Readings from a streamed upload, either newline delimited JSON or a JSON array
+     *
+     * Connections are validated and persisted while the body is read, their status is written back as newline delimited JSON.
+     * A row that is not a meterReading gets its own failure status, a body that is not valid JSON ends with a failure status.
+     *
+     * @param body the MeterReadingVos, the months of a connection may be spread over the upload
+     * @param response status 201 (Created) with one MeterReadingStatus per line
+     * @throws IOException if the body could not be read or the response could not be written
+     */
+	@RequestMapping(value = "/meterreadings", method = RequestMethod.POST, consumes = MediaTypes.APPLICATION_NDJSON_VALUE, produces = MediaTypes.APPLICATION_NDJSON_VALUE)
+	public void createMeterReadingsStream(InputStream body, HttpServletResponse response) throws IOException {
+		log.debug("Enter createMeterReadingsStream");
+		
+		writeStatuses(response, sink -> streamMeterReadingService.execute(body, sink));
+		
+		log.debug("Exit createMeterReadingsStream");
+	}
+	
+	/**
+     * POST  /meterreadings : Creates new Meter Readings from a binary upload, see {@link BinaryReadingsEncoder} for the format
+     *
+     * Connections are validated and persisted while the body is read, their status is written back as newline delimited JSON.
+     * A malformed body ends with a failure status.
+     *
+     * @param body one record per connection and year
+     * @param response status 201 (Created) with one MeterReadingStatus per line
+     * @throws IOException if the body could not be read or the response could not be written
+     */
+	@RequestMapping(value = "/meterreadings", method = RequestMethod.POST, consumes = MediaTypes.APPLICATION_METER_READINGS_VALUE, produces = MediaTypes.APPLICATION_NDJSON_VALUE)
+	public void createMeterReadingsBinary(InputStream body, HttpServletResponse response) throws IOException {
+		log.debug("Enter createMeterReadingsBinary");
+		
+		writeStatuses(response, sink -> streamMeterReadingService.executeBinary(Channels.newChannel(body), sink));
+		
+		log.debug("Exit createMeterReadingsBinary");
+	}
+	
+	/**
+	 * Writes the statuses of a streamed ingest as newline delimited JSON while it runs
+	 */
+	private void writeStatuses(HttpServletResponse response, StreamedIngest ingest) throws IOException {
+		response.setStatus(HttpServletResponse.SC_CREATED);
+		response.setContentType(MediaTypes.APPLICATION_NDJSON_VALUE);
+		OutputStream out = response.getOutputStream();
+		
+		try {
+			ingest.execute(status -> {
+				try {
+					writeLine(out, status);
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			});
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+		out.flush();
+	}
+	
+	private interface StreamedIngest {
+		void execute(Consumer<MeterReadingStatus> sink) throws IOException;
 	}
 	
 	/**
-     * GET  /meterreadings : get all the meterReadings.
+     * POST  /meterreadings/jobs : Creates new Meter Readings in the background
      *
-     * @return the ResponseEntity with status 200 (OK) and the list of meterReadings in body
+     * @param meterReadingVos list of meterReadingVos to create
+     * @return the ResponseEntity with status 202 (Accepted) and the queued job in body, with the job status URI as Location,
+     * or with status 503 (Service Unavailable) if the job queue is full
+     * @throws URISyntaxException if the Location URI syntax is incorrect
+     */
+	@RequestMapping(value = "/meterreadings/jobs", method = RequestMethod.POST, produces = MediaType.APPLICATION_JSON_VALUE)
+	public ResponseEntity<IngestJobStatus> createMeterReadingsJob(@RequestBody List<MeterReadingVo> meterReadingVos) throws URISyntaxException {
+		log.debug("REST request to queue {} meterReadings", meterReadingVos.size());
+		try {
+			IngestJobStatus job = ingestJobService.submit(meterReadingVos);
+			return ResponseEntity.accepted().location(new URI("/api/meterreadings/jobs/" + job.getId())).body(job);
+		} catch (TaskRejectedException e) {
+			return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+					.headers(HeaderUtil.createFailureAlert("meterReadingJob", "Ingest queue is full, retry later"))
+					.header(HttpHeaders.RETRY_AFTER, "30").body(null);
+		}
+	}
+	
+	/**
+     * GET  /meterreadings/jobs/:id : get the progress of an ingest job.
+     *
+     * @param id the id of the job
+     * @param from index of the first MeterReadingStatus to return, to fetch only the results added since the last poll
+     * @return the ResponseEntity with status 200 (OK) and with body the job, or with status 404 (Not Found)
+     */
+    @RequestMapping(value = "/meterreadings/jobs/{id}",
+        method = RequestMethod.GET,
+        produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<IngestJobStatus> getMeterReadingsJob(@PathVariable String id, @RequestParam(defaultValue = "0") int from) {
+        log.debug("REST request to get ingest job : {}", id);
+        return Optional.ofNullable(ingestJobService.getStatus(id, from))
+            .map(result -> new ResponseEntity<>(
+                result,
+                HttpStatus.OK))
+            .orElse(new ResponseEntity<>(HttpStatus.NOT_FOUND));
+    }
+    
+	/**
+     * GET  /meterreadings : get a page of the meterReadings, in connection order.
+     *
+     * Pages are not numbered anymore. A page above 0 without afterProfileName is answered 400 (Bad Request) instead of
+     * serving the first page again, and without size only the first 20 meterReadings are returned, export them all as
+     * newline delimited JSON instead.
+     *
+     * @param pageable only the page size is used, pages are addressed by the connection of the previous page
+     * @param profileName only meterReadings of this profile, optional
+     * @param afterProfileName profileName of the last connection of the previous page, optional
+     * @param afterConnectionId connectionId of the last connection of the previous page, optional
+     * @param afterYear year of the last connection of the previous page, optional
+     * @return the ResponseEntity with status 200 (OK) and the list of meterReadings in body, with a "next" Link header if there may be more,
+     * or with status 400 (Bad Request) if a page number is requested
      */
     @RequestMapping(value = "/meterreadings",
         method = RequestMethod.GET,
         produces = MediaType.APPLICATION_JSON_VALUE)
-    public List<MeterReading> getAllMeterReadings() {
-        log.debug("REST request to get all meterReadings");
-        List<MeterReading> meterReadings = meterReadingRepository.findAll();
-        return meterReadings;
+    public ResponseEntity<List<MeterReading>> getAllMeterReadings(Pageable pageable,
+            @RequestParam(required = false) String profileName,
+            @RequestParam(required = false) String afterProfileName,
+            @RequestParam(required = false) String afterConnectionId,
+            @RequestParam(required = false) Integer afterYear) {
+        log.debug("REST request to get a page of meterReadings");
+        if (pageable.getPageNumber() > 0 && null == afterProfileName) {
+            return ResponseEntity.badRequest()
+                .headers(HeaderUtil.createFailureAlert("meterReading", "Pages are not numbered, follow the next Link")).body(null);
+        }
+        Connection after = null == afterProfileName ? null : new Connection(afterProfileName, afterConnectionId, afterYear);
+        List<MeterReading> meterReadings = meterReadingRepository.findPage(profileName, after, pageable.getPageSize());
+
+        HttpHeaders headers = new HttpHeaders();
+        if (meterReadings.size() == pageable.getPageSize()) {
+            Connection last = meterReadings.get(meterReadings.size() - 1).getConnection();
+            UriComponentsBuilder nextPage = UriComponentsBuilder.fromUriString("/api/meterreadings")
+                    .queryParam("size", pageable.getPageSize())
+                    .queryParam("afterProfileName", last.getProfileName())
+                    .queryParam("afterConnectionId", last.getConnectionId());
+            if (null != last.getYear()) {
+                nextPage.queryParam("afterYear", last.getYear());
+            }
+            if (null != profileName) {
+                nextPage.queryParam("profileName", profileName);
+            }
+            headers = PaginationUtil.generateNextPageHttpHeaders(nextPage);
+        }
+        return new ResponseEntity<>(meterReadings, headers, HttpStatus.OK);
+    }
+    
+    /**
+     * GET  /meterreadings/consumptions : get a page of the connections by yearly consumption, read from the yearly consumption indexes.
+     *
+     * @param pageable page and size of the page, in ascending yearly consumption
+     * @param profileName only connections of this profile, optional
+     * @param minYearlyConsumption lowest yearly consumption included, optional
+     * @param maxYearlyConsumption highest yearly consumption included, optional
+     * @return the ResponseEntity with status 200 (OK) and the list of connections in body, with a "next" Link header if there may be more
+     */
+    @RequestMapping(value = "/meterreadings/consumptions",
+        method = RequestMethod.GET,
+        produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<List<ConnectionConsumptionVo>> getConnectionConsumptions(Pageable pageable,
+            @RequestParam(required = false) String profileName,
+            @RequestParam(required = false) Long minYearlyConsumption,
+            @RequestParam(required = false) Long maxYearlyConsumption) {
+        log.debug("REST request to get connections of {} by yearly consumption from {} to {}", profileName, minYearlyConsumption, maxYearlyConsumption);
+        List<ConnectionConsumptionVo> consumptions = meterReadingRepository
+                .findByYearlyConsumption(profileName, minYearlyConsumption, maxYearlyConsumption, pageable).stream()
+                .map(meterReading -> new ConnectionConsumptionVo(meterReading.getConnection().getProfileName(),
+                        meterReading.getConnection().getConnectionId(), meterReading.getYearlyConsumption()))
+                .collect(Collectors.toList());
+
+        HttpHeaders headers = new HttpHeaders();
+        if (consumptions.size() == pageable.getPageSize()) {
+            UriComponentsBuilder nextPage = UriComponentsBuilder.fromUriString("/api/meterreadings/consumptions")
+                    .queryParam("page", pageable.getPageNumber() + 1)
+                    .queryParam("size", pageable.getPageSize());
+            if (null != profileName) {
+                nextPage.queryParam("profileName", profileName);
+            }
+            if (null != minYearlyConsumption) {
+                nextPage.queryParam("minYearlyConsumption", minYearlyConsumption);
+            }
+            if (null != maxYearlyConsumption) {
+                nextPage.queryParam("maxYearlyConsumption", maxYearlyConsumption);
+            }
+            headers = PaginationUtil.generateNextPageHttpHeaders(nextPage);
+        }
+        return new ResponseEntity<>(consumptions, headers, HttpStatus.OK);
+    }
+    
+    /**
+     * GET  /meterreadings : export all the meterReadings as newline delimited JSON, streamed from a database cursor.
+     *
+     * @param profileName only meterReadings of this profile, optional
+     * @param response status 200 (OK) with one meterReading per line
+     * @throws IOException if the response could not be written
+     */
+    @RequestMapping(value = "/meterreadings",
+        method = RequestMethod.GET,
+        produces = MediaTypes.APPLICATION_NDJSON_VALUE)
+    public void exportMeterReadings(@RequestParam(required = false) String profileName, HttpServletResponse response) throws IOException {
+        log.debug("REST request to export meterReadings : {}", profileName);
+        response.setContentType(MediaTypes.APPLICATION_NDJSON_VALUE);
+        OutputStream out = response.getOutputStream();
+        try (CloseableIterator<MeterReading> meterReadings = meterReadingRepository.stream(profileName)) {
+            while (meterReadings.hasNext()) {
+                writeLine(out, meterReadings.next());
+            }
+        }
+        out.flush();
     }
     
     /**
      * GET  /meterReadings/:profilename/:connectionid : get the meter reading by connection.
      *
      * @param connection the id of the meter reading to retrieve
-     * @return the ResponseEntity with status 200 (OK) and with body the MeterReading, or with status 404 (Not Found)
+     * @param year the year of the readings, the current year if not given
+     * @return the ResponseEntity with status 200 (OK) and with body the MeterReading and its ETag, with status 304 (Not Modified)
+     * if the ETag is sent in If-None-Match and still current, or with status 404 (Not Found)
      */
     @RequestMapping(value = "/meterreadings/{profilename}/{connectionid}",
         method = RequestMethod.GET,
         produces = MediaType.APPLICATION_JSON_VALUE)
-    public ResponseEntity<MeterReading> getProfile(@PathVariable(name="profilename") String profileName, @PathVariable(name="connectionid") String connectionId) {
-        log.debug(String.format("REST request to get profile : {} %s %s", profileName, connectionId));
-        MeterReading meterReading = meterReadingRepository.findOne(new Connection(profileName, connectionId));
-        return Optional.ofNullable(meterReading)
+    public ResponseEntity<byte[]> getProfile(@PathVariable(name="profilename") String profileName, @PathVariable(name="connectionid") String connectionId,
+            @RequestParam(required = false) Integer year) {
+        log.debug(String.format("REST request to get profile : {} %s %s %s", profileName, connectionId, year));
+        Connection connection = new Connection(profileName, connectionId, null == year ? Year.now().getValue() : year);
+        return responseCacheService.getMeterReading(connection, () -> Optional.ofNullable(meterReadingRepository.findOne(connection))
             .map(result -> new ResponseEntity<>(
                 result,
                 HttpStatus.OK))
-            .orElse(new ResponseEntity<>(HttpStatus.NOT_FOUND));
+            .orElse(new ResponseEntity<>(HttpStatus.NOT_FOUND)));
     }
     
     /**
-     * DELETE  /meterreadings : delete the meterReadings.
+     * GET  /meterReadings/:profilename/:connectionid/years : get the meter readings of a connection over a range of years.
+     *
+     * @param profileName the name of the profile
+     * @param connectionId the id of the connection
+     * @param fromYear first year included, optional
+     * @param toYear last year included, optional
+     * @return the ResponseEntity with status 200 (OK) and the MeterReadings in year order in body
+     */
+    @RequestMapping(value = "/meterreadings/{profilename}/{connectionid}/years",
+        method = RequestMethod.GET,
+        produces = MediaType.APPLICATION_JSON_VALUE)
+    public List<MeterReading> getMeterReadingYears(@PathVariable(name="profilename") String profileName, @PathVariable(name="connectionid") String connectionId,
+            @RequestParam(required = false) Integer fromYear, @RequestParam(required = false) Integer toYear) {
+        log.debug("REST request to get meterReadings of {} {} from {} to {}", profileName, connectionId, fromYear, toYear);
+        return meterReadingRepository.findYears(profileName, connectionId, fromYear, toYear);
+    }
+    
+    /**
+     * DELETE  /meterreadings : delete the meterReadings of a connection in a year, the current year if the year is not given.
      *
      * @param name the name of the meterReadings to delete
      * @return the ResponseEntity with status 200 (OK)
@@ -105,7 +377,60 @@ public class MeterReadingResource {
         produces = MediaType.APPLICATION_JSON_VALUE)
     public ResponseEntity<Void> deleteMeterReading(@RequestBody Connection connection) {
         log.debug("REST request to delete meterReadings : {}", connection.toString());
-        meterReadingRepository.delete(connection);
+        if (null == connection.getYear()) {
+            connection.setYear(Year.now().getValue());
+        }
+        // also drops a journaled meterReading of the connection, which would be written after the delete otherwise
+        bulkMeterReadingService.delete(Collections.singletonList(connection));
         return ResponseEntity.ok().headers(HeaderUtil.createEntityDeletionAlert("meterReading", connection.toString())).build();
     }
+    
+    /**
+     * POST  /meterreadings/fetch : get the meterReadings of many connections, read in $in chunks.
+     *
+     * @param connections the connections, the year of each defaults to the current year
+     * @return the ResponseEntity with status 200 (OK) and in body a result per connection in request order,
+     * SUCCESS with its meterReading or NOT FOUND
+     */
+    @RequestMapping(value = "/meterreadings/fetch",
+        method = RequestMethod.POST,
+        produces = MediaType.APPLICATION_JSON_VALUE)
+    public List<FetchedMeterReading> fetchMeterReadings(@RequestBody List<Connection> connections) {
+        log.debug("REST request to fetch the meterReadings of {} connections", connections.size());
+        return bulkMeterReadingService.fetch(connections);
+    }
+    
+    /**
+     * DELETE  /meterreadings/bulk : delete the meterReadings of many connections, or of every connection of a profile,
+     * in $in deletes.
+     *
+     * @param connections the connections, the year of each defaults to the current year
+     * @param profileName the profile whose meterReadings are all deleted, instead of the connections
+     * @return the ResponseEntity with status 200 (OK) and in body a status per connection, SUCCESS or NOT FOUND,
+     * or with status 400 (Bad Request) unless exactly one of the connections and the profileName is given
+     */
+    @RequestMapping(value = "/meterreadings/bulk",
+        method = RequestMethod.DELETE,
+        produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<List<MeterReadingStatus>> deleteMeterReadings(@RequestBody(required = false) List<Connection> connections,
+            @RequestParam(required = false) String profileName) {
+        log.debug("REST request to delete meterReadings of {} connections or of profile {}", null == connections ? 0 : connections.size(), profileName);
+        if ((null == connections) == (null == profileName)) {
+            return ResponseEntity.badRequest()
+                .headers(HeaderUtil.createFailureAlert("meterReading", "Either connections or a profileName is needed")).body(null);
+        }
+        List<MeterReadingStatus> statuses;
+        if (null != profileName) {
+            statuses = new ArrayList<>();
+            bulkMeterReadingService.deleteProfile(profileName, statuses::add);
+        } else {
+            statuses = bulkMeterReadingService.delete(connections);
+        }
+        return ResponseEntity.ok().headers(HeaderUtil.createEntityDeletionAlert("meterReading", statuses.size() + " connections")).body(statuses);
+    }
+    
+    private void writeLine(OutputStream out, Object value) throws IOException {
+        out.write(objectMapper.writeValueAsBytes(value));
+        out.write('\n');
+    }
 }
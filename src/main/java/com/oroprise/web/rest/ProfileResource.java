@@ -3,17 +3,28 @@ package com.oroprise.web.rest;
 import static java.util.stream.Collectors.groupingBy;
 import static java.util.stream.Collectors.mapping;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.servlet.http.HttpServletResponse;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Sort.Direction;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
@@ -21,13 +32,23 @@ import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.util.UriComponentsBuilder;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.oroprise.bo.Fraction;
 import com.oroprise.bo.Month;
 import com.oroprise.bo.Profile;
 import com.oroprise.repository.ProfileRepository;
+import com.oroprise.service.BulkMeterReadingService;
+import com.oroprise.service.ImportProfileService;
+import com.oroprise.service.ProfileCacheService;
+import com.oroprise.service.ResponseCacheService;
 import com.oroprise.util.HeaderUtil;
+import com.oroprise.util.MediaTypes;
+import com.oroprise.util.PaginationUtil;
+import com.oroprise.vo.ProfileStatus;
 import com.oroprise.vo.ProfileVo;
 
 import lombok.extern.slf4j.Slf4j;
@@ -37,9 +58,26 @@ import lombok.extern.slf4j.Slf4j;
 @RequestMapping(value = "/api")
 public class ProfileResource {
 
+	private static final Sort NAME_ORDER = new Sort(Direction.ASC, "name");
+
 	@Autowired
 	private ProfileRepository profileRepository;
 
+	@Autowired
+	private ProfileCacheService profileCacheService;
+
+	@Autowired
+	private ImportProfileService importProfileService;
+
+	@Autowired
+	private ResponseCacheService responseCacheService;
+
+	@Autowired
+	private BulkMeterReadingService bulkMeterReadingService;
+
+	@Autowired
+	private ObjectMapper objectMapper;
+
 	/**
      * POST  /profiles : Create new profiles.
      *
@@ -79,6 +117,8 @@ public class ProfileResource {
 
 		// save generated profiles
 		result = profileRepository.save(profileListToSave);
+		result.forEach(profileCacheService::put);
+		responseCacheService.invalidateProfiles(groupedVos.keySet());
 
 		log.debug("Exit createResource");
 
@@ -87,50 +127,124 @@ public class ProfileResource {
 	}
 	
 	/**
-     * GET  /profiles : get all the profiles.
+     * POST  /profiles/import : Create or replace profiles in bulk, every profile is validated and reported on its own
+     *
+     * @param profileVos list of profileVos to import
+     * @return the ResponseEntity with status 201 (Created) and with body the status of every profile
+     * @throws URISyntaxException if the Location URI syntax is incorrect
+     */
+	@RequestMapping(value = "/profiles/import", method = RequestMethod.POST, produces = MediaType.APPLICATION_JSON_VALUE)
+	public ResponseEntity<List<ProfileStatus>> importProfiles(@RequestBody List<ProfileVo> profileVos)
+			throws URISyntaxException {
+		log.debug("Enter importProfiles");
+		long start = System.currentTimeMillis();
+
+		List<ProfileStatus> result = importProfileService.execute(profileVos);
+
+		long failures = result.stream().filter(ProfileStatus::isFailure).count();
+		log.debug("Exit importProfiles");
+
+		return ResponseEntity.created(new URI("/api/profiles/"))
+				.headers(HeaderUtil.createIngestSummary(profileVos.size(), result.size(), failures, System.currentTimeMillis() - start))
+				.body(result);
+	}
+	
+	/**
+     * GET  /profiles : get a page of the profiles, in name order.
+     *
+     * Pages are not numbered anymore. A page above 0 without after is answered 400 (Bad Request) instead of serving the
+     * first page again, and without size only the first 20 profiles are returned, export them all as newline delimited
+     * JSON instead.
      *
-     * @return the ResponseEntity with status 200 (OK) and the list of profiles in body
+     * @param pageable only the page size is used, pages are addressed by the name of the previous page
+     * @param after name of the last profile of the previous page, optional
+     * @return the ResponseEntity with status 200 (OK) and the list of profiles in body and its ETag, with a "next" Link header if there may be more,
+     * or with status 304 (Not Modified) if the ETag is sent in If-None-Match and still current, or with status 400 (Bad Request) if a page number is requested
      */
     @RequestMapping(value = "/profiles",
         method = RequestMethod.GET,
         produces = MediaType.APPLICATION_JSON_VALUE)
-    public List<Profile> getAllProfiles() {
-        log.debug("REST request to get all profiles");
-        List<Profile> profiles = profileRepository.findAll();
-        return profiles;
+    public ResponseEntity<byte[]> getAllProfiles(Pageable pageable, @RequestParam(required = false) String after) {
+        log.debug("REST request to get a page of profiles");
+        if (pageable.getPageNumber() > 0 && null == after) {
+            return ResponseEntity.badRequest()
+                .headers(HeaderUtil.createFailureAlert("profile", "Pages are not numbered, follow the next Link")).body(null);
+        }
+        return responseCacheService.getProfilePage(pageable.getPageSize(), after, () -> {
+            Pageable firstPage = new PageRequest(0, pageable.getPageSize(), NAME_ORDER);
+            List<Profile> profiles = null == after ? profileRepository.findAllBy(firstPage)
+                    : profileRepository.findByNameGreaterThan(after, firstPage);
+
+            HttpHeaders headers = new HttpHeaders();
+            if (profiles.size() == pageable.getPageSize()) {
+                headers = PaginationUtil.generateNextPageHttpHeaders(UriComponentsBuilder.fromUriString("/api/profiles")
+                        .queryParam("size", pageable.getPageSize())
+                        .queryParam("after", profiles.get(profiles.size() - 1).getName()));
+            }
+            return new ResponseEntity<>(profiles, headers, HttpStatus.OK);
+        });
+    }
+    
+    /**
+     * GET  /profiles : export all the profiles as newline delimited JSON, streamed from a database cursor.
+     *
+     * @param response status 200 (OK) with one profile per line
+     * @throws IOException if the response could not be written
+     */
+    @RequestMapping(value = "/profiles",
+        method = RequestMethod.GET,
+        produces = MediaTypes.APPLICATION_NDJSON_VALUE)
+    public void exportProfiles(HttpServletResponse response) throws IOException {
+        log.debug("REST request to export profiles");
+        response.setContentType(MediaTypes.APPLICATION_NDJSON_VALUE);
+        OutputStream out = response.getOutputStream();
+        try (Stream<Profile> profiles = profileRepository.streamAllBy(NAME_ORDER)) {
+            for (Profile profile : (Iterable<Profile>) profiles::iterator) {
+                out.write(objectMapper.writeValueAsBytes(profile));
+                out.write('\n');
+            }
+        }
+        out.flush();
     }
     
     /**
      * GET  /profiles/:id : get the "name" profile.
      *
      * @param name the id of the profile to retrieve
-     * @return the ResponseEntity with status 200 (OK) and with body the profile, or with status 404 (Not Found)
+     * @return the ResponseEntity with status 200 (OK) and with body the profile and its ETag, with status 304 (Not Modified)
+     * if the ETag is sent in If-None-Match and still current, or with status 404 (Not Found)
      */
     @RequestMapping(value = "/profiles/{name}",
         method = RequestMethod.GET,
         produces = MediaType.APPLICATION_JSON_VALUE)
-    public ResponseEntity<Profile> getProfile(@PathVariable String name) {
+    public ResponseEntity<byte[]> getProfile(@PathVariable String name) {
         log.debug("REST request to get profile : {}", name);
-        Profile profile = profileRepository.findOne(name);
-        return Optional.ofNullable(profile)
+        return responseCacheService.getProfile(name, () -> Optional.ofNullable(profileCacheService.get(name))
             .map(result -> new ResponseEntity<>(
                 result,
                 HttpStatus.OK))
-            .orElse(new ResponseEntity<>(HttpStatus.NOT_FOUND));
+            .orElse(new ResponseEntity<>(HttpStatus.NOT_FOUND)));
     }
     
     /**
      * DELETE  /profiles/:name : delete the "name" profile.
      *
      * @param name the name of the profile to delete
+     * @param cascade also delete the meterReadings of every connection of the profile, before the profile
      * @return the ResponseEntity with status 200 (OK)
      */
     @RequestMapping(value = "/profiles/{name}",
         method = RequestMethod.DELETE,
         produces = MediaType.APPLICATION_JSON_VALUE)
-    public ResponseEntity<Void> deleteProfile(@PathVariable String name) {
-        log.debug("REST request to delete Profile : {}", name);
+    public ResponseEntity<Void> deleteProfile(@PathVariable String name, @RequestParam(defaultValue = "false") boolean cascade) {
+        log.debug("REST request to delete Profile : {}, cascade {}", name, cascade);
+        if (cascade) {
+            long deleted = bulkMeterReadingService.deleteProfile(name, status -> {});
+            log.info("Deleted {} meterReadings of profile {}", deleted, name);
+        }
         profileRepository.delete(name);
+        profileCacheService.invalidate(name);
+        responseCacheService.invalidateProfiles(Collections.singletonList(name));
         return ResponseEntity.ok().headers(HeaderUtil.createEntityDeletionAlert("profile", name)).build();
     }
 }
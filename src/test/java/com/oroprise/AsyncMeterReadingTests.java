@@ -0,0 +1,172 @@
+package com.oroprise;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.PostConstruct;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.context.web.WebAppConfiguration;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.oroprise.bo.Fraction;
+import com.oroprise.bo.Month;
+import com.oroprise.bo.MonthlyReadings;
+import com.oroprise.bo.Profile;
+import com.oroprise.config.ApplicationProperties;
+import com.oroprise.repository.ConsumptionRollupRepository;
+import com.oroprise.repository.MeterReadingRepository;
+import com.oroprise.repository.ProfileRepository;
+import com.oroprise.service.AsyncCreateMeterReadingService;
+import com.oroprise.service.CreateMeterReadingService;
+import com.oroprise.service.ProfileCacheService;
+import com.oroprise.service.ResponseCacheService;
+import com.oroprise.vo.MeterReadingStatus;
+import com.oroprise.vo.MeterReadingVo;
+import com.oroprise.web.rest.AsyncMeterReadingResource;
+import com.oroprise.web.rest.MeterReadingResource;
+
+/**
+ * Runs on its own context with the async ingest mode enabled. The mode needs the mongo engine, on the memory engine the
+ * tests are skipped before the context is loaded.
+ *
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest
+@WebAppConfiguration
+@TestPropertySource(locations = "classpath:application-test.properties", properties = "oroprise.async.enabled=true")
+@DirtiesContext
+public class AsyncMeterReadingTests {
+
+	private MockMvc restMeterReadingMockMVC;
+
+	private MockMvc asyncMeterReadingMockMVC;
+
+	@Autowired
+	private MappingJackson2HttpMessageConverter jacksonMessageConverter;
+
+	@Autowired
+	private ProfileRepository profileRepository;
+
+	@Autowired
+	private MeterReadingRepository meterReadingRepository;
+
+	@Autowired
+	private ConsumptionRollupRepository consumptionRollupRepository;
+
+	@Autowired
+	private ProfileCacheService profileCacheService;
+
+	@Autowired
+	private ResponseCacheService responseCacheService;
+
+	@Autowired
+	private CreateMeterReadingService createMeterReadingService;
+
+	@Autowired
+	private AsyncCreateMeterReadingService asyncCreateMeterReadingService;
+
+	@Autowired
+	private ObjectMapper objectMapper;
+
+	@BeforeClass
+	public static void mongoEngineOnly() {
+		Assume.assumeFalse(ApplicationProperties.Engine.MEMORY.name().equalsIgnoreCase(System.getProperty("oroprise.storage.engine")));
+	}
+
+	@PostConstruct
+	public void setup() {
+		MeterReadingResource meterReadingResource = new MeterReadingResource();
+		ReflectionTestUtils.setField(meterReadingResource, "createMeterReadingService", createMeterReadingService);
+		this.restMeterReadingMockMVC = MockMvcBuilders.standaloneSetup(meterReadingResource)
+				.setMessageConverters(jacksonMessageConverter).build();
+
+		AsyncMeterReadingResource asyncMeterReadingResource = new AsyncMeterReadingResource();
+		ReflectionTestUtils.setField(asyncMeterReadingResource, "asyncCreateMeterReadingService", asyncCreateMeterReadingService);
+		this.asyncMeterReadingMockMVC = MockMvcBuilders.standaloneSetup(asyncMeterReadingResource)
+				.setMessageConverters(jacksonMessageConverter).build();
+	}
+
+	@Before
+	public void beforeEachTest() {
+		clear();
+	}
+
+	/**
+	 * Covers the statuses of the async ingest against the ones of the synchronous ingest for the same uploads, a new
+	 * connection, one out of range, one with a missing month and one of an unknown profile, then the same upload again
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void asyncMeterReadingStatusTest() throws Exception {
+		profileRepository.save(new Profile.ProfileBuilder("A").addFraction(new Fraction(Month.JAN, 1f)).build());
+		profileRepository.delete("B");
+
+		List<MeterReadingVo> vos = new ArrayList<>(TestUtil.meterReadingVos("A", "0001", 2016, 100));
+		List<MeterReadingVo> outOfRange = TestUtil.meterReadingVos("A", "0002", 2016, 200);
+		outOfRange.get(Month.JAN.ordinal()).setReading(100);
+		vos.addAll(outOfRange);
+		vos.addAll(TestUtil.meterReadingVos("A", "0003", 2016, 100).subList(0, MonthlyReadings.MONTHS - 1));
+		vos.addAll(TestUtil.meterReadingVos("B", "0001", 2016, 100));
+
+		List<Map<String, Object>> sync = new ArrayList<>();
+		for (int upload = 0; upload < 2; upload++) {
+			MvcResult result = restMeterReadingMockMVC.perform(post("/api/meterreadings")
+					.contentType(TestUtil.APPLICATION_JSON_UTF8).content(TestUtil.convertObjectToJsonBytes(vos)))
+					.andExpect(status().isCreated()).andReturn();
+			sync.addAll(statuses(result));
+		}
+
+		clear();
+		List<Map<String, Object>> async = new ArrayList<>();
+		for (int upload = 0; upload < 2; upload++) {
+			MvcResult started = asyncMeterReadingMockMVC.perform(post("/api/meterreadings")
+					.contentType(TestUtil.APPLICATION_JSON_UTF8).content(TestUtil.convertObjectToJsonBytes(vos)))
+					.andExpect(request().asyncStarted()).andReturn();
+			MvcResult result = asyncMeterReadingMockMVC.perform(asyncDispatch(started)).andExpect(status().isCreated())
+					.andReturn();
+			async.addAll(statuses(result));
+			assertThat(result.getResponse().getHeader("X-eventServiceApp-ingest-failures")).isEqualTo("3");
+		}
+
+		assertThat(sync).extracting(status -> status.get("status")).contains(MeterReadingStatus.SUCCESS,
+				MeterReadingStatus.UNCHANGED, "FAILURE, Profile NOT FOUND");
+		// the synchronous ingest reports failures as soon as they are decided, the order may differ
+		assertThat(async).hasSameSizeAs(sync).hasSameElementsAs(sync);
+	}
+
+	private List<Map<String, Object>> statuses(MvcResult result) throws Exception {
+		return objectMapper.readValue(result.getResponse().getContentAsString(), new TypeReference<List<Map<String, Object>>>() {
+		});
+	}
+
+	private void clear() {
+		meterReadingRepository.deleteAll();
+		consumptionRollupRepository.deleteAll();
+		profileCacheService.invalidateAll();
+		responseCacheService.invalidateAll();
+	}
+}
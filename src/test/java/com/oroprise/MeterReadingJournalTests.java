@@ -0,0 +1,170 @@
+package com.oroprise;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.ExternalResource;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.context.web.WebAppConfiguration;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.FileSystemUtils;
+
+import com.codahale.metrics.MetricRegistry;
+import com.oroprise.bo.Connection;
+import com.oroprise.bo.Fraction;
+import com.oroprise.bo.MeterReading;
+import com.oroprise.bo.Month;
+import com.oroprise.bo.Profile;
+import com.oroprise.config.ApplicationProperties;
+import com.oroprise.repository.MeterReadingJournal;
+import com.oroprise.repository.MeterReadingRepository;
+import com.oroprise.repository.ProfileRepository;
+import com.oroprise.service.BulkMeterReadingService;
+import com.oroprise.service.CreateMeterReadingService;
+import com.oroprise.service.JournalFlushService;
+import com.oroprise.vo.MeterReadingStatus;
+
+/**
+ * Runs on its own context with the write-behind journal enabled. The journal directory is created with a journal left
+ * over before the context starts, and deleted once the context is closed.
+ *
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest
+@WebAppConfiguration
+@TestPropertySource(locations = "classpath:application-test.properties", properties = {
+		"oroprise.journal.enabled=true",
+		"oroprise.journal.directory=" + MeterReadingJournalTests.DIRECTORY,
+		"oroprise.journal.flush-interval-millis=3600000" })
+@DirtiesContext
+public class MeterReadingJournalTests {
+
+	static final String DIRECTORY = "target/meter-reading-journal";
+	private static final String SMALL_SEGMENTS_DIRECTORY = "target/meter-reading-journal-small-segments";
+
+	@ClassRule
+	public static final ExternalResource journalDirectory = new ExternalResource() {
+		@Override
+		protected void before() throws Throwable {
+			FileSystemUtils.deleteRecursively(new File(DIRECTORY));
+			MeterReadingJournal leftOver = openJournal(DIRECTORY, 64 * 1024 * 1024);
+			MeterReading meterReading = new MeterReading();
+			meterReading.setConnection(new Connection("J", "0001", 2015));
+			meterReading.setMeterRecords(TestUtil.meterRecords(100));
+			leftOver.append(Arrays.asList(meterReading));
+			leftOver.close();
+		}
+
+		@Override
+		protected void after() {
+			FileSystemUtils.deleteRecursively(new File(DIRECTORY));
+			FileSystemUtils.deleteRecursively(new File(SMALL_SEGMENTS_DIRECTORY));
+		}
+	};
+
+	@Autowired
+	private ProfileRepository profileRepository;
+
+	@Autowired
+	private MeterReadingRepository meterReadingRepository;
+
+	@Autowired
+	private CreateMeterReadingService createMeterReadingService;
+
+	@Autowired
+	private BulkMeterReadingService bulkMeterReadingService;
+
+	@Autowired
+	private MeterReadingJournal meterReadingJournal;
+
+	@Autowired
+	private JournalFlushService journalFlushService;
+
+	/**
+	 * Covers the replay of the journal left over, an upload acknowledged from the journal and validated against the
+	 * replayed reading, and a delete of a journaled reading that is not written afterwards
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void meterReadingJournalTest() throws Exception {
+		Profile profile = new Profile.ProfileBuilder("J").addFraction(new Fraction(Month.JAN, 1f)).build();
+		profileRepository.save(profile);
+
+		assertThat(createMeterReadingService.execute(TestUtil.meterReadingVos("J", "0001", 2016, 300))).extracting(MeterReadingStatus::getStatus)
+				.containsExactly(MeterReadingStatus.SUCCESS);
+		assertThat(createMeterReadingService.execute(TestUtil.meterReadingVos("J", "0002", 2016, 300))).extracting(MeterReadingStatus::getStatus)
+				.containsExactly(MeterReadingStatus.SUCCESS);
+		assertThat(bulkMeterReadingService.delete(Arrays.asList(new Connection("J", "0002", 2016))))
+				.extracting(MeterReadingStatus::getStatus).containsExactly(MeterReadingStatus.SUCCESS);
+
+		journalFlushService.flush();
+		assertThat(meterReadingJournal.size()).isEqualTo(0);
+		assertThat(meterReadingRepository.findOne(new Connection("J", "0001", 2015)).getYearlyConsumption()).isEqualTo(100);
+		assertThat(meterReadingRepository.findOne(new Connection("J", "0001", 2016)).getBaseline()).isEqualTo(100);
+		assertThat(meterReadingRepository.findOne(new Connection("J", "0002", 2016))).isNull();
+		// only the active segment is left
+		try (Stream<Path> segments = Files.list(Paths.get(DIRECTORY))) {
+			assertThat(segments.count()).isEqualTo(1);
+		}
+
+		meterReadingRepository.bulkDelete(Arrays.asList(new Connection("J", "0001", 2015), new Connection("J", "0001", 2016)));
+		profileRepository.delete("J");
+	}
+
+	/**
+	 * Covers the replay of a record larger than the segment size, on a journal outside of the context
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void meterReadingJournalLargeRecordTest() throws Exception {
+		FileSystemUtils.deleteRecursively(new File(SMALL_SEGMENTS_DIRECTORY));
+		List<MeterReading> meterReadings = new ArrayList<>();
+		for (int i = 0; i < 100; i++) {
+			MeterReading meterReading = new MeterReading();
+			meterReading.setConnection(new Connection("J", String.format("%04d", i), 2016));
+			meterReading.setMeterRecords(TestUtil.meterRecords(i));
+			meterReadings.add(meterReading);
+		}
+
+		MeterReadingJournal journal = openJournal(SMALL_SEGMENTS_DIRECTORY, 1024);
+		journal.append(meterReadings);
+		journal.close();
+
+		MeterReadingJournal replayed = openJournal(SMALL_SEGMENTS_DIRECTORY, 1024);
+		assertThat(replayed.size()).isEqualTo(100);
+		assertThat(replayed.findPending(Arrays.asList(new Connection("J", "0099", 2016))).values())
+				.extracting(MeterReading::getYearlyConsumption).containsExactly(99L);
+		replayed.close();
+	}
+
+	private static MeterReadingJournal openJournal(String directory, long segmentSize) throws IOException {
+		ApplicationProperties applicationProperties = new ApplicationProperties();
+		applicationProperties.getJournal().setEnabled(true);
+		applicationProperties.getJournal().setDirectory(directory);
+		applicationProperties.getJournal().setSegmentSize(segmentSize);
+
+		MeterReadingJournal journal = new MeterReadingJournal();
+		ReflectionTestUtils.setField(journal, "applicationProperties", applicationProperties);
+		ReflectionTestUtils.setField(journal, "metricRegistry", new MetricRegistry());
+		journal.init();
+		return journal;
+	}
+}
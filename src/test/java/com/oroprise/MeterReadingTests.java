@@ -1,25 +1,52 @@
 package com.oroprise;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Year;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import javax.annotation.PostConstruct;
 
+import org.junit.Assume;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.AdditionalAnswers;
+import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.mongodb.MongoDbFactory;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.convert.CustomConversions;
+import org.springframework.data.mongodb.core.convert.DbRefResolver;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
 import org.springframework.data.web.PageableHandlerMethodArgumentResolver;
+import org.springframework.http.converter.ByteArrayHttpMessageConverter;
 import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
 import org.springframework.test.context.TestPropertySource;
 import org.springframework.test.context.junit4.SpringRunner;
@@ -28,15 +55,41 @@ import org.springframework.test.util.ReflectionTestUtils;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 
+import com.codahale.metrics.MetricRegistry;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBCollection;
+import com.mongodb.DBObject;
 import com.oroprise.bo.Connection;
 import com.oroprise.bo.Fraction;
 import com.oroprise.bo.MeterReading;
 import com.oroprise.bo.MeterRecord;
 import com.oroprise.bo.Month;
+import com.oroprise.bo.MonthlyReadings;
 import com.oroprise.bo.Profile;
+import com.oroprise.bo.ConsumptionRollup;
+import com.oroprise.config.ApplicationProperties;
+import com.oroprise.repository.ConsumptionRollupRepository;
 import com.oroprise.repository.MeterReadingRepository;
+import com.oroprise.repository.MeterReadingSchema;
+import com.oroprise.repository.MongoMeterReadingRepositoryImpl;
 import com.oroprise.repository.ProfileRepository;
+import com.oroprise.repository.memory.InMemoryConsumptionRollupRepository;
+import com.oroprise.repository.memory.InMemoryMeterReadingRepository;
+import com.oroprise.repository.memory.InMemoryProfileRepository;
+import com.oroprise.repository.memory.InMemorySnapshot;
+import com.oroprise.service.ProfileCacheService;
+import com.oroprise.service.ResponseCacheService;
+import com.oroprise.service.BulkMeterReadingService;
+import com.oroprise.service.ConsumptionIndexService;
+import com.oroprise.service.ConsumptionRollupService;
 import com.oroprise.service.CreateMeterReadingService;
+import com.oroprise.service.IngestJobService;
+import com.oroprise.service.StreamMeterReadingService;
+import com.oroprise.util.BinaryReadingsEncoder;
+import com.oroprise.util.MediaTypes;
+import com.oroprise.vo.IndexedConsumptionVo;
+import com.oroprise.vo.MeterReadingStatus;
 import com.oroprise.vo.MeterReadingVo;
 import com.oroprise.web.rest.MeterReadingResource;
 
@@ -60,24 +113,72 @@ public class MeterReadingTests {
 	@Autowired
 	private MeterReadingRepository meterReadingRepository;
 
+	@Autowired
+	private ProfileCacheService profileCacheService;
+
 	@Autowired
 	private CreateMeterReadingService createMeterReadingService;
 
+	@Autowired
+	private StreamMeterReadingService streamMeterReadingService;
+
+	@Autowired
+	private ObjectMapper objectMapper;
+
+	@Autowired
+	private IngestJobService ingestJobService;
+
+	@Autowired
+	private ConsumptionRollupService consumptionRollupService;
+
+	@Autowired
+	private ConsumptionRollupRepository consumptionRollupRepository;
+
+	@Autowired
+	private ApplicationProperties applicationProperties;
+
+	@Autowired
+	private ConsumptionIndexService consumptionIndexService;
+
+	@Autowired
+	private ResponseCacheService responseCacheService;
+
+	@Autowired
+	private BulkMeterReadingService bulkMeterReadingService;
+
+	@Autowired
+	private MetricRegistry metricRegistry;
+
+	/** mongo engine only */
+	@Autowired(required = false)
+	private MongoTemplate mongoTemplate;
+
+	@Autowired(required = false)
+	private MongoDbFactory mongoDbFactory;
+
 	@PostConstruct
 	public void setup() {
 		MockitoAnnotations.initMocks(this);
 		MeterReadingResource meterReadingResource = new MeterReadingResource();
-		ReflectionTestUtils.setField(createMeterReadingService, "profileRepository", profileRepository);
 		ReflectionTestUtils.setField(meterReadingResource, "meterReadingRepository", meterReadingRepository);
 		ReflectionTestUtils.setField(meterReadingResource, "createMeterReadingService", createMeterReadingService);
+		ReflectionTestUtils.setField(meterReadingResource, "streamMeterReadingService", streamMeterReadingService);
+		ReflectionTestUtils.setField(meterReadingResource, "objectMapper", objectMapper);
+		ReflectionTestUtils.setField(meterReadingResource, "ingestJobService", ingestJobService);
+		ReflectionTestUtils.setField(meterReadingResource, "responseCacheService", responseCacheService);
+		ReflectionTestUtils.setField(meterReadingResource, "bulkMeterReadingService", bulkMeterReadingService);
 		this.restMeterReadingMockMVC = MockMvcBuilders.standaloneSetup(meterReadingResource)
-				.setCustomArgumentResolvers(pageableArgumentResolver).setMessageConverters(jacksonMessageConverter)
+				.setCustomArgumentResolvers(pageableArgumentResolver)
+				.setMessageConverters(new ByteArrayHttpMessageConverter(), jacksonMessageConverter)
 				.build();
 	}
 
 	@Before
 	public void beforeEachTest() {
 		meterReadingRepository.deleteAll();
+		consumptionRollupRepository.deleteAll();
+		profileCacheService.invalidateAll();
+		responseCacheService.invalidateAll();
 	}
 
 	/**
@@ -91,17 +192,7 @@ public class MeterReadingTests {
 		Profile profile = new Profile.ProfileBuilder("A").addFraction(new Fraction(Month.JAN, 1f)).build();
 		profileRepository.save(profile);
 
-		List<MeterReadingVo> vos = new ArrayList<>();
-		int reading = 10;
-		for (Month month : Month.values()) {
-			MeterReadingVo vo = new MeterReadingVo();
-			vo.setMonth(month);
-			vo.setConnectionId("0001");
-			vo.setProfileName("A");
-			vo.setReading(reading);
-			vos.add(vo);
-			reading += 10;
-		}
+		List<MeterReadingVo> vos = TestUtil.meterReadingVos("A", "0001", null, 10, 20, 30, 40, 50, 60, 70, 80, 90, 100, 110, 120);
 
 		int databaseSizeBeforeCreate = meterReadingRepository.findAll().size();
 
@@ -119,14 +210,8 @@ public class MeterReadingTests {
 		profileRepository.save(profile);
 		
 		MeterReading mr = new MeterReading();
-		mr.setConnection(new Connection("A", "0001"));
-		List<MeterRecord> records = new ArrayList<>();
-		int reading = 10;
-		for (Month month : Month.values()) {
-			MeterRecord vo = new MeterRecord(month, reading);
-			records.add(vo);
-			reading += 10;
-		}
+		mr.setConnection(new Connection("A", "0001", Year.now().getValue()));
+		mr.setMeterRecords(TestUtil.meterRecords(10, 20, 30, 40, 50, 60, 70, 80, 90, 100, 110, 120));
 		
 		meterReadingRepository.save(mr);
 
@@ -137,4 +222,730 @@ public class MeterReadingTests {
 				.andExpect(jsonPath("$.connection.connectionId").value("0001"));
 	}
 
+	/**
+	 * Covers the keyset pages of the meterReadings, a page number without the previous connection is rejected
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void getAllMeterReadingsPaginated() throws Exception {
+		profileRepository.save(new Profile.ProfileBuilder("A").addFraction(new Fraction(Month.JAN, 1f)).build());
+		for (String connectionId : new String[] { "0001", "0002", "0003" }) {
+			MeterReading mr = new MeterReading();
+			mr.setConnection(new Connection("A", connectionId, 2016));
+			mr.setMeterRecords(TestUtil.meterRecords(10));
+			meterReadingRepository.save(mr);
+		}
+
+		restMeterReadingMockMVC.perform(get("/api/meterreadings?size=2")).andExpect(status().isOk())
+				.andExpect(jsonPath("$.length()").value(2))
+				.andExpect(header().string("Link", containsString("afterConnectionId=0002")));
+
+		restMeterReadingMockMVC.perform(get("/api/meterreadings?size=2&afterProfileName=A&afterConnectionId=0002&afterYear=2016"))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.length()").value(1))
+				.andExpect(jsonPath("$[0].connection.connectionId").value("0003"));
+
+		restMeterReadingMockMVC.perform(get("/api/meterreadings?size=2&page=1")).andExpect(status().isBadRequest());
+	}
+
+	/**
+	 * Covers streamed MeterReading creation for a connection with an unknown profile
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void meterReadingStreamProfileNotFoundTest() throws Exception {
+		profileRepository.deleteAll();
+
+		String body = TestUtil.convertObjectsToNdjson(TestUtil.meterReadingVos("A", "0001", null, 10));
+
+		restMeterReadingMockMVC.perform(post("/api/meterreadings").contentType(MediaTypes.APPLICATION_NDJSON_VALUE)
+				.content(body)).andExpect(status().isCreated())
+				.andExpect(content().string(containsString("Profile NOT FOUND")));
+
+		assertThat(meterReadingRepository.findAll()).isEmpty();
+	}
+
+	/**
+	 * Covers a streamed upload with rows that are not meterReadings and a body cut off in the middle of a row
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void meterReadingStreamInvalidRowTest() throws Exception {
+		profileRepository.deleteAll();
+
+		StringBuilder body = new StringBuilder(TestUtil.convertObjectsToNdjson(TestUtil.meterReadingVos("A", "0001", null, 10)));
+		body.append("{\"profileName\":\"A\",\"connectionId\":\"0002\",\"reading\":10}\n");
+		body.append("{\"profileName\":\"A\",\"connectionId\":\"0003\",\"month\":\"FOO\",\"reading\":10}\n");
+		body.append("{\"profileName\":\"A\",\"connectionId\":");
+
+		String response = restMeterReadingMockMVC.perform(post("/api/meterreadings")
+				.contentType(MediaTypes.APPLICATION_NDJSON_VALUE).content(body.toString())).andExpect(status().isCreated())
+				.andReturn().getResponse().getContentAsString();
+
+		String[] lines = response.split("\n");
+		assertThat(lines).hasSize(4);
+		assertThat(lines[0]).contains("\"connectionId\":\"0001\"").contains("Profile NOT FOUND");
+		assertThat(lines[1]).contains("\"connectionId\":\"0002\"").contains("Invalid row 13, month is missing");
+		assertThat(lines[2]).contains("\"connectionId\":\"0003\"").contains("Invalid row 14");
+		assertThat(lines[3]).contains(MeterReadingStatus.MALFORMED_UPLOAD);
+	}
+
+	/**
+	 * Covers queueing of an ingest job and an unknown job id
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void meterReadingJobTest() throws Exception {
+		profileRepository.deleteAll();
+
+		List<MeterReadingVo> vos = TestUtil.meterReadingVos("A", "0001", null, 10);
+
+		restMeterReadingMockMVC.perform(post("/api/meterreadings/jobs").contentType(TestUtil.APPLICATION_JSON_UTF8)
+				.content(TestUtil.convertObjectToJsonBytes(vos))).andExpect(status().isAccepted())
+				.andExpect(header().string("Location", containsString("/api/meterreadings/jobs/")))
+				.andExpect(jsonPath("$.rows").value(12));
+
+		restMeterReadingMockMVC.perform(get("/api/meterreadings/jobs/unknown")).andExpect(status().isNotFound());
+	}
+
+	/**
+	 * Covers the rollup update of a created and a re-uploaded connection
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void meterReadingRollupTest() throws Exception {
+		Profile profile = new Profile.ProfileBuilder("A").addFraction(new Fraction(Month.JAN, 1f)).build();
+		profileRepository.save(profile);
+
+		for (long reading : new long[] { 100, 300 }) {
+			List<MeterReadingVo> vos = TestUtil.meterReadingVos("A", "0001", null, reading);
+			restMeterReadingMockMVC.perform(post("/api/meterreadings").contentType(TestUtil.APPLICATION_JSON_UTF8)
+					.content(TestUtil.convertObjectToJsonBytes(vos))).andExpect(status().isCreated());
+		}
+
+		ConsumptionRollup rollup = consumptionRollupService.getRollup("A", Year.now().getValue(), Month.JAN);
+		assertThat(rollup.getConnections()).isEqualTo(1);
+		assertThat(rollup.getTotalConsumption()).isEqualTo(300);
+		assertThat(consumptionRollupService.getRollups("A", null)).hasSize(Month.values().length);
+	}
+
+	/**
+	 * Covers concurrent uploads of the same connection, its rollup keeps counting it once with the stored consumption
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void meterReadingConcurrentRollupTest() throws Exception {
+		profileRepository.save(new Profile.ProfileBuilder("A").addFraction(new Fraction(Month.JAN, 1f)).build());
+
+		ExecutorService uploads = Executors.newFixedThreadPool(4);
+		try {
+			List<Future<List<MeterReadingStatus>>> results = new ArrayList<>();
+			for (int upload = 0; upload < 200; upload++) {
+				List<MeterReadingVo> vos = TestUtil.meterReadingVos("A", "0001", 2016, 100 + upload);
+				results.add(uploads.submit(() -> createMeterReadingService.execute(vos)));
+			}
+			for (Future<List<MeterReadingStatus>> result : results) {
+				result.get();
+			}
+
+			// an upload waits for the lock of its connection
+			Future<List<MeterReadingStatus>> waiting;
+			try (ConsumptionRollupService.ConnectionLock lock = consumptionRollupService
+					.lock(Arrays.asList(new Connection("A", "0001", 2016)))) {
+				List<MeterReadingVo> vos = TestUtil.meterReadingVos("A", "0001", 2016, 1000);
+				waiting = uploads.submit(() -> createMeterReadingService.execute(vos));
+				Thread.sleep(500);
+				assertThat(waiting.isDone()).isFalse();
+			}
+			assertThat(waiting.get()).extracting("status").containsExactly(MeterReadingStatus.SUCCESS);
+		} finally {
+			uploads.shutdown();
+		}
+
+		MeterReading stored = meterReadingRepository.findOne(new Connection("A", "0001", 2016));
+		ConsumptionRollup rollup = consumptionRollupService.getRollup("A", 2016, Month.JAN);
+		assertThat(rollup.getConnections()).isEqualTo(1);
+		assertThat(rollup.getTotalConsumption()).isEqualTo(stored.getMeterRecords().get(0).getReading()).isEqualTo(1000);
+	}
+
+	/**
+	 * Covers the yearly consumption query
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void getConnectionConsumptions() throws Exception {
+		for (long yearlyConsumption : new long[] { 100, 200, 300 }) {
+			MeterReading mr = new MeterReading();
+			mr.setConnection(new Connection("A", "C" + yearlyConsumption, 2016));
+			mr.setMeterRecords(new ArrayList<>());
+			mr.getMeterRecords().add(new MeterRecord(Month.DEC, yearlyConsumption));
+			mr.setYearlyConsumption(yearlyConsumption);
+			meterReadingRepository.save(mr);
+		}
+
+		restMeterReadingMockMVC.perform(get("/api/meterreadings/consumptions?profileName=A&minYearlyConsumption=150"))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.length()").value(2))
+				.andExpect(jsonPath("$[0].connectionId").value("C200"))
+				.andExpect(jsonPath("$[1].yearlyConsumption").value(300));
+	}
+
+	/**
+	 * Covers the DEC reading of the previous year as baseline of the next year
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void meterReadingYearBaselineTest() throws Exception {
+		Profile profile = new Profile.ProfileBuilder("A").addFraction(new Fraction(Month.JAN, 1f)).build();
+		profileRepository.save(profile);
+
+		int year = 2015;
+		for (long reading : new long[] { 100, 300 }) {
+			List<MeterReadingVo> vos = TestUtil.meterReadingVos("A", "0001", year, reading);
+			restMeterReadingMockMVC.perform(post("/api/meterreadings").contentType(TestUtil.APPLICATION_JSON_UTF8)
+					.content(TestUtil.convertObjectToJsonBytes(vos))).andExpect(status().isCreated())
+					.andExpect(jsonPath("$[0].status").value("SUCCESS"));
+			year++;
+		}
+
+		MeterReading meterReading = meterReadingRepository.findOne(new Connection("A", "0001", 2016));
+		assertThat(meterReading.getBaseline()).isEqualTo(100);
+		assertThat(meterReading.getYearlyConsumption()).isEqualTo(200);
+
+		restMeterReadingMockMVC.perform(get("/api/meterreadings/A/0001/years?fromYear=2015&toYear=2016"))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.length()").value(2))
+				.andExpect(jsonPath("$[1].connection.year").value(2016));
+	}
+
+	/**
+	 * Covers a streamed upload whose previous year is validated in an earlier batch, but not written yet
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void meterReadingStreamYearBaselineTest() throws Exception {
+		Profile profile = new Profile.ProfileBuilder("A").addFraction(new Fraction(Month.JAN, 1f)).build();
+		profileRepository.save(profile);
+
+		// the failing 0002 leaves 2015 of 0001 alone in the write batch while 2016 is validated
+		List<MeterReadingVo> vos = new ArrayList<>(TestUtil.meterReadingVos("A", "0001", 2015, 100));
+		vos.addAll(TestUtil.meterReadingVos("A", "0002", 2015, 200));
+		vos.get(MonthlyReadings.MONTHS + Month.JAN.ordinal()).setReading(100);
+		vos.addAll(TestUtil.meterReadingVos("A", "0001", 2016, 300));
+		vos.addAll(TestUtil.meterReadingVos("A", "0003", 2016, 300));
+
+		int writeBatchSize = applicationProperties.getIngest().getWriteBatchSize();
+		applicationProperties.getIngest().setWriteBatchSize(2);
+		try {
+			restMeterReadingMockMVC.perform(post("/api/meterreadings").contentType(MediaTypes.APPLICATION_NDJSON_VALUE)
+					.content(TestUtil.convertObjectsToNdjson(vos))).andExpect(status().isCreated());
+		} finally {
+			applicationProperties.getIngest().setWriteBatchSize(writeBatchSize);
+		}
+
+		assertThat(meterReadingRepository.findOne(new Connection("A", "0002", 2015))).isNull();
+		MeterReading meterReading = meterReadingRepository.findOne(new Connection("A", "0001", 2016));
+		assertThat(meterReading.getBaseline()).isEqualTo(100);
+		assertThat(meterReading.getYearlyConsumption()).isEqualTo(200);
+	}
+
+	/**
+	 * Covers a resent upload reported as unchanged, and written again once the previous year changed its baseline
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void meterReadingUnchangedTest() throws Exception {
+		Profile profile = new Profile.ProfileBuilder("A").addFraction(new Fraction(Month.JAN, 1f)).build();
+		profileRepository.save(profile);
+
+		List<MeterReadingVo> vos = TestUtil.meterReadingVos("A", "0001", 2016, 100);
+		List<MeterReadingVo> previousYear = TestUtil.meterReadingVos("A", "0001", 2015, 50);
+
+		restMeterReadingMockMVC.perform(post("/api/meterreadings").contentType(TestUtil.APPLICATION_JSON_UTF8)
+				.content(TestUtil.convertObjectToJsonBytes(vos))).andExpect(status().isCreated())
+				.andExpect(jsonPath("$[0].status").value("SUCCESS"));
+		restMeterReadingMockMVC.perform(post("/api/meterreadings").contentType(TestUtil.APPLICATION_JSON_UTF8)
+				.content(TestUtil.convertObjectToJsonBytes(vos))).andExpect(status().isCreated())
+				.andExpect(jsonPath("$[0].status").value("UNCHANGED"));
+
+		restMeterReadingMockMVC.perform(post("/api/meterreadings").contentType(TestUtil.APPLICATION_JSON_UTF8)
+				.content(TestUtil.convertObjectToJsonBytes(previousYear))).andExpect(status().isCreated())
+				.andExpect(jsonPath("$[0].status").value("SUCCESS"));
+		restMeterReadingMockMVC.perform(post("/api/meterreadings").contentType(TestUtil.APPLICATION_JSON_UTF8)
+				.content(TestUtil.convertObjectToJsonBytes(vos))).andExpect(status().isCreated())
+				.andExpect(jsonPath("$[0].status").value("SUCCESS"));
+		restMeterReadingMockMVC.perform(get("/api/meterreadings/A/0001?year=2016")).andExpect(status().isOk())
+				.andExpect(jsonPath("$.baseline").value(50))
+				.andExpect(jsonPath("$.yearlyConsumption").value(50));
+	}
+
+	/**
+	 * Covers the binary upload of a valid connection and one of an unknown profile
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void meterReadingBinaryTest() throws Exception {
+		Profile profile = new Profile.ProfileBuilder("A").addFraction(new Fraction(Month.JAN, 1f)).build();
+		profileRepository.save(profile);
+
+		long[] readings = new long[Month.values().length];
+		Arrays.fill(readings, 100);
+		byte[] body = new BinaryReadingsEncoder().add("A", "0001", 2016, readings).add("B", "0001", 2016, readings)
+				.toByteArray();
+
+		restMeterReadingMockMVC.perform(post("/api/meterreadings").contentType(MediaTypes.APPLICATION_METER_READINGS_VALUE)
+				.content(body)).andExpect(status().isCreated())
+				.andExpect(content().string(containsString("SUCCESS")))
+				.andExpect(content().string(containsString("Profile NOT FOUND")));
+
+		assertThat(meterReadingRepository.findOne(new Connection("A", "0001", 2016)).getYearlyConsumption()).isEqualTo(100);
+	}
+
+	/**
+	 * Covers the full diagnostics validation listing every month out of range
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void meterReadingFullDiagnosticsTest() throws Exception {
+		Profile profile = new Profile.ProfileBuilder("A").addFraction(new Fraction(Month.JAN, 1f)).build();
+		profileRepository.save(profile);
+
+		// JAN consumes half of the year instead of all of it, FEB the other half instead of nothing
+		List<MeterReadingVo> vos = TestUtil.meterReadingVos("A", "0001", null, 200);
+		vos.get(Month.JAN.ordinal()).setReading(100);
+
+		applicationProperties.getIngest().setFullDiagnostics(true);
+		try {
+			restMeterReadingMockMVC.perform(post("/api/meterreadings").contentType(TestUtil.APPLICATION_JSON_UTF8)
+					.content(TestUtil.convertObjectToJsonBytes(vos))).andExpect(status().isCreated())
+					.andExpect(jsonPath("$[0].status").value(MeterReadingStatus.CONSUMPTION_OUT_OF_RANGE))
+					.andExpect(jsonPath("$[0].consumptionFailures.length()").value(2))
+					.andExpect(jsonPath("$[0].consumptionFailures[0].month").value("JAN"))
+					.andExpect(jsonPath("$[0].consumptionFailures[0].allowedConsumptionFrom").value(200))
+					.andExpect(jsonPath("$[0].consumptionFailures[0].allowedConsumptionTill").value(250))
+					.andExpect(jsonPath("$[0].consumptionFailures[1].month").value("FEB"))
+					.andExpect(jsonPath("$[0].consumptionFailures[1].consumption").value(100));
+		} finally {
+			applicationProperties.getIngest().setFullDiagnostics(false);
+		}
+	}
+
+	/**
+	 * Covers the consumption index maintained on ingest
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void meterReadingConsumptionIndexTest() throws Exception {
+		Profile profile = new Profile.ProfileBuilder("A").addFraction(new Fraction(Month.JAN, 1f)).build();
+		profileRepository.save(profile);
+
+		applicationProperties.getConsumptionIndex().setEnabled(true);
+		try {
+			consumptionIndexService.load();
+			for (int i = 0; i < 100 && !consumptionIndexService.isReady(); i++) {
+				Thread.sleep(50);
+			}
+
+			List<MeterReadingVo> vos = new ArrayList<>(TestUtil.meterReadingVos("A", "0001", 2016, 100));
+			vos.addAll(TestUtil.meterReadingVos("A", "0002", 2016, 300));
+			restMeterReadingMockMVC.perform(post("/api/meterreadings").contentType(TestUtil.APPLICATION_JSON_UTF8)
+					.content(TestUtil.convertObjectToJsonBytes(vos))).andExpect(status().isCreated());
+
+			List<IndexedConsumptionVo> top = consumptionIndexService.top("A", 2016, Month.JAN, 1, false);
+			assertThat(top).hasSize(1);
+			assertThat(top.get(0).getConnectionId()).isEqualTo("0002");
+			assertThat(top.get(0).getConsumption()).isEqualTo(300);
+
+			ConsumptionRollup january = consumptionIndexService.aggregate("A", 2016).get(0);
+			assertThat(january.getTotalConsumption()).isEqualTo(400);
+			assertThat(january.getConnections()).isEqualTo(2);
+			assertThat(consumptionIndexService.filter("A", 2016, Month.JAN, null, null, true, new PageRequest(0, 20))).isEmpty();
+			assertThat(consumptionIndexService.filter("A", 2016, null, 200L, null, false, new PageRequest(0, 20)))
+					.extracting(IndexedConsumptionVo::getConnectionId).containsExactly("0002");
+		} finally {
+			applicationProperties.getConsumptionIndex().setEnabled(false);
+		}
+	}
+
+	/**
+	 * Covers the bulk fetch and the bulk deletes by connections and by profileName, with a status per connection
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void meterReadingBulkFetchDeleteTest() throws Exception {
+		int year = Year.now().getValue();
+		for (Connection connection : Arrays.asList(new Connection("A", "0001", year), new Connection("A", "0002", year),
+				new Connection("B", "0001", year))) {
+			MeterReading meterReading = new MeterReading();
+			meterReading.setConnection(connection);
+			meterReadingRepository.save(meterReading);
+		}
+		List<Connection> connections = Arrays.asList(new Connection("A", "0001", null), new Connection("A", "0009", year));
+
+		restMeterReadingMockMVC.perform(post("/api/meterreadings/fetch").contentType(TestUtil.APPLICATION_JSON_UTF8)
+				.content(TestUtil.convertObjectToJsonBytes(connections))).andExpect(status().isOk())
+				.andExpect(jsonPath("$.length()").value(2))
+				.andExpect(jsonPath("$[0].status").value(MeterReadingStatus.SUCCESS))
+				.andExpect(jsonPath("$[0].meterReading.connection.connectionId").value("0001"))
+				.andExpect(jsonPath("$[1].status").value(MeterReadingStatus.NOT_FOUND))
+				.andExpect(jsonPath("$[1].meterReading").doesNotExist());
+
+		restMeterReadingMockMVC.perform(delete("/api/meterreadings/bulk").contentType(TestUtil.APPLICATION_JSON_UTF8)
+				.content(TestUtil.convertObjectToJsonBytes(connections))).andExpect(status().isOk())
+				.andExpect(jsonPath("$[0].status").value(MeterReadingStatus.SUCCESS))
+				.andExpect(jsonPath("$[0].year").value(year))
+				.andExpect(jsonPath("$[1].status").value(MeterReadingStatus.NOT_FOUND));
+		assertThat(meterReadingRepository.findAll()).hasSize(2);
+
+		restMeterReadingMockMVC.perform(delete("/api/meterreadings/bulk").param("profileName", "B"))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.length()").value(1))
+				.andExpect(jsonPath("$[0].connectionId").value("0001"));
+		assertThat(meterReadingRepository.findAll()).extracting(MeterReading::getConnection)
+				.containsExactly(new Connection("A", "0002", year));
+
+		restMeterReadingMockMVC.perform(delete("/api/meterreadings/bulk")).andExpect(status().isBadRequest());
+	}
+
+	/**
+	 * Covers the profile lookup of an upload in $in chunks, the chunk boundary falls between its profiles
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void meterReadingProfileChunkTest() throws Exception {
+		int chunkSize = applicationProperties.getIngest().getProfileLookupChunkSize();
+		applicationProperties.getIngest().setProfileLookupChunkSize(2);
+		try {
+			List<MeterReadingVo> vos = new ArrayList<>();
+			for (String profileName : new String[] { "A", "B", "C" }) {
+				profileRepository.save(new Profile.ProfileBuilder(profileName).addFraction(new Fraction(Month.JAN, 1f)).build());
+				vos.addAll(TestUtil.meterReadingVos(profileName, "0001", 2016, 100));
+			}
+			profileRepository.delete("D");
+			vos.addAll(TestUtil.meterReadingVos("D", "0001", 2016, 100));
+
+			long lookups = metricRegistry.timer("repository.profile.find").getCount();
+			List<MeterReadingStatus> statuses = createMeterReadingService.execute(vos);
+
+			assertThat(metricRegistry.timer("repository.profile.find").getCount() - lookups).isEqualTo(2);
+			assertThat(statuses).extracting("profileName", "status").containsOnly(tuple("A", MeterReadingStatus.SUCCESS),
+					tuple("B", MeterReadingStatus.SUCCESS), tuple("C", MeterReadingStatus.SUCCESS),
+					tuple("D", "FAILURE, Profile NOT FOUND"));
+		} finally {
+			applicationProperties.getIngest().setProfileLookupChunkSize(chunkSize);
+		}
+	}
+
+	/**
+	 * Covers the bulk upsert results mapped back to the connections, one meterReading of the batch is not written
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	@SuppressWarnings("unchecked")
+	public void meterReadingBulkUpsertFailureTest() throws Exception {
+		profileRepository.save(new Profile.ProfileBuilder("A").addFraction(new Fraction(Month.JAN, 1f)).build());
+
+		MeterReadingRepository failing = Mockito.mock(MeterReadingRepository.class, AdditionalAnswers.delegatesTo(meterReadingRepository));
+		Mockito.doAnswer(invocation -> {
+			List<MeterReading> batch = (List<MeterReading>) invocation.getArguments()[0];
+			Set<Integer> failed = new HashSet<>();
+			List<MeterReading> written = new ArrayList<>();
+			for (int i = 0; i < batch.size(); i++) {
+				if ("0002".equals(batch.get(i).getConnection().getConnectionId())) {
+					failed.add(i);
+				} else {
+					written.add(batch.get(i));
+				}
+			}
+			meterReadingRepository.bulkUpsert(written);
+			return failed;
+		}).when(failing).bulkUpsert(Mockito.anyListOf(MeterReading.class));
+
+		List<MeterReadingVo> vos = new ArrayList<>();
+		for (String connectionId : new String[] { "0001", "0002", "0003" }) {
+			vos.addAll(TestUtil.meterReadingVos("A", connectionId, 2016, 100));
+		}
+		List<MeterReadingStatus> statuses;
+		ReflectionTestUtils.setField(createMeterReadingService, "meterReadingRepository", failing);
+		try {
+			statuses = createMeterReadingService.execute(vos);
+		} finally {
+			ReflectionTestUtils.setField(createMeterReadingService, "meterReadingRepository", meterReadingRepository);
+		}
+
+		assertThat(statuses).extracting("connectionId", "status").containsExactly(tuple("0001", MeterReadingStatus.SUCCESS),
+				tuple("0002", "FAILURE, Readings could not be persisted"), tuple("0003", MeterReadingStatus.SUCCESS));
+		assertThat(meterReadingRepository.findAll()).extracting(meterReading -> meterReading.getConnection().getConnectionId())
+				.containsOnly("0001", "0003");
+		assertThat(consumptionRollupService.getRollup("A", 2016, Month.JAN).getConnections()).isEqualTo(2);
+	}
+
+	/**
+	 * Covers the months present in MonthlyReadings, a missing month is not made up by another month sent twice, and the
+	 * statuses of uploads missing a month or repeating one
+	 */
+	@Test
+	public void monthlyReadingsTest() {
+		MonthlyReadings readings = new MonthlyReadings(new Connection("A", "0001", 2016));
+		for (int i = 0; i < MonthlyReadings.MONTHS - 1; i++) {
+			readings.set(Month.values()[i], 10 * i);
+		}
+		assertThat(readings.isComplete()).isFalse();
+
+		// DEC is still missing, NOV twice is 12 rows
+		readings.set(Month.NOV, 100);
+		assertThat(readings.getRows()).isEqualTo(MonthlyReadings.MONTHS);
+		assertThat(readings.isComplete()).isFalse();
+
+		readings.set(Month.DEC, 110);
+		assertThat(readings.isComplete()).isFalse();
+		assertThat(readings.get(Month.NOV.ordinal())).isEqualTo(100);
+
+		MonthlyReadings complete = new MonthlyReadings(new Connection("A", "0002", 2016));
+		for (Month month : Month.values()) {
+			complete.set(month, 10 * month.ordinal());
+		}
+		assertThat(complete.isComplete()).isTrue();
+		assertThat(complete.isAscending()).isTrue();
+		complete.setBaseline(1);
+		assertThat(complete.isAscending()).isFalse();
+
+		profileRepository.save(new Profile.ProfileBuilder("A").addFraction(new Fraction(Month.JAN, 1f)).build());
+		List<MeterReadingVo> vos = new ArrayList<>(TestUtil.meterReadingVos("A", "0001", 2016, 100).subList(0, MonthlyReadings.MONTHS - 1));
+		List<MeterReadingVo> repeated = TestUtil.meterReadingVos("A", "0002", 2016, 100);
+		repeated.get(MonthlyReadings.MONTHS - 1).setMonth(Month.NOV);
+		vos.addAll(repeated);
+		assertThat(createMeterReadingService.execute(vos)).extracting("connectionId", "status").containsExactly(
+				tuple("0001", "FAILURE, Readings Insufficient ie., not all months data found"),
+				tuple("0002", "FAILURE, Readings Insufficient ie., not all months data found"));
+	}
+
+	/**
+	 * Covers the validation of a large upload in parallel, it reports the same statuses in the same order as the
+	 * validation on the request thread
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void meterReadingParallelValidationTest() throws Exception {
+		profileRepository.save(new Profile.ProfileBuilder("A").addFraction(new Fraction(Month.JAN, 1f)).build());
+		List<MeterReadingVo> vos = new ArrayList<>();
+		for (int i = 0; i < 60; i++) {
+			String connectionId = String.format("%04d", i);
+			if (i % 3 == 0) {
+				vos.addAll(TestUtil.meterReadingVos("A", connectionId, 2016, 100).subList(0, MonthlyReadings.MONTHS - 1));
+			} else if (i % 3 == 1) {
+				vos.addAll(TestUtil.meterReadingVos("A", connectionId, 2016, 120, 110, 100, 90, 80, 70, 60, 50, 40, 30, 20, 10));
+			} else {
+				vos.addAll(TestUtil.meterReadingVos("A", connectionId, 2016, 100 + i));
+			}
+		}
+
+		int threshold = applicationProperties.getIngest().getValidationParallelThreshold();
+		try {
+			applicationProperties.getIngest().setValidationParallelThreshold(Integer.MAX_VALUE);
+			List<MeterReadingStatus> serial = createMeterReadingService.execute(vos);
+
+			meterReadingRepository.deleteAll();
+			consumptionRollupRepository.deleteAll();
+			applicationProperties.getIngest().setValidationParallelThreshold(1);
+			List<MeterReadingStatus> parallel = createMeterReadingService.execute(vos);
+
+			assertThat(serial).hasSize(60).extracting("status").contains(MeterReadingStatus.SUCCESS);
+			assertThat(parallel).containsExactlyElementsOf(serial);
+		} finally {
+			applicationProperties.getIngest().setValidationParallelThreshold(threshold);
+		}
+	}
+
+	/**
+	 * Covers the ingest metrics registered in the MetricRegistry and the ingest summary headers of an upload with a
+	 * success and an unknown profile
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void meterReadingMetricsTest() throws Exception {
+		profileRepository.save(new Profile.ProfileBuilder("A").addFraction(new Fraction(Month.JAN, 1f)).build());
+		profileRepository.delete("B");
+		List<MeterReadingVo> vos = new ArrayList<>(TestUtil.meterReadingVos("A", "0001", 2016, 100));
+		vos.addAll(TestUtil.meterReadingVos("B", "0001", 2016, 100));
+
+		long requests = metricRegistry.timer("ingest.request").getCount();
+		long validations = metricRegistry.timer("ingest.stage.validation").getCount();
+		long rows = metricRegistry.meter("ingest.rows").getCount();
+		long successes = metricRegistry.meter("ingest.successes").getCount();
+		long profileNotFound = metricRegistry.counter("ingest.failures.profile-not-found").getCount();
+
+		restMeterReadingMockMVC.perform(post("/api/meterreadings").contentType(TestUtil.APPLICATION_JSON_UTF8)
+				.content(TestUtil.convertObjectToJsonBytes(vos))).andExpect(status().isCreated())
+				.andExpect(header().string("X-eventServiceApp-ingest-rows", "24"))
+				.andExpect(header().string("X-eventServiceApp-ingest-statuses", "2"))
+				.andExpect(header().string("X-eventServiceApp-ingest-failures", "1"))
+				.andExpect(header().string("X-eventServiceApp-ingest-duration-ms", notNullValue()));
+
+		assertThat(metricRegistry.timer("ingest.request").getCount() - requests).isEqualTo(1);
+		assertThat(metricRegistry.timer("ingest.stage.validation").getCount() - validations).isEqualTo(1);
+		assertThat(metricRegistry.meter("ingest.rows").getCount() - rows).isEqualTo(24);
+		assertThat(metricRegistry.meter("ingest.successes").getCount() - successes).isEqualTo(1);
+		assertThat(metricRegistry.counter("ingest.failures.profile-not-found").getCount() - profileNotFound).isEqualTo(1);
+	}
+
+	/**
+	 * Covers the snapshot of the memory storage engine, saved and loaded into an empty engine. Runs on engines of its own,
+	 * whichever engine the tests use.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void memorySnapshotTest() throws Exception {
+		InMemorySnapshot snapshot = memorySnapshot();
+		InMemoryProfileRepository profiles = (InMemoryProfileRepository) ReflectionTestUtils.getField(snapshot, "profileRepository");
+		InMemoryMeterReadingRepository meterReadings = (InMemoryMeterReadingRepository) ReflectionTestUtils.getField(snapshot,
+				"meterReadingRepository");
+		InMemoryConsumptionRollupRepository rollups = (InMemoryConsumptionRollupRepository) ReflectionTestUtils.getField(snapshot,
+				"consumptionRollupRepository");
+
+		profiles.save(new Profile.ProfileBuilder("A").addFraction(new Fraction(Month.JAN, 0.25f))
+				.addFraction(new Fraction(Month.DEC, 0.75f)).build());
+		profiles.save(new Profile.ProfileBuilder("Zähler").addFraction(new Fraction(Month.JAN, 1f)).build());
+		MeterReading meterReading = new MeterReading();
+		meterReading.setConnection(new Connection("A", "0001", 2016));
+		meterReading.setMeterRecords(TestUtil.meterRecords(10, 20, 30, 40, 50, 60, 70, 80, 90, 100, 110, 120));
+		meterReading.setBaseline(5L);
+		meterReading.setYearlyConsumption(115L);
+		meterReadings.save(meterReading);
+		MeterReading withoutYear = new MeterReading();
+		withoutYear.setConnection(new Connection("Zähler", "0001", null));
+		withoutYear.setMeterRecords(TestUtil.meterRecords(10));
+		meterReadings.save(withoutYear);
+		rollups.increment(consumptionRollupService.deltas(Collections.emptyList(), meterReadings.findAll()));
+
+		Path file = Paths.get("target/memory-snapshot-test.bin");
+		try {
+			ReflectionTestUtils.invokeMethod(snapshot, "save", file);
+			InMemorySnapshot loaded = memorySnapshot();
+			ReflectionTestUtils.invokeMethod(loaded, "load", file);
+
+			InMemoryProfileRepository loadedProfiles = (InMemoryProfileRepository) ReflectionTestUtils.getField(loaded,
+					"profileRepository");
+			assertThat(loadedProfiles.findAll()).extracting(Profile::getName).containsOnly("A", "Zähler");
+			for (Profile profile : profiles.findAll()) {
+				assertThat(loadedProfiles.findOne(profile.getName()).getFractionValues()).containsExactly(profile.getFractionValues());
+			}
+			assertThat(((InMemoryMeterReadingRepository) ReflectionTestUtils.getField(loaded, "meterReadingRepository")).findAll())
+					.containsExactlyElementsOf(meterReadings.findAll());
+			InMemoryConsumptionRollupRepository loadedRollups = (InMemoryConsumptionRollupRepository) ReflectionTestUtils
+					.getField(loaded, "consumptionRollupRepository");
+			for (String profileName : new String[] { "A", "Zähler" }) {
+				assertThat(loadedRollups.findByProfileName(profileName, null)).hasSize(MonthlyReadings.MONTHS)
+						.containsOnlyElementsOf(rollups.findByProfileName(profileName, null));
+			}
+		} finally {
+			Files.deleteIfExists(file);
+		}
+	}
+
+	/**
+	 * Covers both MeterReading document formats written and read back, each read whichever format is written
+	 */
+	@Test
+	public void meterReadingSchemaTest() {
+		MeterReading meterReading = schemaMeterReading();
+		DBObject compact = new BasicDBObject();
+		schemaConverter(true).write(meterReading, compact);
+		DBObject mapped = new BasicDBObject();
+		schemaConverter(false).write(meterReading, mapped);
+
+		assertThat(((DBObject) compact.get(MeterReadingSchema.ID)).get(MeterReadingSchema.PROFILE_NAME)).isEqualTo("A");
+		assertThat((List<?>) compact.get(MeterReadingSchema.READINGS)).hasSize(MonthlyReadings.MONTHS);
+		assertThat(((DBObject) mapped.get(MeterReadingSchema.ID)).get(MeterReadingSchema.MAPPED_PROFILE_NAME)).isEqualTo("A");
+		assertThat((List<?>) mapped.get(MeterReadingSchema.MAPPED_METER_RECORDS)).hasSize(MonthlyReadings.MONTHS);
+		for (boolean compactWritten : new boolean[] { true, false }) {
+			MappingMongoConverter converter = schemaConverter(compactWritten);
+			assertThat(converter.read(MeterReading.class, compact)).isEqualTo(meterReading);
+			assertThat(converter.read(MeterReading.class, mapped)).isEqualTo(meterReading);
+		}
+	}
+
+	/**
+	 * Covers the migration of a mapped document to the compact format and back, skipped on the memory engine which has
+	 * no document format
+	 */
+	@Test
+	public void meterReadingSchemaMigrationTest() {
+		Assume.assumeNotNull(mongoTemplate);
+		MeterReading meterReading = schemaMeterReading();
+		DBObject mapped = new BasicDBObject();
+		schemaConverter(false).write(meterReading, mapped);
+		DBCollection collection = mongoTemplate.getCollection(mongoTemplate.getCollectionName(MeterReading.class));
+		collection.insert(mapped);
+
+		MongoTemplate compactTemplate = new MongoTemplate(mongoDbFactory, schemaConverter(true));
+		assertThat(migrateSchema(compactTemplate, true)).isEqualTo(1);
+		assertThat(migrateSchema(compactTemplate, true)).isEqualTo(0);
+		assertThat(((DBObject) collection.findOne().get(MeterReadingSchema.ID)).get(MeterReadingSchema.PROFILE_NAME))
+				.isEqualTo("A");
+		assertThat(compactTemplate.findById(meterReading.getConnection(), MeterReading.class)).isEqualTo(meterReading);
+
+		// back to the mapped format of the context
+		assertThat(migrateSchema(mongoTemplate, false)).isEqualTo(1);
+		assertThat(((DBObject) collection.findOne().get(MeterReadingSchema.ID)).get(MeterReadingSchema.MAPPED_PROFILE_NAME))
+				.isEqualTo("A");
+		assertThat(meterReadingRepository.findOne(meterReading.getConnection())).isEqualTo(meterReading);
+	}
+
+	private static InMemorySnapshot memorySnapshot() {
+		InMemorySnapshot snapshot = new InMemorySnapshot();
+		ReflectionTestUtils.setField(snapshot, "profileRepository", new InMemoryProfileRepository());
+		ReflectionTestUtils.setField(snapshot, "meterReadingRepository", new InMemoryMeterReadingRepository());
+		ReflectionTestUtils.setField(snapshot, "consumptionRollupRepository", new InMemoryConsumptionRollupRepository());
+		return snapshot;
+	}
+
+	private static MeterReading schemaMeterReading() {
+		MeterReading meterReading = new MeterReading();
+		meterReading.setConnection(new Connection("A", "0001", 2016));
+		meterReading.setMeterRecords(TestUtil.meterRecords(10, 20, 30, 40, 50, 60, 70, 80, 90, 100, 110, 120));
+		meterReading.setBaseline(5L);
+		meterReading.setYearlyConsumption(115L);
+		meterReading.setFingerprint(42L);
+		return meterReading;
+	}
+
+	private static MappingMongoConverter schemaConverter(boolean compact) {
+		CustomConversions conversions = new CustomConversions(MeterReadingSchema.converters(compact));
+		MongoMappingContext mappingContext = new MongoMappingContext();
+		mappingContext.setSimpleTypeHolder(conversions.getSimpleTypeHolder());
+		mappingContext.afterPropertiesSet();
+		MappingMongoConverter converter = new MappingMongoConverter(Mockito.mock(DbRefResolver.class), mappingContext);
+		converter.setCustomConversions(conversions);
+		converter.afterPropertiesSet();
+		return converter;
+	}
+
+	private long migrateSchema(MongoTemplate template, boolean compact) {
+		ApplicationProperties properties = new ApplicationProperties();
+		properties.getStorage().setCompactMeterReadings(compact);
+		MongoMeterReadingRepositoryImpl repository = new MongoMeterReadingRepositoryImpl();
+		ReflectionTestUtils.setField(repository, "mongoTemplate", template);
+		ReflectionTestUtils.setField(repository, "applicationProperties", properties);
+		return repository.migrateSchema(100);
+	}
 }
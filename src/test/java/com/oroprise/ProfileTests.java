@@ -1,9 +1,14 @@
 package com.oroprise;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.notNullValue;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
@@ -20,6 +25,8 @@ import org.mockito.MockitoAnnotations;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.data.web.PageableHandlerMethodArgumentResolver;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.converter.ByteArrayHttpMessageConverter;
 import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
 import org.springframework.test.context.TestPropertySource;
 import org.springframework.test.context.junit4.SpringRunner;
@@ -28,10 +35,14 @@ import org.springframework.test.util.ReflectionTestUtils;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.oroprise.bo.Fraction;
 import com.oroprise.bo.Month;
 import com.oroprise.bo.Profile;
 import com.oroprise.repository.ProfileRepository;
+import com.oroprise.service.ImportProfileService;
+import com.oroprise.service.ProfileCacheService;
+import com.oroprise.service.ResponseCacheService;
 import com.oroprise.vo.ProfileVo;
 import com.oroprise.web.rest.ProfileResource;
 
@@ -52,19 +63,37 @@ public class ProfileTests {
 	@Autowired
     private ProfileRepository profileRepository;
 	
+	@Autowired
+    private ProfileCacheService profileCacheService;
+	
+	@Autowired
+    private ObjectMapper objectMapper;
+	
+	@Autowired
+    private ImportProfileService importProfileService;
+	
+	@Autowired
+    private ResponseCacheService responseCacheService;
+	
 	@PostConstruct
     public void setup() {
         MockitoAnnotations.initMocks(this);
         ProfileResource profileResource = new ProfileResource();
         ReflectionTestUtils.setField(profileResource, "profileRepository", profileRepository);
+        ReflectionTestUtils.setField(profileResource, "profileCacheService", profileCacheService);
+        ReflectionTestUtils.setField(profileResource, "objectMapper", objectMapper);
+        ReflectionTestUtils.setField(profileResource, "importProfileService", importProfileService);
+        ReflectionTestUtils.setField(profileResource, "responseCacheService", responseCacheService);
         this.restProfileMockMvc = MockMvcBuilders.standaloneSetup(profileResource)
             .setCustomArgumentResolvers(pageableArgumentResolver)
-            .setMessageConverters(jacksonMessageConverter).build();
+            .setMessageConverters(new ByteArrayHttpMessageConverter(), jacksonMessageConverter).build();
     }
 	
 	@Before
 	public void beforeEachTest() {
 		profileRepository.deleteAll();
+		profileCacheService.invalidateAll();
+		responseCacheService.invalidateAll();
 	}
 
 	/**
@@ -128,6 +157,75 @@ public class ProfileTests {
                 .andExpect(status().isBadRequest());
 	}
 	
+	/**
+	 * Covers a bulk import with valid and invalid profiles, reported per profile
+	 * @throws Exception
+	 */
+	@Test
+	public void profileImportTest() throws Exception {
+		List<ProfileVo> vos = new ArrayList<>();
+		String[][] rows = { { "A", "JAN", "1.0" }, { "B", "DEC", "0.1" }, { "C", "XYZ", "1.0" } };
+		for (String[] row : rows) {
+			ProfileVo vo = new ProfileVo();
+			vo.setName(row[0]);
+			vo.setMonth(row[1]);
+			vo.setFraction(row[2]);
+			vos.add(vo);
+		}
+
+        restProfileMockMvc.perform(post("/api/profiles/import")
+                .contentType(TestUtil.APPLICATION_JSON_UTF8)
+                .content(TestUtil.convertObjectToJsonBytes(vos)))
+                .andExpect(status().isCreated())
+                .andExpect(jsonPath("$.length()").value(3))
+                .andExpect(header().string("X-eventServiceApp-ingest-failures", "2"));
+
+        assertThat(profileRepository.findAll()).extracting(Profile::getName).containsExactly("A");
+	}
+
+	/**
+	 * Covers a bulk import with one bad profile among valid ones, the others are imported and a stored one replaced,
+	 * while the same profiles are rejected as a whole by POST /profiles
+	 * @throws Exception
+	 */
+	@Test
+	public void profileImportPartialFailureTest() throws Exception {
+		profileRepository.deleteAll();
+		profileRepository.save(new Profile.ProfileBuilder("C").addFraction(new Fraction(Month.JAN, 1f)).build());
+
+		List<ProfileVo> vos = new ArrayList<>();
+		String[][] rows = { { "A", "JAN", "1.0" }, { "B", "JAN", "0.5" }, { "C", "JAN", "0.5" }, { "C", "DEC", "0.5" } };
+		for (String[] row : rows) {
+			ProfileVo vo = new ProfileVo();
+			vo.setName(row[0]);
+			vo.setMonth(row[1]);
+			vo.setFraction(row[2]);
+			vos.add(vo);
+		}
+
+        restProfileMockMvc.perform(post("/api/profiles")
+                .contentType(TestUtil.APPLICATION_JSON_UTF8)
+                .content(TestUtil.convertObjectToJsonBytes(vos)))
+                .andExpect(status().isBadRequest());
+        assertThat(profileRepository.findAll()).extracting(Profile::getName).containsExactly("C");
+
+        restProfileMockMvc.perform(post("/api/profiles/import")
+                .contentType(TestUtil.APPLICATION_JSON_UTF8)
+                .content(TestUtil.convertObjectToJsonBytes(vos)))
+                .andExpect(status().isCreated())
+                .andExpect(jsonPath("$.length()").value(3))
+                .andExpect(jsonPath("$[0].name").value("B"))
+                .andExpect(jsonPath("$[0].status").value(containsString("FAILURE")))
+                .andExpect(jsonPath("$[1].name").value("A"))
+                .andExpect(jsonPath("$[1].status").value("SUCCESS"))
+                .andExpect(jsonPath("$[2].name").value("C"))
+                .andExpect(jsonPath("$[2].status").value("SUCCESS"))
+                .andExpect(header().string("X-eventServiceApp-ingest-failures", "1"));
+
+        assertThat(profileRepository.findAll()).extracting(Profile::getName).containsOnly("A", "C");
+        assertThat(profileRepository.findOne("C").getFractionValues()[Month.DEC.ordinal()]).isEqualTo(0.5);
+	}
+	
 	@Test
     public void getProfile() throws Exception {
         // Initialize the database
@@ -140,4 +238,83 @@ public class ProfileTests {
                 .andExpect(content().contentType(TestUtil.APPLICATION_JSON_UTF8))
                 .andExpect(jsonPath("$.name").value("A"));
     }
+	
+	/**
+	 * Covers that a deleted profile is not served from the profile cache anymore
+	 * @throws Exception
+	 */
+	@Test
+    public void deleteProfileInvalidatesCache() throws Exception {
+		Profile profile = new Profile.ProfileBuilder("A").addFraction(new Fraction(Month.JAN, 1f)).build();
+		profileRepository.save(profile);
+
+        restProfileMockMvc.perform(get("/api/profiles/A"))
+                .andExpect(status().isOk());
+
+        restProfileMockMvc.perform(delete("/api/profiles/A"))
+                .andExpect(status().isOk());
+
+        restProfileMockMvc.perform(get("/api/profiles/A"))
+                .andExpect(status().isNotFound());
+    }
+	
+	/**
+	 * Covers keyset pagination of profiles by name
+	 * @throws Exception
+	 */
+	@Test
+    public void getAllProfilesPaginated() throws Exception {
+		for (String name : new String[] { "A", "B", "C" }) {
+			profileRepository.save(new Profile.ProfileBuilder(name).addFraction(new Fraction(Month.JAN, 1f)).build());
+		}
+
+        restProfileMockMvc.perform(get("/api/profiles?size=2"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(2))
+                .andExpect(jsonPath("$[1].name").value("B"))
+                .andExpect(header().string("Link", containsString("after=B")));
+
+        restProfileMockMvc.perform(get("/api/profiles?size=2&after=B"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(1))
+                .andExpect(jsonPath("$[0].name").value("C"));
+
+        restProfileMockMvc.perform(get("/api/profiles?size=2&page=1"))
+                .andExpect(status().isBadRequest());
+    }
+	
+	/**
+	 * Covers the ETag of a profile, answered 304 until the profile is replaced
+	 * @throws Exception
+	 */
+	@Test
+    public void getProfileNotModified() throws Exception {
+		Profile profile = new Profile.ProfileBuilder("A").addFraction(new Fraction(Month.JAN, 1f)).build();
+		profileRepository.save(profile);
+
+        String eTag = restProfileMockMvc.perform(get("/api/profiles/A"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, notNullValue()))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        restProfileMockMvc.perform(get("/api/profiles/A").header(HttpHeaders.IF_NONE_MATCH, eTag))
+                .andExpect(status().isNotModified());
+
+        restProfileMockMvc.perform(delete("/api/profiles/A"))
+                .andExpect(status().isOk());
+        List<ProfileVo> vos = new ArrayList<>();
+		ProfileVo vo = new ProfileVo();
+		vo.setMonth("FEB");
+		vo.setFraction("1.0");
+		vo.setName("A");
+		vos.add(vo);
+        restProfileMockMvc.perform(post("/api/profiles")
+                .contentType(TestUtil.APPLICATION_JSON_UTF8)
+                .content(TestUtil.convertObjectToJsonBytes(vos)))
+                .andExpect(status().isCreated());
+
+        restProfileMockMvc.perform(get("/api/profiles/A").header(HttpHeaders.IF_NONE_MATCH, eTag))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, not(eTag)));
+    }
 }
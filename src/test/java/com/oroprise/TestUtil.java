@@ -2,11 +2,17 @@ package com.oroprise;
 
 import java.io.IOException;
 import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.springframework.http.MediaType;
 
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.oroprise.bo.MeterRecord;
+import com.oroprise.bo.Month;
+import com.oroprise.vo.MeterReadingVo;
 
 /**
  * Utility class for testing REST controllers.
@@ -47,4 +53,57 @@ public class TestUtil {
         }
         return byteArray;
     }
+
+    /**
+     * Create the MeterReadingVos of one connection year, one per month.
+     *
+     * @param profileName
+     * @param connectionId
+     * @param year the year, null for the current year
+     * @param readings a reading per month, or a single reading for all months
+     * @return the MeterReadingVos in month order
+     */
+    public static List<MeterReadingVo> meterReadingVos(String profileName, String connectionId, Integer year,
+            long... readings) {
+        List<MeterReadingVo> vos = new ArrayList<>();
+        for (Month month : Month.values()) {
+            MeterReadingVo vo = new MeterReadingVo();
+            vo.setMonth(month);
+            vo.setConnectionId(connectionId);
+            vo.setProfileName(profileName);
+            vo.setYear(year);
+            vo.setReading(readings.length == 1 ? readings[0] : readings[month.ordinal()]);
+            vos.add(vo);
+        }
+        return vos;
+    }
+
+    /**
+     * Create the MeterRecords of a year, one per month.
+     *
+     * @param readings a reading per month, or a single reading for all months
+     * @return the MeterRecords in month order
+     */
+    public static List<MeterRecord> meterRecords(long... readings) {
+        List<MeterRecord> records = new ArrayList<>();
+        for (Month month : Month.values()) {
+            records.add(new MeterRecord(month, readings.length == 1 ? readings[0] : readings[month.ordinal()]));
+        }
+        return records;
+    }
+
+    /**
+     * Convert objects to newline delimited JSON, as streamed to POST /api/meterreadings.
+     *
+     * @param objects
+     * @return one JSON object per line
+     * @throws IOException
+     */
+    public static String convertObjectsToNdjson(List<?> objects) throws IOException {
+        StringBuilder ndjson = new StringBuilder();
+        for (Object object : objects) {
+            ndjson.append(new String(convertObjectToJsonBytes(object), StandardCharsets.UTF_8)).append('\n');
+        }
+        return ndjson.toString();
+    }
 }